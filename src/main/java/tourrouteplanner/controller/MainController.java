@@ -10,22 +10,35 @@ import javafx.scene.image.ImageView;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
+import tourrouteplanner.model.Itinerary;
 import tourrouteplanner.model.Place;
 import tourrouteplanner.model.Route;
 import tourrouteplanner.service.RoutingService;
 import tourrouteplanner.service.GeocodingService;
+import tourrouteplanner.service.HybridGeocodingService;
 import tourrouteplanner.service.IRoutingService;
 import tourrouteplanner.service.IGeocodingService;
 import tourrouteplanner.service.IStorageService;
+import tourrouteplanner.service.OfflineGeocodingService;
+import tourrouteplanner.service.OfflineRoutingService;
 import tourrouteplanner.service.StorageService;
 import tourrouteplanner.util.Utils;
 import tourrouteplanner.util.Constants;
+import tourrouteplanner.util.Messages;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +47,7 @@ import org.slf4j.LoggerFactory;
  * Main controller for the Tour Route Planner application.
  * Acts as coordinator delegating to helper classes for specific functionality:
  * - MapHelper: Map display and interactions
+ * - MapSynchronizer: Sending route table changes to the map as differences
  * - SearchHelper: Place search and suggestions
  * - RouteHelper: Route table management
  */
@@ -72,6 +86,14 @@ public class MainController {
     @FXML
     private Button clearAllButton;
     @FXML
+    private Button optimizeOrderButton;
+    @FXML
+    private CheckBox roundTripCheckBox;
+    @FXML
+    private CheckBox keepLastStopCheckBox;
+    @FXML
+    private Button planDaysButton;
+    @FXML
     private Button darkModeToggle;
     @FXML
     private Label searchPlaceholder;
@@ -103,20 +125,33 @@ public class MainController {
     // ==================== Helper Classes ====================
 
     private MapHelper mapHelper;
+    private MapSynchronizer mapSynchronizer;
     private SearchHelper searchHelper;
     private RouteHelper routeHelper;
 
     // ==================== State ====================
 
     private boolean isDarkMode = false;
+    /** Place whose geometry is currently wanted on the map (FX thread only). */
+    private Place geometryTargetPlace;
+
+    /** Runs reverse geocoding for map clicks off the JavaFX application thread. */
+    private final ExecutorService mapClickExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "map-click-geocoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Identifies the latest map click; results of older clicks are discarded. */
+    private final AtomicLong mapClickSequence = new AtomicLong();
+    private Future<?> pendingMapClick;
 
     // ==================== Initialization ====================
 
     @FXML
     public void initialize() {
         // Initialize services
-        routingService = new RoutingService();
-        geocodingService = new GeocodingService();
+        routingService = createRoutingService();
+        geocodingService = createGeocodingService();
         storageService = new StorageService();
 
         // Initialize helpers (order matters: routeHelper first for searchHelper
@@ -132,6 +167,12 @@ public class MainController {
         // Setup route info area
         setupRouteInfoArea();
 
+        // A round trip has no last stop to keep
+        keepLastStopCheckBox.disableProperty().bind(roundTripCheckBox.selectedProperty());
+        routeHelper.setRoundTrip(roundTripCheckBox.isSelected());
+        roundTripCheckBox.selectedProperty()
+                .addListener((obs, wasRoundTrip, isRoundTrip) -> routeHelper.setRoundTrip(isRoundTrip));
+
         // Setup placeholder listeners
         setupPlaceholderListeners();
 
@@ -143,9 +184,72 @@ public class MainController {
         updateSearchPlaceholderVisibility();
     }
 
+    /**
+     * Creates the routing backend selected by the routing.provider config key.
+     * The offline road network is prepared in the background so the first
+     * route does not wait for it.
+     */
+    private IRoutingService createRoutingService() {
+        String provider = Utils.loadConfigProperty(Constants.CONFIG_ROUTING_PROVIDER, "osrm");
+        if (!"offline".equalsIgnoreCase(provider)) {
+            if (!"osrm".equalsIgnoreCase(provider)) {
+                log.warn("Unknown routing provider '{}', using OSRM", provider);
+            }
+            return new RoutingService();
+        }
+        if (!OfflineRoutingService.isAvailable()) {
+            log.warn("Offline routing requested but neither the road graph file ({}) nor the OSM extract ({}) "
+                    + "was found, using OSRM", OfflineRoutingService.configuredGraphFile().getAbsolutePath(),
+                    OfflineRoutingService.configuredPbfFile().getAbsolutePath());
+            return new RoutingService();
+        }
+        OfflineRoutingService offline = new OfflineRoutingService();
+        CompletableFuture.runAsync(() -> {
+            try {
+                offline.preload();
+            } catch (IOException e) {
+                log.error("Error preparing offline road network", e);
+            }
+        });
+        return offline;
+    }
+
+    /**
+     * Creates the geocoding backend selected by the geocoding.provider config
+     * key. The local gazetteer is loaded in the background so the first query
+     * does not wait for it.
+     */
+    private IGeocodingService createGeocodingService() {
+        String provider = Utils.loadConfigProperty(Constants.CONFIG_GEOCODING_PROVIDER, "nominatim");
+        if ("nominatim".equalsIgnoreCase(provider)) {
+            return new GeocodingService();
+        }
+        if (!OfflineGeocodingService.isAvailable()) {
+            log.warn("Geocoding provider '{}' requested but {} not found, using Nominatim", provider,
+                    Constants.GAZETTEER_FILE);
+            return new GeocodingService();
+        }
+        OfflineGeocodingService offline = new OfflineGeocodingService();
+        CompletableFuture.runAsync(() -> {
+            try {
+                offline.preload();
+            } catch (IOException e) {
+                log.error("Error loading local gazetteer", e);
+            }
+        });
+        if ("offline".equalsIgnoreCase(provider)) {
+            return offline;
+        }
+        if (!"hybrid".equalsIgnoreCase(provider)) {
+            log.warn("Unknown geocoding provider '{}', using hybrid", provider);
+        }
+        return new HybridGeocodingService(new GeocodingService(), offline);
+    }
+
     private void initializeMapHelper() {
         mapHelper = new MapHelper(mapPane, this);
         mapHelper.initialize();
+        mapSynchronizer = new MapSynchronizer(mapHelper);
     }
 
     private void initializeSearchHelper() {
@@ -156,22 +260,61 @@ public class MainController {
         searchHelper.setOnPlaceAdd(place -> {
             if (routeHelper.addPlace(place)) {
                 // Refresh all markers with updated indices
-                mapHelper.refreshMarkers(routeHelper.getCurrentRoutePlaces());
+                mapSynchronizer.syncMarkers(routeHelper.getCurrentRoutePlaces());
                 placeListView.refresh();
             }
         });
 
         searchHelper.setOnPlaceSelect(place -> {
             mapHelper.showPlace(place);
+            highlightPlaceGeometry(place);
             statusLabel.setText("Selected: " + place.getName());
         });
 
+        // Route places (added, or from a loaded route) become searchable locally
+        searchHelper.indexPlaces(routeHelper.getCurrentRoutePlaces());
+        routeHelper.getCurrentRoutePlaces().addListener(
+                (javafx.collections.ListChangeListener.Change<? extends Place> c) -> {
+                    while (c.next()) {
+                        if (c.wasAdded()) {
+                            searchHelper.indexPlaces(new ArrayList<>(c.getAddedSubList()));
+                        }
+                    }
+                });
+
         // Setup UI components
         searchHelper.setupPlaceListView(routeHelper.getCurrentRoutePlaces());
         searchHelper.setupSuggestionsListView();
         searchHelper.setupSearchBoxListener();
     }
 
+    /**
+     * Loads the detailed geometry of a place in the background and highlights it
+     * once available, unless another place has been selected meanwhile.
+     * Until then the map shows the bounding box drawn by
+     * {@link MapHelper#showPlace(Place)}.
+     */
+    private void highlightPlaceGeometry(Place place) {
+        geometryTargetPlace = place;
+        if (place.getGeoJson() != null && !place.getGeoJson().isEmpty()) {
+            return;
+        }
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return geocodingService.lookupGeometry(place);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }).thenAcceptAsync(geoJson -> {
+            if (geoJson != null && place == geometryTargetPlace) {
+                mapHelper.highlightGeoJson(geoJson);
+            }
+        }, Platform::runLater).exceptionally(ex -> {
+            log.warn("Could not load geometry for {}: {}", place.getName(), ex.getMessage());
+            return null;
+        });
+    }
+
     private void setLoading(boolean loading) {
         Platform.runLater(() -> {
             loadingContainer.setVisible(loading);
@@ -186,21 +329,27 @@ public class MainController {
         // Setup callbacks
         routeHelper.setOnRouteUpdate(route -> {
             if (route != null) {
-                mapHelper.drawRoute(route.getCoordinates());
+                mapSynchronizer.syncRoute(route);
                 mapHelper.fitToRoute();
                 updateDynamicRouteInfo(
                         String.format(Locale.US, "Total distance: %.2f km", route.getTotalDistanceKm()),
                         route.getTurnByTurnInstructions());
             } else {
-                mapHelper.clearRoute();
+                mapSynchronizer.syncRoute(null);
                 updateDynamicRouteInfo(String.format(Locale.US, "Total distance: %.2f km", 0.0), "");
             }
         });
 
-        routeHelper.setOnMapRefresh(places -> mapHelper.refreshMarkers(places));
+        routeHelper.setOnMapRefresh(places -> mapSynchronizer.syncMarkers(places));
+
+        routeHelper.setOnItineraryUpdate(itinerary -> updateDynamicRouteInfo(
+                String.format(Locale.US, "Itinerary: %d day(s), %.0f min driving", itinerary.getDays().size(),
+                        itinerary.getTotalDrivingSeconds() / 60.0),
+                "Days:", itinerary.toText()));
 
         routeHelper.setOnPlaceSelect(place -> {
             mapHelper.showPlace(place);
+            highlightPlaceGeometry(place);
             statusLabel.setText("Moved to: " + place.getName());
         });
 
@@ -257,6 +406,7 @@ public class MainController {
                         switch (event.getCode()) {
                             case DELETE -> handleRemoveSelected(); // Delete key
                             case ESCAPE -> {
+                                geometryTargetPlace = null;
                                 mapHelper.clearHighlight();
                                 searchBox.clear();
                             }
@@ -291,8 +441,9 @@ public class MainController {
     @FXML
     private void handleClearAllPlaces() {
         routeHelper.clearAll();
-        mapHelper.clearAllMarkers();
-        mapHelper.clearRoute();
+        geometryTargetPlace = null;
+        mapSynchronizer.syncMarkers(List.of());
+        mapSynchronizer.syncRoute(null);
         mapHelper.clearHighlight();
         updateRoutePlaceholderVisibility();
     }
@@ -307,6 +458,34 @@ public class MainController {
         routeHelper.moveDown();
     }
 
+    @FXML
+    private void handleOptimizeOrder() {
+        routeHelper.optimizeOrder(keepLastStopCheckBox.isSelected());
+    }
+
+    @FXML
+    private void handlePlanDays() {
+        TextInputDialog dialog = new TextInputDialog(
+                String.valueOf(Constants.ITINERARY_DAY_BUDGET_MINUTES / 60));
+        dialog.setTitle("Plan Days");
+        dialog.setHeaderText("Split the route into days, starting at "
+                + Itinerary.formatMinute(Constants.ITINERARY_DAY_START_MINUTE) + " each day.");
+        dialog.setContentText("Hours per day:");
+        dialog.showAndWait().ifPresent(input -> {
+            double hours;
+            try {
+                hours = Double.parseDouble(input.trim());
+            } catch (NumberFormatException e) {
+                hours = Double.NaN;
+            }
+            if (!(hours > 0 && hours <= 24)) {
+                Utils.showAlert(Alert.AlertType.ERROR, "Invalid Input", "Hours per day must be between 0 and 24.");
+                return;
+            }
+            routeHelper.planItinerary((int) Math.round(hours * 60));
+        });
+    }
+
     @FXML
     private void handleSaveRoute() {
         if (routeHelper.getCurrentRoutePlaces().isEmpty()) {
@@ -330,12 +509,12 @@ public class MainController {
 
             if (loadedData != null && loadedData.getPlaces() != null) {
                 routeHelper.setPlaces(loadedData.getPlaces());
-                mapHelper.refreshMarkers(loadedData.getPlaces());
+                mapSynchronizer.syncMarkers(loadedData.getPlaces());
 
                 Route loadedRoute = loadedData.getRoute();
                 if (loadedRoute != null && loadedRoute.getCoordinates() != null
                         && !loadedRoute.getCoordinates().isEmpty()) {
-                    mapHelper.drawRoute(loadedRoute.getCoordinates());
+                    mapSynchronizer.syncRoute(loadedRoute);
                     updateDynamicRouteInfo(
                             String.format(Locale.US, "Total distance: %.2f km", loadedRoute.getTotalDistanceKm()),
                             loadedRoute.getTurnByTurnInstructions());
@@ -343,7 +522,7 @@ public class MainController {
                 } else if (routeHelper.getCurrentRoutePlaces().size() >= 2) {
                     routeHelper.findRoute();
                 } else {
-                    mapHelper.clearRoute();
+                    mapSynchronizer.syncRoute(null);
                     updateDynamicRouteInfo(String.format(Locale.US, "Total distance: %.2f km", 0.0), null);
                 }
                 statusLabel.setText("Route loaded successfully.");
@@ -395,48 +574,100 @@ public class MainController {
 
     @JsAccessible
     public void handleMapClick(double lat, double lng) {
+        long clickId = mapClickSequence.incrementAndGet();
+        synchronized (mapClickExecutor) {
+            // A newer click supersedes any lookup that is still queued or in flight
+            if (pendingMapClick != null) {
+                pendingMapClick.cancel(true);
+            }
+            pendingMapClick = mapClickExecutor.submit(() -> resolveMapClick(clickId, lat, lng));
+        }
+        Platform.runLater(() -> statusLabel.setText("Looking up address..."));
+    }
+
+    /**
+     * Reverse geocodes a map click on the background executor and hands the
+     * result to the JavaFX thread, unless a newer click has arrived meanwhile.
+     */
+    private void resolveMapClick(long clickId, double lat, double lng) {
+        Place clickedPlace;
+        try {
+            clickedPlace = geocodingService.reverseGeocode(lat, lng);
+        } catch (InterruptedIOException e) {
+            log.debug("Reverse geocoding for superseded map click cancelled");
+            return;
+        } catch (IOException e) {
+            if (isLatestMapClick(clickId)) {
+                log.error("Error in reverse geocoding: {}", e.getMessage(), e);
+                Platform.runLater(() -> {
+                    statusLabel.setText(Messages.STATUS_READY);
+                    Utils.showAlert(Alert.AlertType.ERROR, "Geocoding Error",
+                            "Error getting address: " + e.getMessage());
+                });
+            }
+            return;
+        }
+
+        if (!isLatestMapClick(clickId)) {
+            return;
+        }
         Platform.runLater(() -> {
-            try {
-                Place clickedPlace = geocodingService.reverseGeocode(lat, lng);
-                if (clickedPlace != null) {
-                    Alert confirmDialog = new Alert(Alert.AlertType.CONFIRMATION);
-                    confirmDialog.setTitle("Add Place");
-                    confirmDialog.setHeaderText("Add place from map?");
-                    confirmDialog.setContentText("Do you want to add \"" + clickedPlace.getName() + "\" to the route?");
-
-                    Optional<ButtonType> result = confirmDialog.showAndWait();
-                    if (result.isPresent() && result.get() == ButtonType.OK) {
-                        if (routeHelper.addPlace(clickedPlace)) {
-                            mapHelper.refreshMarkers(routeHelper.getCurrentRoutePlaces());
-                        }
+            if (!isLatestMapClick(clickId)) {
+                return;
+            }
+            statusLabel.setText(Messages.STATUS_READY);
+            if (clickedPlace != null) {
+                Alert confirmDialog = new Alert(Alert.AlertType.CONFIRMATION);
+                confirmDialog.setTitle("Add Place");
+                confirmDialog.setHeaderText("Add place from map?");
+                confirmDialog.setContentText("Do you want to add \"" + clickedPlace.getName() + "\" to the route?");
+
+                Optional<ButtonType> result = confirmDialog.showAndWait();
+                if (result.isPresent() && result.get() == ButtonType.OK) {
+                    if (routeHelper.addPlace(clickedPlace)) {
+                        mapSynchronizer.syncMarkers(routeHelper.getCurrentRoutePlaces());
                     }
-                } else {
-                    Utils.showAlert(Alert.AlertType.INFORMATION, "Notice",
-                            "Could not find information for clicked location.");
                 }
-            } catch (IOException e) {
-                log.error("Error in reverse geocoding: {}", e.getMessage(), e);
-                Utils.showAlert(Alert.AlertType.ERROR, "Geocoding Error",
-                        "Error getting address: " + e.getMessage());
+            } else {
+                Utils.showAlert(Alert.AlertType.INFORMATION, "Notice",
+                        "Could not find information for clicked location.");
             }
         });
     }
 
+    private boolean isLatestMapClick(long clickId) {
+        return clickId == mapClickSequence.get() && !Thread.currentThread().isInterrupted();
+    }
+
     @JsAccessible
     public void logFromJs(String message) {
         log.debug("[JS] {}", message);
     }
 
+    /**
+     * Gets the geometry of a route leg on the map at a level of detail, as
+     * little-endian int pairs of latitude and longitude in microdegrees. The
+     * map receives the array as an {@code ArrayBuffer}.
+     */
+    @JsAccessible
+    public byte[] getRouteLegGeometry(int id, int level) {
+        return mapSynchronizer.getLegGeometry(id, level);
+    }
+
     // ==================== UI Helper Methods ====================
 
     private void updateDynamicRouteInfo(String totalDistanceText, String turnByTurnInstructions) {
+        updateDynamicRouteInfo(totalDistanceText, "Detailed directions:", turnByTurnInstructions);
+    }
+
+    private void updateDynamicRouteInfo(String totalDistanceText, String detailsHeader, String details) {
         if (dynamicRouteInfoTextArea != null && directionsPane != null) {
             StringBuilder infoBuilder = new StringBuilder();
             infoBuilder.append(totalDistanceText);
 
-            if (turnByTurnInstructions != null && !turnByTurnInstructions.trim().isEmpty()) {
-                infoBuilder.append("\n\nDetailed directions:\n");
-                infoBuilder.append(turnByTurnInstructions);
+            if (details != null && !details.trim().isEmpty()) {
+                infoBuilder.append("\n\n").append(detailsHeader).append("\n");
+                infoBuilder.append(details);
             }
 
             dynamicRouteInfoTextArea.setText(infoBuilder.toString());
@@ -492,6 +723,12 @@ public class MainController {
         if (clearAllButton != null) {
             clearAllButton.setDisable(!hasPlaces);
         }
+        if (optimizeOrderButton != null) {
+            optimizeOrderButton.setDisable(placeCount < 3);
+        }
+        if (planDaysButton != null) {
+            planDaysButton.setDisable(!canFindRoute);
+        }
 
         // Selection-dependent buttons
         boolean hasSelection = routeTableView != null &&
@@ -514,6 +751,10 @@ public class MainController {
         if (searchHelper != null) {
             searchHelper.shutdown();
         }
+        mapClickExecutor.shutdownNow();
+        if (geocodingService != null) {
+            geocodingService.shutdown();
+        }
         if (mapHelper != null) {
             mapHelper.shutdown();
         }
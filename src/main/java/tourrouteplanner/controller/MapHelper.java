@@ -13,13 +13,11 @@ import com.teamdev.jxbrowser.view.javafx.BrowserView;
 import javafx.scene.control.Alert;
 import javafx.scene.layout.StackPane;
 import tourrouteplanner.model.Place;
-import tourrouteplanner.model.Route;
 import tourrouteplanner.util.Utils;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 import java.util.Locale;
 
 import org.slf4j.Logger;
@@ -164,6 +162,18 @@ public class MapHelper {
         }
     }
 
+    /**
+     * Executes JavaScript in the browser and returns its result, or null if
+     * the browser is not ready.
+     */
+    public Object evaluateJavaScript(String script) {
+        if (browser != null && browser.mainFrame().isPresent()) {
+            return browser.mainFrame().get().executeJavaScript(script);
+        }
+        log.warn("Cannot execute JavaScript, browser not ready");
+        return null;
+    }
+
     /**
      * Pans map to coordinates with zoom level.
      */
@@ -189,8 +199,9 @@ public class MapHelper {
      */
     public void highlightGeoJson(String geoJsonString) {
         if (geoJsonString != null && !geoJsonString.isEmpty()) {
-            String script = String.format("if(typeof highlightGeoJson === 'function') { highlightGeoJson(%s); }",
-                    geoJsonString);
+            String script = String.format(
+                    "if(typeof highlightGeoJsonFeature === 'function') { highlightGeoJsonFeature('%s'); }",
+                    Utils.escapeJavaScriptString(geoJsonString));
             executeJavaScript(script);
         }
     }
@@ -212,53 +223,6 @@ public class MapHelper {
         executeJavaScript("if(typeof clearHighlight === 'function') { clearHighlight(); }");
     }
 
-    /**
-     * Adds a marker to the map with an index number.
-     */
-    public void addMarker(String name, double lat, double lng, String description, int index) {
-        String script = String.format(Locale.US, "addMapMarker('%s', %f, %f, '%s', %d);",
-                Utils.escapeJavaScriptString(name), lat, lng, Utils.escapeJavaScriptString(description), index);
-        executeJavaScript(script);
-    }
-
-    /**
-     * Draws a route on the map.
-     */
-    public void drawRoute(List<Route.Coordinate> coordinates) {
-        if (coordinates == null || coordinates.isEmpty()) {
-            clearRoute();
-            return;
-        }
-
-        StringBuilder jsRouteArray = new StringBuilder("[");
-        for (int i = 0; i < coordinates.size(); i++) {
-            Route.Coordinate coord = coordinates.get(i);
-            if (coord != null) {
-                jsRouteArray.append(String.format(Locale.US, "{lat: %f, lng: %f}",
-                        coord.getLatitude(), coord.getLongitude()));
-                if (i < coordinates.size() - 1) {
-                    jsRouteArray.append(",");
-                }
-            }
-        }
-        jsRouteArray.append("]");
-        executeJavaScript(String.format("drawRoute(%s);", jsRouteArray.toString()));
-    }
-
-    /**
-     * Clears all markers from map.
-     */
-    public void clearAllMarkers() {
-        executeJavaScript("clearAllMarkers();");
-    }
-
-    /**
-     * Clears route from map.
-     */
-    public void clearRoute() {
-        executeJavaScript("if(typeof clearRoute === 'function') { clearRoute(); }");
-    }
-
     /**
      * Fits map view to show entire route.
      */
@@ -266,17 +230,6 @@ public class MapHelper {
         executeJavaScript("if(typeof fitToRoute === 'function') { fitToRoute(); }");
     }
 
-    /**
-     * Refreshes markers for all places with their indices.
-     */
-    public void refreshMarkers(List<Place> places) {
-        clearAllMarkers();
-        for (int i = 0; i < places.size(); i++) {
-            Place place = places.get(i);
-            addMarker(place.getName(), place.getLatitude(), place.getLongitude(), place.getAddress(), i + 1);
-        }
-    }
-
     /**
      * Shows selected place on map with appropriate highlighting.
      */
@@ -0,0 +1,377 @@
+package tourrouteplanner.controller;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import tourrouteplanner.model.CoordinateSequence;
+import tourrouteplanner.model.Place;
+import tourrouteplanner.model.Route;
+import tourrouteplanner.util.Constants;
+import tourrouteplanner.util.LineSimplifier;
+import tourrouteplanner.util.SegmentIndex;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the map's marker and route layers in step with the route table.
+ * <p>
+ * The synchronizer holds a shadow model of what the map shows: one entry per
+ * marker and per route leg, each with an id the map uses to find its feature.
+ * A sync compares the new state with the shadow model and sends only the
+ * difference in one script: markers to add or remove, markers whose number
+ * changed, route legs to add or remove, and legs whose color changed. Editing
+ * a large tour therefore neither clears the layers nor sends unchanged
+ * geometry again.
+ * <p>
+ * Leg geometry does not travel inside the script. The script names the new
+ * legs, and the map fetches each one through
+ * {@link MainController#getRouteLegGeometry(int, int)} as a byte array, which
+ * arrives as an {@code ArrayBuffer} of little-endian int pairs (latitude,
+ * longitude in microdegrees). The map reads it through an
+ * {@code Int32Array} straight into the line's flat coordinates, so no
+ * coordinate text is formatted, parsed or evaluated.
+ * <p>
+ * Each leg is drawn at one of several levels of detail, simplified with the
+ * tolerances in {@link Constants#ROUTE_LOD_TOLERANCES_METERS}. The vertex
+ * significance behind all levels is computed once when the leg is added; the
+ * map asks for another level only when a zoom makes it need one, and keeps
+ * the levels it has fetched.
+ * <p>
+ * If the map does not apply an update, for example because it is not
+ * initialized yet, the shadow model is dropped and the next sync replaces the
+ * layer's content completely.
+ */
+public class MapSynchronizer {
+
+    private static final Logger log = LoggerFactory.getLogger(MapSynchronizer.class);
+
+    private final MapHelper mapHelper;
+
+    /** Markers on the map in route order; null when the map's content is unknown. */
+    private List<MarkerState> markers;
+    /** Route legs on the map in route order; null when the map's content is unknown. */
+    private List<LegState> legs;
+    private int nextId = 1;
+    /**
+     * Legs the map shows or is adding, by id. Updated on the JavaFX thread and
+     * read on the browser's callback thread.
+     */
+    private final Map<Integer, LegState> legsById = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a synchronizer for a map.
+     *
+     * @param mapHelper The map to keep in step.
+     */
+    public MapSynchronizer(MapHelper mapHelper) {
+        this.mapHelper = mapHelper;
+    }
+
+    /**
+     * Shows one numbered marker per place, numbered in list order.
+     *
+     * @param places The places of the route table, in order.
+     */
+    public void syncMarkers(List<Place> places) {
+        boolean reset = markers == null;
+        Map<List<Object>, Deque<MarkerState>> shown = new HashMap<>();
+        if (!reset) {
+            for (MarkerState marker : markers) {
+                shown.computeIfAbsent(marker.key, k -> new ArrayDeque<>()).add(marker);
+            }
+        }
+
+        List<MarkerState> updated = new ArrayList<>(places.size());
+        JsonArray added = new JsonArray();
+        JsonArray relabeled = new JsonArray();
+        for (int i = 0; i < places.size(); i++) {
+            Place place = places.get(i);
+            String description = place.getAddress() != null ? place.getAddress() : "";
+            List<Object> key = Arrays.asList(place.getLatitude(), place.getLongitude(), place.getName(), description);
+            int number = i + 1;
+            Deque<MarkerState> candidates = shown.get(key);
+            MarkerState marker = candidates != null ? candidates.poll() : null;
+            if (marker == null) {
+                marker = new MarkerState(nextId++, key, number);
+                JsonArray entry = new JsonArray(6);
+                entry.add(marker.id);
+                entry.add(place.getLatitude());
+                entry.add(place.getLongitude());
+                entry.add(place.getName());
+                entry.add(description);
+                entry.add(number);
+                added.add(entry);
+            } else if (marker.number != number) {
+                marker.number = number;
+                relabeled.add(pair(marker.id, number));
+            }
+            updated.add(marker);
+        }
+        JsonArray removed = new JsonArray();
+        for (Deque<MarkerState> unused : shown.values()) {
+            for (MarkerState marker : unused) {
+                removed.add(marker.id);
+            }
+        }
+
+        if (!reset && added.isEmpty() && removed.isEmpty() && relabeled.isEmpty()) {
+            return;
+        }
+        String script = "updateMapMarkers(" + reset + ", " + removed + ", " + added + ", " + relabeled + ");";
+        markers = apply(script) ? updated : null;
+    }
+
+    /**
+     * Shows a route, one color per leg between consecutive waypoints, or
+     * clears the route layer if {@code route} has no path.
+     *
+     * @param route The route to show, or null.
+     */
+    public void syncRoute(Route route) {
+        List<CoordinateSequence> geometries = splitLegs(route);
+        boolean reset = legs == null;
+        Map<CoordinateSequence, Deque<LegState>> shown = new HashMap<>();
+        if (!reset) {
+            for (LegState leg : legs) {
+                shown.computeIfAbsent(leg.geometry, k -> new ArrayDeque<>()).add(leg);
+            }
+        }
+
+        List<LegState> updated = new ArrayList<>(geometries.size());
+        JsonArray added = new JsonArray();
+        JsonArray recolored = new JsonArray();
+        for (int i = 0; i < geometries.size(); i++) {
+            CoordinateSequence geometry = geometries.get(i);
+            Deque<LegState> candidates = shown.get(geometry);
+            LegState leg = candidates != null ? candidates.poll() : null;
+            if (leg == null) {
+                leg = new LegState(nextId++, geometry, i);
+                legsById.put(leg.id, leg);
+                added.add(pair(leg.id, i));
+            } else if (leg.color != i) {
+                leg.color = i;
+                recolored.add(pair(leg.id, i));
+            }
+            updated.add(leg);
+        }
+        JsonArray removed = new JsonArray();
+        for (Deque<LegState> unused : shown.values()) {
+            for (LegState leg : unused) {
+                removed.add(leg.id);
+            }
+        }
+
+        if (!reset && added.isEmpty() && removed.isEmpty() && recolored.isEmpty()) {
+            return;
+        }
+        JsonArray tolerances = new JsonArray(Constants.ROUTE_LOD_TOLERANCES_METERS.size());
+        for (double tolerance : Constants.ROUTE_LOD_TOLERANCES_METERS) {
+            tolerances.add(tolerance);
+        }
+        String script = "updateRouteLegs(" + reset + ", " + tolerances + ", " + removed + ", " + added + ", "
+                + recolored + ");";
+        if (apply(script)) {
+            legs = updated;
+            for (JsonElement id : removed) {
+                legsById.remove(id.getAsInt());
+            }
+        } else {
+            legs = null;
+            legsById.clear();
+        }
+    }
+
+    /**
+     * Gets the geometry of a leg on the map at a level of detail.
+     *
+     * @param id    The leg's id.
+     * @param level Index into {@link Constants#ROUTE_LOD_TOLERANCES_METERS}.
+     * @return The encoded geometry, or null if the map shows no such leg or
+     *         the level does not exist.
+     */
+    public byte[] getLegGeometry(int id, int level) {
+        LegState leg = legsById.get(id);
+        if (leg == null || level < 0 || level >= Constants.ROUTE_LOD_TOLERANCES_METERS.size()) {
+            return null;
+        }
+        return encode(leg.simplified(Constants.ROUTE_LOD_TOLERANCES_METERS.get(level)));
+    }
+
+    /**
+     * Runs an update script and reports whether the map applied it.
+     */
+    private boolean apply(String script) {
+        Object applied = mapHelper.evaluateJavaScript(script);
+        if (!Boolean.TRUE.equals(applied)) {
+            log.debug("Map did not apply update; the next sync replaces its content");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Splits a route's path into one piece per leg. Pieces with fewer than
+     * two vertices are left out.
+     */
+    private static List<CoordinateSequence> splitLegs(Route route) {
+        List<CoordinateSequence> geometries = new ArrayList<>();
+        CoordinateSequence coordinates = route == null ? null : route.getCoordinates();
+        if (coordinates == null || coordinates.size() < 2) {
+            return geometries;
+        }
+        int[] legStarts = findLegStarts(route);
+        for (int i = 0; i < legStarts.length - 1; i++) {
+            if (legStarts[i + 1] > legStarts[i]) {
+                geometries.add(coordinates.subSequence(legStarts[i], legStarts[i + 1] + 1));
+            }
+        }
+        return geometries;
+    }
+
+    /**
+     * Finds the route vertex each leg starts at, plus the last vertex. Routes
+     * record these offsets when their legs are assembled. For routes without
+     * them, such as routes saved by older versions, the route starts at its
+     * first waypoint and ends at its last, and every other waypoint is placed
+     * at the route vertex nearest to it, found through a {@link SegmentIndex}
+     * over the route's segments.
+     */
+    private static int[] findLegStarts(Route route) {
+        CoordinateSequence coordinates = route.getCoordinates();
+        int last = coordinates.size() - 1;
+        int[] recorded = route.getLegStarts();
+        if (recorded != null && isValidLegStarts(recorded, last)) {
+            return recorded;
+        }
+        List<Place> waypoints = route.getWaypoints();
+        if (waypoints == null || waypoints.size() < 2) {
+            return new int[] { 0, last };
+        }
+        int[] legStarts = new int[waypoints.size()];
+        legStarts[legStarts.length - 1] = last;
+        if (waypoints.size() > 2) {
+            SegmentIndex index = new SegmentIndex(new RouteSegments(coordinates));
+            for (int i = 1; i < waypoints.size() - 1; i++) {
+                SegmentIndex.Match match = index.nearest(waypoints.get(i).getLatitude(),
+                        waypoints.get(i).getLongitude());
+                legStarts[i] = match.getSegment() + (match.getFraction() > 0.5 ? 1 : 0);
+            }
+            Arrays.sort(legStarts);
+        }
+        return legStarts;
+    }
+
+    private static boolean isValidLegStarts(int[] legStarts, int last) {
+        if (legStarts.length < 2 || legStarts[0] != 0 || legStarts[legStarts.length - 1] != last) {
+            return false;
+        }
+        for (int i = 1; i < legStarts.length; i++) {
+            if (legStarts[i] < legStarts[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes latitude, longitude pairs in microdegrees as little-endian ints.
+     */
+    private static byte[] encode(int[] latLonE6) {
+        ByteBuffer bytes = ByteBuffer.allocate(latLonE6.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asIntBuffer().put(latLonE6);
+        return bytes.array();
+    }
+
+    private static JsonArray pair(int first, int second) {
+        JsonArray pair = new JsonArray(2);
+        pair.add(first);
+        pair.add(second);
+        return pair;
+    }
+
+    /**
+     * A marker on the map.
+     */
+    private static final class MarkerState {
+        final int id;
+        /** Position, name and description, which a marker cannot change in place. */
+        final List<Object> key;
+        int number;
+
+        MarkerState(int id, List<Object> key, int number) {
+            this.id = id;
+            this.key = key;
+            this.number = number;
+        }
+    }
+
+    /**
+     * A route leg on the map.
+     */
+    private static final class LegState {
+        final int id;
+        final CoordinateSequence geometry;
+        /** Leg number the color is picked by. */
+        int color;
+        /** Vertex significance for simplification. */
+        final float[] significance;
+
+        LegState(int id, CoordinateSequence geometry, int color) {
+            this.id = id;
+            this.geometry = geometry;
+            this.color = color;
+            this.significance = LineSimplifier.significance(geometry.toE6Array());
+        }
+
+        int[] simplified(double toleranceMeters) {
+            return LineSimplifier.simplify(geometry.toE6Array(), significance, toleranceMeters);
+        }
+    }
+
+    /**
+     * The segments between consecutive vertices of a route.
+     */
+    private static final class RouteSegments implements SegmentIndex.Segments {
+        private final CoordinateSequence coordinates;
+
+        RouteSegments(CoordinateSequence coordinates) {
+            this.coordinates = coordinates;
+        }
+
+        @Override
+        public int size() {
+            return coordinates.size() - 1;
+        }
+
+        @Override
+        public int getStartLatitudeE6(int segment) {
+            return coordinates.getLatitudeE6(segment);
+        }
+
+        @Override
+        public int getStartLongitudeE6(int segment) {
+            return coordinates.getLongitudeE6(segment);
+        }
+
+        @Override
+        public int getEndLatitudeE6(int segment) {
+            return coordinates.getLatitudeE6(segment + 1);
+        }
+
+        @Override
+        public int getEndLongitudeE6(int segment) {
+            return coordinates.getLongitudeE6(segment + 1);
+        }
+    }
+}
@@ -4,14 +4,23 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.GridPane;
+import tourrouteplanner.model.Itinerary;
 import tourrouteplanner.model.Place;
 import tourrouteplanner.model.Route;
+import tourrouteplanner.model.TravelMatrix;
 import tourrouteplanner.service.IRoutingService;
+import tourrouteplanner.service.ItineraryPlanner;
+import tourrouteplanner.service.TourOptimizer;
+import tourrouteplanner.util.Constants;
 import tourrouteplanner.util.Utils;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
 
 import java.util.function.Consumer;
 import java.util.concurrent.CompletableFuture;
@@ -29,6 +38,7 @@ public class RouteHelper {
 
     private static final Logger log = LoggerFactory.getLogger(RouteHelper.class);
     private final IRoutingService routingService;
+    private final TourOptimizer tourOptimizer = new TourOptimizer();
     private final TableView<Place> routeTableView;
     private final TableColumn<Place, Integer> indexColumn;
     private final TableColumn<Place, String> nameColumn;
@@ -38,11 +48,19 @@ public class RouteHelper {
 
     private final ObservableList<Place> currentRoutePlaces = FXCollections.observableArrayList();
     private boolean routeCalculated = false;
+    /** Whether the route returns to the first place at the end. */
+    private boolean roundTrip = false;
+
+    /** Last planned itinerary, with the planner and matrix it was planned with. */
+    private Itinerary itinerary;
+    private ItineraryPlanner itineraryPlanner;
+    private TravelMatrix itineraryMatrix;
 
     // Callback interfaces
     private RouteUpdateCallback onRouteUpdate;
     private MapRefreshCallback onMapRefresh;
     private PlaceSelectCallback onPlaceSelect;
+    private ItineraryUpdateCallback onItineraryUpdate;
 
     @FunctionalInterface
     public interface RouteUpdateCallback {
@@ -59,6 +77,11 @@ public class RouteHelper {
         void onSelect(Place place);
     }
 
+    @FunctionalInterface
+    public interface ItineraryUpdateCallback {
+        void onUpdate(Itinerary itinerary);
+    }
+
     /**
      * Creates a RouteHelper.
      */
@@ -99,6 +122,13 @@ public class RouteHelper {
         this.onPlaceSelect = callback;
     }
 
+    /**
+     * Sets callback for itinerary updates.
+     */
+    public void setOnItineraryUpdate(ItineraryUpdateCallback callback) {
+        this.onItineraryUpdate = callback;
+    }
+
     /**
      * Gets the current route places list.
      */
@@ -120,6 +150,20 @@ public class RouteHelper {
         this.routeCalculated = calculated;
     }
 
+    /**
+     * Sets whether the route returns to the first place at the end, and
+     * recalculates a route that is already shown.
+     */
+    public void setRoundTrip(boolean roundTrip) {
+        if (this.roundTrip == roundTrip) {
+            return;
+        }
+        this.roundTrip = roundTrip;
+        if (routeCalculated && currentRoutePlaces.size() >= 2) {
+            findRoute();
+        }
+    }
+
     /**
      * Sets up the route table view.
      */
@@ -175,6 +219,15 @@ public class RouteHelper {
 
         routeTableView.setItems(currentRoutePlaces);
 
+        MenuItem visitDetailsItem = new MenuItem("Visit Details...");
+        visitDetailsItem.setOnAction(event -> {
+            Place selected = routeTableView.getSelectionModel().getSelectedItem();
+            if (selected != null) {
+                editVisitDetails(selected);
+            }
+        });
+        routeTableView.setContextMenu(new ContextMenu(visitDetailsItem));
+
         // Handle selection
         routeTableView.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
             if (newVal != null && onPlaceSelect != null) {
@@ -200,6 +253,7 @@ public class RouteHelper {
 
         currentRoutePlaces.add(place);
         statusLabel.setText("Added: " + place.getName());
+        insertIntoItinerary();
         return true;
     }
 
@@ -211,6 +265,7 @@ public class RouteHelper {
         if (selected != null) {
             currentRoutePlaces.remove(selected);
             statusLabel.setText("Removed: " + selected.getName());
+            removeFromItinerary(selected);
 
             if (onMapRefresh != null) {
                 onMapRefresh.onRefesh(new ArrayList<>(currentRoutePlaces));
@@ -239,6 +294,7 @@ public class RouteHelper {
                 if (response == ButtonType.OK) {
                     currentRoutePlaces.clear();
                     routeCalculated = false;
+                    resetItinerary();
                     statusLabel.setText("All places cleared.");
 
                     if (onRouteUpdate != null) {
@@ -259,6 +315,7 @@ public class RouteHelper {
             currentRoutePlaces.remove(selectedIndex);
             currentRoutePlaces.add(selectedIndex - 1, selected);
             routeTableView.getSelectionModel().select(selectedIndex - 1);
+            reorderItinerary(selected);
 
             if (onMapRefresh != null) {
                 onMapRefresh.onRefesh(new ArrayList<>(currentRoutePlaces));
@@ -285,6 +342,7 @@ public class RouteHelper {
             currentRoutePlaces.remove(selectedIndex);
             currentRoutePlaces.add(selectedIndex + 1, selected);
             routeTableView.getSelectionModel().select(selectedIndex + 1);
+            reorderItinerary(selected);
 
             if (onMapRefresh != null) {
                 onMapRefresh.onRefesh(new ArrayList<>(currentRoutePlaces));
@@ -302,7 +360,8 @@ public class RouteHelper {
     }
 
     /**
-     * Calculates and returns route between current places.
+     * Calculates and returns route between current places. A round trip ends
+     * back at the first place.
      */
     public void findRoute() {
         if (currentRoutePlaces.size() < 2) {
@@ -315,13 +374,18 @@ public class RouteHelper {
             return;
         }
 
+        List<Place> waypoints = new ArrayList<>(currentRoutePlaces);
+        if (roundTrip) {
+            waypoints.add(waypoints.get(0));
+        }
+
         if (loadingHandler != null) {
             loadingHandler.accept(true);
         }
 
         CompletableFuture.supplyAsync(() -> {
             try {
-                return routingService.getRoute(new ArrayList<>(currentRoutePlaces));
+                return routingService.getRoute(waypoints);
             } catch (IOException e) {
                 throw new CompletionException(e);
             }
@@ -359,11 +423,353 @@ public class RouteHelper {
         });
     }
 
+    /**
+     * Result of a stop order optimization.
+     */
+    private static final class OptimizedOrder {
+        final List<Place> places;
+        final double durationBeforeSeconds;
+        final double durationAfterSeconds;
+
+        OptimizedOrder(List<Place> places, double durationBeforeSeconds, double durationAfterSeconds) {
+            this.places = places;
+            this.durationBeforeSeconds = durationBeforeSeconds;
+            this.durationAfterSeconds = durationAfterSeconds;
+        }
+    }
+
+    /**
+     * Reorders the route places for the shortest total travel time and then
+     * recalculates the route. The first place stays first; for a round trip
+     * the tour is optimized and drawn back to it.
+     *
+     * @param keepLastStop Whether the last place stays last (open tours only).
+     */
+    public void optimizeOrder(boolean keepLastStop) {
+        if (currentRoutePlaces.size() < 3) {
+            statusLabel.setText("At least 3 places are needed to optimize the order.");
+            return;
+        }
+        List<Place> places = new ArrayList<>(currentRoutePlaces);
+        boolean roundTrip = this.roundTrip;
+
+        if (loadingHandler != null) {
+            loadingHandler.accept(true);
+        }
+
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                TravelMatrix matrix = routingService.getMatrix(places);
+                double[] durations = matrix.getDurations();
+                int n = places.size();
+                int end = keepLastStop && !roundTrip ? n - 1 : -1;
+                int[] order = tourOptimizer.optimize(durations, n, 0, end, roundTrip,
+                        Constants.TOUR_OPTIMIZATION_TIME_BUDGET_MS);
+                int[] currentOrder = new int[n];
+                List<Place> reordered = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    currentOrder[i] = i;
+                    reordered.add(places.get(order[i]));
+                }
+                return new OptimizedOrder(reordered,
+                        TourOptimizer.tourCost(durations, n, currentOrder, roundTrip),
+                        TourOptimizer.tourCost(durations, n, order, roundTrip));
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }).thenAcceptAsync(result -> {
+            if (loadingHandler != null) {
+                loadingHandler.accept(false);
+            }
+            if (!places.equals(currentRoutePlaces)) {
+                statusLabel.setText("Places changed while optimizing; order was not applied.");
+                return;
+            }
+            if (result.durationAfterSeconds >= result.durationBeforeSeconds) {
+                statusLabel.setText("The current order is already the fastest found.");
+                return;
+            }
+            currentRoutePlaces.setAll(result.places);
+            // The days were planned for the old order
+            resetItinerary();
+            statusLabel.setText(String.format(Locale.US, "Optimized order: %.0f min -> %.0f min",
+                    result.durationBeforeSeconds / 60.0, result.durationAfterSeconds / 60.0));
+            if (onMapRefresh != null) {
+                onMapRefresh.onRefesh(new ArrayList<>(currentRoutePlaces));
+            }
+            findRoute();
+        }, Platform::runLater).exceptionally(ex -> {
+            Platform.runLater(() -> {
+                if (loadingHandler != null) {
+                    loadingHandler.accept(false);
+                }
+                log.error("Error optimizing stop order: {}", ex.getCause().getMessage(), ex);
+                Utils.showAlert(Alert.AlertType.ERROR, "Optimization Error",
+                        "Could not optimize the stop order: " + ex.getCause().getMessage());
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Result of planning an itinerary, with the matrix it was planned on.
+     */
+    private static final class PlannedItinerary {
+        final TravelMatrix matrix;
+        final Itinerary itinerary;
+
+        PlannedItinerary(TravelMatrix matrix, Itinerary itinerary) {
+            this.matrix = matrix;
+            this.itinerary = itinerary;
+        }
+    }
+
+    /**
+     * Splits the route places into days. The first place is where the trip
+     * starts; each following day starts where the previous one ended.
+     *
+     * @param dayBudgetMinutes Time per day for driving and visits, in minutes.
+     */
+    public void planItinerary(int dayBudgetMinutes) {
+        if (currentRoutePlaces.size() < 2) {
+            statusLabel.setText("At least 2 places are needed to plan days.");
+            return;
+        }
+        List<Place> places = new ArrayList<>(currentRoutePlaces);
+        ItineraryPlanner planner = new ItineraryPlanner(Constants.ITINERARY_DAY_START_MINUTE, dayBudgetMinutes,
+                Constants.ITINERARY_MAX_DAYS);
+
+        if (loadingHandler != null) {
+            loadingHandler.accept(true);
+        }
+
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                TravelMatrix matrix = routingService.getMatrix(places);
+                return new PlannedItinerary(matrix, planner.plan(matrix));
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }).thenAcceptAsync(result -> {
+            if (loadingHandler != null) {
+                loadingHandler.accept(false);
+            }
+            if (!places.equals(currentRoutePlaces)) {
+                statusLabel.setText("Places changed while planning; plan the days again.");
+                return;
+            }
+            itineraryPlanner = planner;
+            itineraryMatrix = result.matrix;
+            updateItinerary(result.itinerary);
+        }, Platform::runLater).exceptionally(ex -> {
+            Platform.runLater(() -> {
+                if (loadingHandler != null) {
+                    loadingHandler.accept(false);
+                }
+                log.error("Error planning itinerary: {}", ex.getCause().getMessage(), ex);
+                Utils.showAlert(Alert.AlertType.ERROR, "Planning Error",
+                        "Could not plan the days: " + ex.getCause().getMessage());
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Edits the dwell time and opening hours of a place. If the place is part
+     * of the current itinerary, only its day is re-planned.
+     *
+     * @param place The place to edit.
+     */
+    public void editVisitDetails(Place place) {
+        TextField dwellField = new TextField(String.valueOf(place.getDwellMinutes()));
+        TextField hoursField = new TextField(place.hasOpeningHours()
+                ? Itinerary.formatMinute(place.getOpeningMinute()) + "-"
+                        + Itinerary.formatMinute(place.getClosingMinute())
+                : "");
+        hoursField.setPromptText("HH:mm-HH:mm, empty if always open");
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.addRow(0, new Label("Visit duration (min):"), dwellField);
+        grid.addRow(1, new Label("Opening hours:"), hoursField);
+
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Visit Details");
+        dialog.setHeaderText(place.getName());
+        dialog.getDialogPane().setContent(grid);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        Optional<ButtonType> result = dialog.showAndWait();
+        if (result.isEmpty() || result.get() != ButtonType.OK) {
+            return;
+        }
+        try {
+            int dwellMinutes = Integer.parseInt(dwellField.getText().trim());
+            String hours = hoursField.getText().trim();
+            if (hours.isEmpty()) {
+                place.setOpeningHours(null, null);
+            } else {
+                String[] range = hours.split("-");
+                if (range.length != 2) {
+                    throw new IllegalArgumentException("Opening hours must look like 09:00-17:00.");
+                }
+                place.setOpeningHours(Itinerary.parseMinute(range[0]), Itinerary.parseMinute(range[1]));
+            }
+            place.setDwellMinutes(dwellMinutes);
+        } catch (IllegalArgumentException e) {
+            Utils.showAlert(Alert.AlertType.ERROR, "Invalid Input", e.getMessage());
+            return;
+        }
+        statusLabel.setText("Updated visit details: " + place.getName());
+        replanItineraryFor(place);
+    }
+
+    /**
+     * Re-plans the day of the itinerary that contains a changed place, or tries
+     * to fit the place in if it was not scheduled.
+     */
+    private void replanItineraryFor(Place place) {
+        if (itinerary == null) {
+            return;
+        }
+        if (!itineraryMatrix.getPlaces().contains(place) || itineraryMatrix.getPlaces().get(0).equals(place)) {
+            statusLabel.setText("Plan the days again to include " + place.getName() + ".");
+            return;
+        }
+        int day = itinerary.findDay(place);
+        if (day >= 0) {
+            updateItinerary(itineraryPlanner.replanDay(itinerary, itineraryMatrix, day,
+                    itinerary.getDays().get(day).getStops()));
+        } else {
+            updateItinerary(itineraryPlanner.insertPlace(itinerary, itineraryMatrix, place));
+        }
+    }
+
+    /**
+     * Adds the route places that the itinerary does not cover yet. The
+     * matrix is fetched for the current places; if more places were added
+     * meanwhile, the request for the last of them adds them all.
+     */
+    private void insertIntoItinerary() {
+        if (itinerary == null) {
+            return;
+        }
+        List<Place> places = new ArrayList<>(currentRoutePlaces);
+
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return routingService.getMatrix(places);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }).thenAcceptAsync(matrix -> {
+            if (itinerary == null || currentRoutePlaces.isEmpty()
+                    || !matrix.getPlaces().containsAll(currentRoutePlaces)) {
+                return;
+            }
+            if (!currentRoutePlaces.get(0).equals(itineraryMatrix.getPlaces().get(0))) {
+                resetItinerary();
+                return;
+            }
+            Itinerary updated = itinerary;
+            for (Place place : currentRoutePlaces.subList(1, currentRoutePlaces.size())) {
+                if (!isInItinerary(updated, place)) {
+                    updated = itineraryPlanner.insertPlace(updated, matrix, place);
+                }
+            }
+            itineraryMatrix = matrix;
+            updateItinerary(updated);
+        }, Platform::runLater).exceptionally(ex -> {
+            Platform.runLater(() -> {
+                log.error("Error adding to itinerary: {}", ex.getCause().getMessage(), ex);
+                resetItinerary();
+                statusLabel.setText("Could not add the place to the days; plan the days again.");
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Drops a removed place from the itinerary, re-planning only its day. The
+     * itinerary is discarded if the place was where the trip starts.
+     */
+    private void removeFromItinerary(Place place) {
+        if (itinerary == null) {
+            return;
+        }
+        if (itineraryMatrix.getPlaces().get(0).equals(place)) {
+            resetItinerary();
+            return;
+        }
+        int day = itinerary.findDay(place);
+        if (day >= 0) {
+            List<Place> stops = new ArrayList<>(itinerary.getDays().get(day).getStops());
+            stops.remove(place);
+            updateItinerary(itineraryPlanner.replanDay(itinerary, itineraryMatrix, day, stops));
+        } else if (itinerary.getUnscheduled().contains(place)) {
+            List<Place> unscheduled = new ArrayList<>(itinerary.getUnscheduled());
+            unscheduled.remove(place);
+            updateItinerary(new Itinerary(itinerary.getDays(), unscheduled));
+        }
+    }
+
+    /**
+     * Re-plans the day of a moved place so that its stops follow the order of
+     * the route places. The itinerary is discarded if the trip now starts at
+     * another place.
+     */
+    private void reorderItinerary(Place moved) {
+        if (itinerary == null) {
+            return;
+        }
+        if (!itineraryMatrix.getPlaces().get(0).equals(currentRoutePlaces.get(0))) {
+            resetItinerary();
+            return;
+        }
+        int day = itinerary.findDay(moved);
+        if (day < 0) {
+            return;
+        }
+        List<Place> stops = itinerary.getDays().get(day).getStops();
+        List<Place> reordered = new ArrayList<>(stops);
+        reordered.sort(Comparator.comparingInt(currentRoutePlaces::indexOf));
+        if (!reordered.equals(stops)) {
+            updateItinerary(itineraryPlanner.replanDay(itinerary, itineraryMatrix, day, reordered));
+        }
+    }
+
+    private static boolean isInItinerary(Itinerary itinerary, Place place) {
+        return itinerary.findDay(place) >= 0 || itinerary.getUnscheduled().contains(place);
+    }
+
+    private void resetItinerary() {
+        itinerary = null;
+        itineraryPlanner = null;
+        itineraryMatrix = null;
+    }
+
+    private void updateItinerary(Itinerary updated) {
+        itinerary = updated;
+        String status = String.format(Locale.US, "Planned %d day(s)", updated.getDays().size());
+        if (!updated.getUnscheduled().isEmpty()) {
+            status += String.format(Locale.US, ", %d place(s) do not fit", updated.getUnscheduled().size());
+        }
+        statusLabel.setText(status);
+        if (onItineraryUpdate != null) {
+            onItineraryUpdate.onUpdate(updated);
+        }
+    }
+
     /**
      * Sets places from loaded data.
      */
     public void setPlaces(List<Place> places) {
         currentRoutePlaces.setAll(places);
+        resetItinerary();
     }
 
     /**
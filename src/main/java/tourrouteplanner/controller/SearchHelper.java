@@ -7,11 +7,18 @@ import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import tourrouteplanner.model.Place;
+import tourrouteplanner.model.PlaceSuggestion;
 import tourrouteplanner.service.IGeocodingService;
+import tourrouteplanner.service.PlaceSearchIndex;
+import tourrouteplanner.util.Constants;
 import tourrouteplanner.util.Utils;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -32,8 +39,11 @@ public class SearchHelper {
     private static final Logger log = LoggerFactory.getLogger(SearchHelper.class);
     private static final int DEBOUNCE_DELAY_MS = 300;
     private static final int MIN_SEARCH_LENGTH = 2;
+    private static final int MAX_SUGGESTIONS = 5;
 
     private final IGeocodingService geocodingService;
+    /** Places seen so far, searched locally before (and without) a network call. */
+    private final PlaceSearchIndex searchIndex = new PlaceSearchIndex();
     private final ListView<Place> placeListView;
     private final ListView<String> suggestionsListView;
     private final TextField searchBox;
@@ -107,6 +117,14 @@ public class SearchHelper {
         return searchResults;
     }
 
+    /**
+     * Adds places to the local search index, e.g. route places or places of a
+     * loaded route. Search results are indexed automatically.
+     */
+    public void indexPlaces(Collection<Place> places) {
+        searchIndex.addAll(places);
+    }
+
     /**
      * Sets up the place list view with custom cell factory.
      */
@@ -241,19 +259,30 @@ public class SearchHelper {
             return;
         }
 
+        // Show places seen before immediately; the server results replace them
+        List<Place> localPlaces = searchIndex.search(query, Constants.MAX_SEARCH_RESULTS);
+        if (!localPlaces.isEmpty()) {
+            searchResults.setAll(localPlaces);
+            placeListView.getSelectionModel().selectFirst();
+        }
+
         if (loadingHandler != null) {
             loadingHandler.accept(true);
         }
 
         CompletableFuture.supplyAsync(() -> {
             try {
-                return geocodingService.searchPlaces(query);
+                List<Place> places = geocodingService.searchPlaces(query);
+                searchIndex.addAll(places);
+                return places;
             } catch (IOException e) {
                 throw new CompletionException(e);
             }
         }).thenAcceptAsync(places -> {
-            searchResults.setAll(places);
-            if (!places.isEmpty()) {
+            Set<Place> merged = new LinkedHashSet<>(places);
+            merged.addAll(localPlaces);
+            searchResults.setAll(merged);
+            if (!merged.isEmpty()) {
                 placeListView.getSelectionModel().selectFirst();
             }
             if (loadingHandler != null) {
@@ -264,6 +293,10 @@ public class SearchHelper {
                 if (loadingHandler != null) {
                     loadingHandler.accept(false);
                 }
+                if (!localPlaces.isEmpty()) {
+                    log.warn("Search failed, showing local results only: {}", ex.getCause().getMessage());
+                    return;
+                }
                 Utils.showAlert(Alert.AlertType.ERROR, "Search Error",
                         "Could not perform search: " + ex.getCause().getMessage());
             });
@@ -280,6 +313,16 @@ public class SearchHelper {
             return;
         }
 
+        // Local matches are shown at once, before the debounced server request
+        List<String> localSuggestions = searchIndex.search(query, MAX_SUGGESTIONS).stream()
+                .map(Place::getName)
+                .distinct()
+                .collect(Collectors.toList());
+        if (!localSuggestions.isEmpty()) {
+            searchSuggestions.setAll(localSuggestions);
+            showSuggestions();
+        }
+
         // Cancel previous task
         if (suggestionsScheduler != null && !suggestionsScheduler.isShutdown()) {
             suggestionsScheduler.shutdownNow();
@@ -288,7 +331,7 @@ public class SearchHelper {
 
         suggestionsScheduler.schedule(() -> {
             try {
-                List<Place> suggestedPlaces = geocodingService.searchPlaces(query);
+                List<PlaceSuggestion> suggestedPlaces = geocodingService.suggest(query, MAX_SUGGESTIONS);
                 String normalizedQuery = Utils.normalizeForSearch(query);
 
                 if (normalizedQuery == null || normalizedQuery.isEmpty()) {
@@ -296,11 +339,10 @@ public class SearchHelper {
                     return;
                 }
 
-                // Convert places to suggestion strings
-                List<String> suggestions = suggestedPlaces.stream()
-                        .limit(5)
-                        .map(Place::getName)
-                        .collect(Collectors.toList());
+                // Local matches first, then server suggestions not already listed
+                Set<String> merged = new LinkedHashSet<>(localSuggestions);
+                suggestedPlaces.stream().map(PlaceSuggestion::getName).forEach(merged::add);
+                List<String> suggestions = new ArrayList<>(merged).subList(0, Math.min(merged.size(), MAX_SUGGESTIONS));
 
                 Platform.runLater(() -> {
                     searchSuggestions.setAll(suggestions);
@@ -0,0 +1,256 @@
+package tourrouteplanner.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable, packed sequence of geographic coordinates describing a path.
+ * Coordinates are stored as E6 fixed-point integers (microdegrees, about
+ * 0.11 m resolution) interleaved in a single {@code int[]}
+ * ({@code lat0, lon0, lat1, lon1, ...}), i.e. 8 bytes per vertex instead of a
+ * {@link Route.Coordinate} object plus a list slot, and traversal walks one
+ * contiguous array.
+ */
+public final class CoordinateSequence {
+
+    /** Mean Earth radius in meters, used for path lengths. */
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+    private static final CoordinateSequence EMPTY = new CoordinateSequence(new int[0]);
+
+    /** Interleaved latitude/longitude pairs in microdegrees. */
+    private final int[] latLonE6;
+    /** Lazily computed bounding box, see {@link #getBoundingBox()}. */
+    private double[] boundingBox;
+    /** Lazily computed path length in meters; negative until computed. */
+    private double lengthMeters = -1;
+
+    private CoordinateSequence(int[] latLonE6) {
+        this.latLonE6 = latLonE6;
+    }
+
+    /**
+     * Receives the vertices of a sequence in order.
+     */
+    @FunctionalInterface
+    public interface CoordinateVisitor {
+        void visit(int index, double latitude, double longitude);
+    }
+
+    /** Gets the empty sequence. */
+    public static CoordinateSequence empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a sequence from interleaved E6 values. The array is used as-is and
+     * must not be modified afterwards.
+     *
+     * @param latLonE6 Interleaved latitude/longitude pairs in microdegrees.
+     */
+    public static CoordinateSequence wrapE6(int[] latLonE6) {
+        if (latLonE6.length % 2 != 0) {
+            throw new IllegalArgumentException("Coordinate array must hold latitude/longitude pairs.");
+        }
+        return latLonE6.length == 0 ? EMPTY : new CoordinateSequence(latLonE6);
+    }
+
+    /**
+     * Creates a sequence from coordinate objects, e.g. from a legacy route file.
+     */
+    public static CoordinateSequence fromCoordinates(List<Route.Coordinate> coordinates) {
+        Builder builder = new Builder(coordinates.size());
+        for (Route.Coordinate coordinate : coordinates) {
+            if (coordinate != null) {
+                builder.add(coordinate.getLatitude(), coordinate.getLongitude());
+            }
+        }
+        return builder.build();
+    }
+
+    /** Gets the number of vertices. */
+    public int size() {
+        return latLonE6.length / 2;
+    }
+
+    /** Checks whether the sequence has no vertices. */
+    public boolean isEmpty() {
+        return latLonE6.length == 0;
+    }
+
+    /** Gets the latitude of a vertex. */
+    public double getLatitude(int index) {
+        return latLonE6[index * 2] / 1e6;
+    }
+
+    /** Gets the longitude of a vertex. */
+    public double getLongitude(int index) {
+        return latLonE6[index * 2 + 1] / 1e6;
+    }
+
+    /** Gets the latitude of a vertex in microdegrees. */
+    public int getLatitudeE6(int index) {
+        return latLonE6[index * 2];
+    }
+
+    /** Gets the longitude of a vertex in microdegrees. */
+    public int getLongitudeE6(int index) {
+        return latLonE6[index * 2 + 1];
+    }
+
+    /**
+     * Visits every vertex in order.
+     */
+    public void forEach(CoordinateVisitor visitor) {
+        for (int i = 0, n = size(); i < n; i++) {
+            visitor.visit(i, latLonE6[i * 2] / 1e6, latLonE6[i * 2 + 1] / 1e6);
+        }
+    }
+
+    /**
+     * Gets the bounding box of the path in the same layout as
+     * {@link Place#getBoundingBox()}: [minLat, maxLat, minLon, maxLon].
+     *
+     * @return A copy of the bounding box, or null if the sequence is empty.
+     */
+    public double[] getBoundingBox() {
+        if (isEmpty()) {
+            return null;
+        }
+        double[] box = boundingBox;
+        if (box == null) {
+            int minLat = Integer.MAX_VALUE;
+            int maxLat = Integer.MIN_VALUE;
+            int minLon = Integer.MAX_VALUE;
+            int maxLon = Integer.MIN_VALUE;
+            for (int i = 0; i < latLonE6.length; i += 2) {
+                minLat = Math.min(minLat, latLonE6[i]);
+                maxLat = Math.max(maxLat, latLonE6[i]);
+                minLon = Math.min(minLon, latLonE6[i + 1]);
+                maxLon = Math.max(maxLon, latLonE6[i + 1]);
+            }
+            box = new double[] { minLat / 1e6, maxLat / 1e6, minLon / 1e6, maxLon / 1e6 };
+            boundingBox = box;
+        }
+        return box.clone();
+    }
+
+    /**
+     * Gets the great-circle length of the path in meters (haversine formula).
+     */
+    public double getLengthMeters() {
+        double length = lengthMeters;
+        if (length < 0) {
+            length = 0;
+            for (int i = 2; i < latLonE6.length; i += 2) {
+                length += distanceMeters(latLonE6[i - 2], latLonE6[i - 1], latLonE6[i], latLonE6[i + 1]);
+            }
+            lengthMeters = length;
+        }
+        return length;
+    }
+
+    /**
+     * Returns a copy of the interleaved E6 values.
+     */
+    public int[] toE6Array() {
+        return latLonE6.clone();
+    }
+
+    /**
+     * Returns the vertices between two indices as a new sequence.
+     *
+     * @param from First vertex (inclusive).
+     * @param to   Last vertex (exclusive).
+     */
+    public CoordinateSequence subSequence(int from, int to) {
+        if (from < 0 || to > size() || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range " + from + ".." + to + " of " + size());
+        }
+        return wrapE6(Arrays.copyOfRange(latLonE6, from * 2, to * 2));
+    }
+
+    private static double distanceMeters(int lat1E6, int lon1E6, int lat2E6, int lon2E6) {
+        double lat1 = Math.toRadians(lat1E6 / 1e6);
+        double lat2 = Math.toRadians(lat2E6 / 1e6);
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians((lon2E6 - lon1E6) / 1e6);
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        return Arrays.equals(latLonE6, ((CoordinateSequence) o).latLonE6);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(latLonE6);
+    }
+
+    @Override
+    public String toString() {
+        return "CoordinateSequence[" + size() + " vertices]";
+    }
+
+    /**
+     * Appends vertices into a growable E6 buffer and builds an immutable
+     * {@link CoordinateSequence} without an intermediate object per vertex.
+     */
+    public static final class Builder {
+        private int[] buffer;
+        private int length;
+
+        /** Creates a builder. */
+        public Builder() {
+            this(64);
+        }
+
+        /**
+         * Creates a builder with room for the given number of vertices.
+         */
+        public Builder(int expectedSize) {
+            buffer = new int[Math.max(2, expectedSize * 2)];
+        }
+
+        /** Appends a vertex given in degrees. */
+        public Builder add(double latitude, double longitude) {
+            return addE6((int) Math.round(latitude * 1e6), (int) Math.round(longitude * 1e6));
+        }
+
+        /** Appends a vertex given in microdegrees. */
+        public Builder addE6(int latitudeE6, int longitudeE6) {
+            if (length + 2 > buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[length++] = latitudeE6;
+            buffer[length++] = longitudeE6;
+            return this;
+        }
+
+        /** Gets the number of vertices added so far. */
+        public int size() {
+            return length / 2;
+        }
+
+        /** Gets the latitude of an added vertex in microdegrees. */
+        public int getLatitudeE6(int index) {
+            return buffer[index * 2];
+        }
+
+        /** Gets the longitude of an added vertex in microdegrees. */
+        public int getLongitudeE6(int index) {
+            return buffer[index * 2 + 1];
+        }
+
+        /** Builds the sequence; the builder should not be used afterwards. */
+        public CoordinateSequence build() {
+            return wrapE6(length == buffer.length ? buffer : Arrays.copyOf(buffer, length));
+        }
+    }
+}
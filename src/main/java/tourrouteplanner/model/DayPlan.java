@@ -0,0 +1,83 @@
+package tourrouteplanner.model;
+
+import java.util.List;
+
+/**
+ * Represents one day of an {@link Itinerary}: the place the day starts from
+ * and the stops visited, with their scheduled arrival and departure times.
+ * Times are minutes after midnight of that day.
+ */
+public class DayPlan {
+    /** Place the day starts from (the trip start or the previous day's last stop). */
+    private final Place start;
+    /** Places visited during the day, in order. */
+    private final List<Place> stops;
+    /** Arrival time at each stop, in minutes after midnight. */
+    private final int[] arrivalMinutes;
+    /** Departure time from each stop, in minutes after midnight. */
+    private final int[] departureMinutes;
+    /** Time spent driving during the day, in seconds (s). */
+    private final double drivingSeconds;
+    /** Time the day starts, in minutes after midnight. */
+    private final int startMinute;
+
+    /**
+     * Creates a new DayPlan object.
+     *
+     * @param start            Place the day starts from.
+     * @param stops            Places visited, in order.
+     * @param startMinute      Start of the day in minutes after midnight.
+     * @param arrivalMinutes   Arrival time at each stop.
+     * @param departureMinutes Departure time from each stop.
+     * @param drivingSeconds   Time spent driving, in seconds.
+     */
+    public DayPlan(Place start, List<Place> stops, int startMinute, int[] arrivalMinutes, int[] departureMinutes,
+            double drivingSeconds) {
+        this.start = start;
+        this.stops = List.copyOf(stops);
+        this.startMinute = startMinute;
+        this.arrivalMinutes = arrivalMinutes.clone();
+        this.departureMinutes = departureMinutes.clone();
+        this.drivingSeconds = drivingSeconds;
+    }
+
+    /** Gets the place the day starts from. */
+    public Place getStart() {
+        return start;
+    }
+
+    /** Gets the places visited during the day, in order. */
+    public List<Place> getStops() {
+        return stops;
+    }
+
+    /** Gets the place the day ends at, i.e. where the next day starts. */
+    public Place getEnd() {
+        return stops.isEmpty() ? start : stops.get(stops.size() - 1);
+    }
+
+    /** Gets the start of the day in minutes after midnight. */
+    public int getStartMinute() {
+        return startMinute;
+    }
+
+    /** Gets the arrival time at a stop in minutes after midnight. */
+    public int getArrivalMinute(int stopIndex) {
+        return arrivalMinutes[stopIndex];
+    }
+
+    /** Gets the departure time from a stop in minutes after midnight. */
+    public int getDepartureMinute(int stopIndex) {
+        return departureMinutes[stopIndex];
+    }
+
+    /** Gets the end of the day (departure from the last stop) in minutes after midnight. */
+    public int getEndMinute() {
+        return departureMinutes.length == 0 ? startMinute : departureMinutes[departureMinutes.length - 1];
+    }
+
+    /** Gets the time spent driving during the day (s). */
+    public double getDrivingSeconds() {
+        return drivingSeconds;
+    }
+}
@@ -0,0 +1,109 @@
+package tourrouteplanner.model;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Represents a multi-day trip: the route places split into {@link DayPlan}s,
+ * plus the places that could not be scheduled within the daily time budget,
+ * their opening hours or the number of days.
+ */
+public class Itinerary {
+    /** Days of the trip, in order. */
+    private final List<DayPlan> days;
+    /** Places that did not fit into any day. */
+    private final List<Place> unscheduled;
+
+    /**
+     * Creates a new Itinerary object.
+     *
+     * @param days        Days of the trip, in order.
+     * @param unscheduled Places that did not fit into any day.
+     */
+    public Itinerary(List<DayPlan> days, List<Place> unscheduled) {
+        this.days = List.copyOf(days);
+        this.unscheduled = List.copyOf(unscheduled);
+    }
+
+    /** Gets the days of the trip, in order. */
+    public List<DayPlan> getDays() {
+        return days;
+    }
+
+    /** Gets the places that could not be scheduled. */
+    public List<Place> getUnscheduled() {
+        return unscheduled;
+    }
+
+    /**
+     * Finds the day a place is visited on.
+     *
+     * @return The day index, or -1 if the place is not scheduled.
+     */
+    public int findDay(Place place) {
+        for (int d = 0; d < days.size(); d++) {
+            if (days.get(d).getStops().contains(place)) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
+    /** Gets the total driving time of all days (s). */
+    public double getTotalDrivingSeconds() {
+        double total = 0;
+        for (DayPlan day : days) {
+            total += day.getDrivingSeconds();
+        }
+        return total;
+    }
+
+    /**
+     * Formats the itinerary as plain text, one block per day.
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (int d = 0; d < days.size(); d++) {
+            DayPlan day = days.get(d);
+            text.append(String.format(Locale.US, "Day %d (from %s, %.0f min driving)%n", d + 1,
+                    day.getStart().getName(), day.getDrivingSeconds() / 60.0));
+            for (int i = 0; i < day.getStops().size(); i++) {
+                text.append(String.format(Locale.US, "  %s-%s  %s%n", formatMinute(day.getArrivalMinute(i)),
+                        formatMinute(day.getDepartureMinute(i)), day.getStops().get(i).getName()));
+            }
+        }
+        if (!unscheduled.isEmpty()) {
+            text.append("Not scheduled:\n");
+            for (Place place : unscheduled) {
+                text.append("  ").append(place.getName()).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /** Formats minutes after midnight as HH:mm. */
+    public static String formatMinute(int minute) {
+        return String.format(Locale.US, "%02d:%02d", minute / 60, minute % 60);
+    }
+
+    /**
+     * Parses HH:mm into minutes after midnight.
+     *
+     * @throws IllegalArgumentException If the text is not a valid time.
+     */
+    public static int parseMinute(String text) {
+        String[] parts = text.trim().split(":");
+        try {
+            if (parts.length == 2) {
+                int hours = Integer.parseInt(parts[0]);
+                int minutes = Integer.parseInt(parts[1]);
+                if (hours >= 0 && hours <= 24 && minutes >= 0 && minutes < 60 && hours * 60 + minutes <= 24 * 60) {
+                    return hours * 60 + minutes;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the error below
+        }
+        throw new IllegalArgumentException("Invalid time (expected HH:mm): " + text);
+    }
+}
@@ -33,6 +33,18 @@ public class Place {
      */
     private String geoJson;
     private double importance;
+    /** Planned time spent at the place when visiting it, in minutes. */
+    private int dwellMinutes;
+    /**
+     * Opening time of the place in minutes after midnight, or null if the place
+     * has no opening hours (always open).
+     */
+    private Integer openingMinute;
+    /**
+     * Closing time of the place in minutes after midnight, or null if the place
+     * has no opening hours (always open). A visit must end by this time.
+     */
+    private Integer closingMinute;
 
     /**
      * Creates a new Place object with full information, including bounding box,
@@ -239,6 +251,71 @@ public class Place {
         this.importance = importance;
     }
 
+    /**
+     * Gets the planned visit duration at the place.
+     * 
+     * @return Dwell time in minutes.
+     */
+    public int getDwellMinutes() {
+        return dwellMinutes;
+    }
+
+    /**
+     * Sets the planned visit duration at the place.
+     * 
+     * @param dwellMinutes Dwell time in minutes; negative values are treated as
+     *                     0.
+     */
+    public void setDwellMinutes(int dwellMinutes) {
+        this.dwellMinutes = Math.max(0, dwellMinutes);
+    }
+
+    /**
+     * Checks whether the place has opening hours.
+     * 
+     * @return true if both opening and closing time are set.
+     */
+    public boolean hasOpeningHours() {
+        return openingMinute != null && closingMinute != null;
+    }
+
+    /**
+     * Gets the opening time of the place.
+     * 
+     * @return Minutes after midnight, or null if always open.
+     */
+    public Integer getOpeningMinute() {
+        return openingMinute;
+    }
+
+    /**
+     * Gets the closing time of the place.
+     * 
+     * @return Minutes after midnight, or null if always open.
+     */
+    public Integer getClosingMinute() {
+        return closingMinute;
+    }
+
+    /**
+     * Sets the opening hours of the place.
+     * 
+     * @param openingMinute Opening time in minutes after midnight, or null.
+     * @param closingMinute Closing time in minutes after midnight, or null.
+     * @throws IllegalArgumentException If only one of the times is given or the
+     *                                  place would close before it opens.
+     */
+    public void setOpeningHours(Integer openingMinute, Integer closingMinute) {
+        if ((openingMinute == null) != (closingMinute == null)) {
+            throw new IllegalArgumentException("Opening and closing time must both be set or both be empty.");
+        }
+        if (openingMinute != null && (openingMinute < 0 || closingMinute > 24 * 60 || closingMinute <= openingMinute)) {
+            throw new IllegalArgumentException("Closing time must be after opening time on the same day.");
+        }
+        this.openingMinute = openingMinute;
+        this.closingMinute = closingMinute;
+    }
+
     /**
      * Returns a string representation of the Place object.
      * Primarily used for debugging and display in ListView/TableView (if no custom
@@ -0,0 +1,68 @@
+package tourrouteplanner.model;
+
+import java.util.Locale;
+
+/**
+ * Lightweight, immutable search suggestion used for autocomplete.
+ * Holds only what the suggestion list needs, unlike {@link Place} which also
+ * carries address details, bounding box and geometry.
+ */
+public final class PlaceSuggestion {
+    /** ID of the suggested place (same format as {@link Place#getPlaceId()}). */
+    private final String placeId;
+    /** Short name of the suggested place. */
+    private final String name;
+    /** Full, human-readable label of the suggested place. */
+    private final String displayName;
+    /** Geographic latitude of the suggested place. */
+    private final double latitude;
+    /** Geographic longitude of the suggested place. */
+    private final double longitude;
+
+    /**
+     * Creates a new PlaceSuggestion.
+     *
+     * @param placeId     ID of the place.
+     * @param name        Short name of the place.
+     * @param displayName Full label of the place.
+     * @param latitude    Latitude of the place.
+     * @param longitude   Longitude of the place.
+     */
+    public PlaceSuggestion(String placeId, String name, String displayName, double latitude, double longitude) {
+        this.placeId = placeId;
+        this.name = name;
+        this.displayName = displayName;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /** Gets the place ID. */
+    public String getPlaceId() {
+        return placeId;
+    }
+
+    /** Gets the short name of the place. */
+    public String getName() {
+        return name;
+    }
+
+    /** Gets the full label of the place. */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /** Gets the latitude of the place. */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /** Gets the longitude of the place. */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s (ID: %s, Lat: %.5f, Lon: %.5f)", name, placeId, latitude, longitude);
+    }
+}
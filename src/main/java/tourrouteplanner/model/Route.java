@@ -10,23 +10,28 @@ public class Route {
     /** List of places (waypoints) in order within the route. */
     private List<Place> waypoints;
     /**
-     * List of coordinate pairs (latitude, longitude) describing the detailed path
+     * Packed coordinate pairs (latitude, longitude) describing the detailed path
      * of the route.
      */
-    private List<Coordinate> coordinates;
+    private CoordinateSequence coordinates;
     /** Total distance of the route, in meters (m). */
     private double totalDistanceMeters;
     /** Estimated total travel time of the route, in seconds (s). */
     private double totalDurationSeconds;
     /** Turn-by-turn navigation instructions for the route. */
     private String turnByTurnInstructions;
+    /**
+     * Index in {@link #coordinates} of the first vertex of each leg, followed by
+     * the index of the last vertex; null if the legs are not known.
+     */
+    private int[] legStarts;
 
     /**
      * Creates a new Route object.
      * 
      * @param waypoints              List of {@link Place} (waypoints) in the route,
      *                               in order.
-     * @param coordinates            List of {@link Coordinate} defining the route
+     * @param coordinates            {@link CoordinateSequence} defining the route
      *                               path shape.
      * @param totalDistanceMeters    Total distance of the route, in meters.
      * @param totalDurationSeconds   Estimated total travel time of the route, in
@@ -34,7 +39,7 @@ public class Route {
      * @param turnByTurnInstructions Turn-by-turn navigation instructions for the
      *                               route.
      */
-    public Route(List<Place> waypoints, List<Coordinate> coordinates, double totalDistanceMeters,
+    public Route(List<Place> waypoints, CoordinateSequence coordinates, double totalDistanceMeters,
             double totalDurationSeconds, String turnByTurnInstructions) {
         this.waypoints = waypoints;
         this.coordinates = coordinates;
@@ -43,16 +48,50 @@ public class Route {
         this.turnByTurnInstructions = turnByTurnInstructions;
     }
 
+    /**
+     * Creates a new Route object whose path is split into legs.
+     *
+     * @param waypoints              List of {@link Place} (waypoints) in the route,
+     *                               in order.
+     * @param coordinates            {@link CoordinateSequence} defining the route
+     *                               path shape.
+     * @param legStarts              Index in {@code coordinates} of the first
+     *                               vertex of each leg, followed by the index of
+     *                               the last vertex.
+     * @param totalDistanceMeters    Total distance of the route, in meters.
+     * @param totalDurationSeconds   Estimated total travel time of the route, in
+     *                               seconds.
+     * @param turnByTurnInstructions Turn-by-turn navigation instructions for the
+     *                               route.
+     */
+    public Route(List<Place> waypoints, CoordinateSequence coordinates, int[] legStarts,
+            double totalDistanceMeters, double totalDurationSeconds, String turnByTurnInstructions) {
+        this(waypoints, coordinates, totalDistanceMeters, totalDurationSeconds, turnByTurnInstructions);
+        this.legStarts = legStarts;
+    }
+
     /** Gets the list of waypoints of the route. */
     public List<Place> getWaypoints() {
         return waypoints;
     }
 
-    /** Gets the list of coordinates describing the route path. */
-    public List<Coordinate> getCoordinates() {
+    /** Gets the coordinates describing the route path. */
+    public CoordinateSequence getCoordinates() {
         return coordinates;
     }
 
+    /**
+     * Gets the index in the path of the first vertex of each leg, followed by
+     * the index of the last vertex. Leg {@code i} runs from vertex
+     * {@code legStarts[i]} to vertex {@code legStarts[i + 1]}.
+     *
+     * @return The leg start indices, or null if the route's legs are not
+     *         known (e.g. a route saved by an older version).
+     */
+    public int[] getLegStarts() {
+        return legStarts;
+    }
+
     /** Gets the total distance of the route (km). */
     public double getTotalDistanceKm() {
         return this.totalDistanceMeters / 1000.0;
@@ -71,7 +110,8 @@ public class Route {
     /**
      * Static inner class representing a geographic coordinate (latitude and
      * longitude).
-     * Used to describe points along the path of a {@link Route}.
+     * Route paths are stored as a {@link CoordinateSequence}; this class remains
+     * the element type of the path in route files.
      */
     public static class Coordinate {
         /** Latitude of the coordinate point. */
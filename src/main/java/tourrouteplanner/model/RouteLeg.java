@@ -0,0 +1,59 @@
+package tourrouteplanner.model;
+
+import java.util.List;
+
+/**
+ * Represents one leg of a route: the path between two consecutive waypoints,
+ * with its own distance, travel time and instructions. Routes are assembled
+ * from legs, so legs that did not change can be reused when the waypoints are
+ * reordered, added or removed.
+ */
+public class RouteLeg {
+    /** Coordinates describing the path of the leg. */
+    private final CoordinateSequence coordinates;
+    /** Distance of the leg, in meters (m). */
+    private final double distanceMeters;
+    /** Estimated travel time of the leg, in seconds (s). */
+    private final double durationSeconds;
+    /**
+     * Instructions of the leg, each with its distance but without a step
+     * number, since numbering depends on the legs before it.
+     */
+    private final List<String> instructions;
+
+    /**
+     * Creates a new RouteLeg object.
+     *
+     * @param coordinates     {@link CoordinateSequence} defining the leg path.
+     * @param distanceMeters  Distance of the leg, in meters.
+     * @param durationSeconds Estimated travel time of the leg, in seconds.
+     * @param instructions    Unnumbered instructions of the leg.
+     */
+    public RouteLeg(CoordinateSequence coordinates, double distanceMeters, double durationSeconds,
+            List<String> instructions) {
+        this.coordinates = coordinates;
+        this.distanceMeters = distanceMeters;
+        this.durationSeconds = durationSeconds;
+        this.instructions = List.copyOf(instructions);
+    }
+
+    /** Gets the coordinates describing the leg path. */
+    public CoordinateSequence getCoordinates() {
+        return coordinates;
+    }
+
+    /** Gets the distance of the leg (m). */
+    public double getDistanceMeters() {
+        return distanceMeters;
+    }
+
+    /** Gets the estimated travel time of the leg (s). */
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /** Gets the unnumbered instructions of the leg. */
+    public List<String> getInstructions() {
+        return instructions;
+    }
+}
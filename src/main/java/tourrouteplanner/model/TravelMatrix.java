@@ -0,0 +1,65 @@
+package tourrouteplanner.model;
+
+import java.util.List;
+
+/**
+ * Pairwise travel durations and distances between a list of places.
+ * Values are stored row-major in flat {@code double[]} arrays, where row
+ * {@code i} holds the costs of travelling from place {@code i}. Pairs without a
+ * route are {@link Double#NaN}.
+ */
+public class TravelMatrix {
+    /** Places the matrix was computed for, in row/column order. */
+    private final List<Place> places;
+    /** Travel durations in seconds (s), row-major. */
+    private final double[] durations;
+    /** Travel distances in meters (m), row-major. */
+    private final double[] distances;
+
+    /**
+     * Creates a new TravelMatrix object.
+     *
+     * @param places    Places in row/column order.
+     * @param durations Row-major travel durations in seconds; not copied.
+     * @param distances Row-major travel distances in meters; not copied.
+     */
+    public TravelMatrix(List<Place> places, double[] durations, double[] distances) {
+        int cells = places.size() * places.size();
+        if (durations.length != cells || distances.length != cells) {
+            throw new IllegalArgumentException("Matrix arrays must hold " + cells + " values.");
+        }
+        this.places = List.copyOf(places);
+        this.durations = durations;
+        this.distances = distances;
+    }
+
+    /** Gets the number of places (rows and columns). */
+    public int size() {
+        return places.size();
+    }
+
+    /** Gets the places in row/column order. */
+    public List<Place> getPlaces() {
+        return places;
+    }
+
+    /** Gets the travel duration from one place to another (s), or NaN if unreachable. */
+    public double getDuration(int from, int to) {
+        return durations[from * places.size() + to];
+    }
+
+    /** Gets the travel distance from one place to another (m), or NaN if unreachable. */
+    public double getDistance(int from, int to) {
+        return distances[from * places.size() + to];
+    }
+
+    /** Gets a copy of the row-major travel durations (s). */
+    public double[] getDurations() {
+        return durations.clone();
+    }
+
+    /** Gets a copy of the row-major travel distances (m). */
+    public double[] getDistances() {
+        return distances.clone();
+    }
+}
@@ -0,0 +1,170 @@
+package tourrouteplanner.service;
+
+import tourrouteplanner.util.Constants;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-backend view of the shared {@link HttpTransport} that protects the
+ * backend and the UI from each other:
+ * <ul>
+ * <li>a token-bucket {@link RateLimiter} paces requests,</li>
+ * <li>HTTP 429 and 503 answers are retried with jittered exponential backoff
+ * (or after the server's Retry-After delay),</li>
+ * <li>a {@link CircuitBreaker} fails fast while the backend is unhealthy, so
+ * callers can fall back to cached data immediately.</li>
+ * </ul>
+ */
+public class BackendClient {
+
+    private static final Logger log = LoggerFactory.getLogger(BackendClient.class);
+
+    private final String name;
+    private final HttpTransport transport;
+    private final RateLimiter rateLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final int maxRetries;
+
+    /**
+     * Creates a backend client.
+     *
+     * @param name           Backend name used in log and error messages.
+     * @param transport      The shared HTTP transport.
+     * @param rateLimiter    Paces requests to this backend.
+     * @param circuitBreaker Tracks the health of this backend.
+     * @param maxRetries     Retries after HTTP 429/503.
+     */
+    public BackendClient(String name, HttpTransport transport, RateLimiter rateLimiter,
+            CircuitBreaker circuitBreaker, int maxRetries) {
+        this.name = name;
+        this.transport = transport;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    /**
+     * Creates a backend client configured from the
+     * {@code <prefix>.rate.limit.*}, {@code <prefix>.retry.max} and
+     * {@code <prefix>.circuit.*} properties, with defaults from
+     * {@link Constants} for missing or invalid values.
+     *
+     * @param name      Backend name used in log and error messages.
+     * @param prefix    Property prefix, e.g. "nominatim" or "osrm".
+     * @param transport The shared HTTP transport.
+     * @param config    Loaded config.properties (may be empty).
+     * @return The configured client.
+     */
+    public static BackendClient fromConfig(String name, String prefix, HttpTransport transport, Properties config) {
+        double ratePerSecond = parse(config, prefix + Constants.CONFIG_RATE_LIMIT_SUFFIX,
+                Constants.DEFAULT_RATE_LIMIT_PER_SECOND);
+        int burst = (int) parse(config, prefix + Constants.CONFIG_RATE_BURST_SUFFIX, Constants.DEFAULT_RATE_BURST);
+        int maxRetries = (int) parse(config, prefix + Constants.CONFIG_MAX_RETRIES_SUFFIX,
+                Constants.DEFAULT_MAX_RETRIES);
+        int failureThreshold = (int) parse(config, prefix + Constants.CONFIG_CIRCUIT_THRESHOLD_SUFFIX,
+                Constants.DEFAULT_CIRCUIT_FAILURE_THRESHOLD);
+        long openMillis = (long) (parse(config, prefix + Constants.CONFIG_CIRCUIT_OPEN_SUFFIX,
+                Constants.DEFAULT_CIRCUIT_OPEN_SECONDS) * 1000);
+        log.info("{} client: {} req/s (burst {}), {} retries, circuit opens after {} failures for {} s", name,
+                ratePerSecond, burst, maxRetries, failureThreshold, openMillis / 1000);
+        return new BackendClient(name, transport, new RateLimiter(ratePerSecond, burst),
+                new CircuitBreaker(failureThreshold, openMillis), maxRetries);
+    }
+
+    /**
+     * Performs a rate-limited GET request with retries, unless the circuit is
+     * open.
+     *
+     * @param url     The absolute request URL.
+     * @param apiName Human-readable API name used in log and error messages.
+     * @param parser  Parser consuming the response body.
+     * @param <T>     The type of the parsed result.
+     * @return The parsed result.
+     * @throws CircuitBreaker.CircuitOpenException If the backend is considered
+     *                                             unhealthy.
+     * @throws IOException                         If the request fails.
+     */
+    public <T> T get(String url, String apiName, HttpTransport.BodyParser<T> parser) throws IOException {
+        if (!circuitBreaker.allowRequest()) {
+            throw new CircuitBreaker.CircuitOpenException(
+                    name + " is temporarily unavailable, not sending " + apiName + " request");
+        }
+        for (int attempt = 0;; attempt++) {
+            try {
+                rateLimiter.acquire();
+                T result = transport.get(url, apiName, parser);
+                circuitBreaker.recordSuccess();
+                return result;
+            } catch (InterruptedIOException e) {
+                circuitBreaker.recordCancelled();
+                throw e;
+            } catch (HttpTransport.HttpStatusException e) {
+                int status = e.getStatusCode();
+                boolean retryable = status == 429 || status == 503;
+                long delay = retryable && attempt < maxRetries ? backoffMillis(attempt, e.getRetryAfterMillis()) : -1;
+                if (delay < 0) {
+                    if (retryable || status >= 500) {
+                        circuitBreaker.recordFailure();
+                    } else {
+                        circuitBreaker.recordSuccess(); // The server answered; the request was bad
+                    }
+                    throw e;
+                }
+                log.warn("{} answered HTTP {}, retrying in {} ms (attempt {}/{})", name, status, delay,
+                        attempt + 1, maxRetries);
+                sleep(delay);
+            } catch (IOException | RuntimeException e) {
+                circuitBreaker.recordFailure();
+                throw e;
+            }
+        }
+    }
+
+    /** Gets the circuit breaker of this backend. */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Returns the delay before the next attempt: the server's Retry-After if
+     * given, otherwise a random delay between half and all of base * 2^attempt
+     * ("equal jitter"), so clients retrying together spread out.
+     * Returns -1 if the server asks for longer than the maximum backoff.
+     */
+    private static long backoffMillis(int attempt, long retryAfterMillis) {
+        if (retryAfterMillis >= 0) {
+            return retryAfterMillis <= Constants.RETRY_MAX_BACKOFF_MS ? retryAfterMillis : -1;
+        }
+        long ceiling = Math.min(Constants.RETRY_MAX_BACKOFF_MS, Constants.RETRY_BASE_BACKOFF_MS << attempt);
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    private void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            circuitBreaker.recordCancelled();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(name + " retry was interrupted");
+        }
+    }
+
+    private static double parse(Properties config, String key, double defaultValue) {
+        String value = config.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value '{}' for {}, using {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package tourrouteplanner.service;
+
+import java.io.IOException;
+
+/**
+ * Circuit breaker for one backend.
+ * After a number of consecutive failures the circuit opens and requests fail
+ * fast for a cool-down period. After that, a single trial request is let
+ * through (half-open). If it succeeds the circuit closes; if it fails the
+ * circuit opens again.
+ */
+public class CircuitBreaker {
+
+    /** State of the circuit. */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Thrown instead of sending a request while the circuit is open.
+     */
+    public static class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtMillis;
+    private boolean trialInFlight;
+
+    /**
+     * Creates a circuit breaker.
+     *
+     * @param failureThreshold Consecutive failures that open the circuit; zero or
+     *                         negative disables the breaker.
+     * @param openMillis       How long the circuit stays open before a trial
+     *                         request is allowed, in milliseconds.
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Checks whether a request may be sent now. When this returns true the
+     * caller must report the outcome with {@link #recordSuccess()},
+     * {@link #recordFailure()} or {@link #recordCancelled()}.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAtMillis < openMillis) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    /** Records a request the backend answered normally. */
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    /** Records a request that failed because the backend is unhealthy. */
+    public synchronized void recordFailure() {
+        if (failureThreshold <= 0) {
+            return;
+        }
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtMillis = System.currentTimeMillis();
+        }
+    }
+
+    /** Records a request abandoned by the caller, which says nothing about health. */
+    public synchronized void recordCancelled() {
+        trialInFlight = false;
+    }
+
+    /** Gets the current state. */
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,1149 @@
+package tourrouteplanner.service;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntPredicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Contraction hierarchy over a {@link RoadGraph}, answering shortest travel
+ * time queries by searching only "upwards" from both ends.
+ * <p>
+ * Preprocessing removes ("contracts") the nodes one by one, from least to
+ * most important, adding a shortcut edge between two neighbors whenever the
+ * only shortest path between them ran through the removed node. A node's rank
+ * is its position in this order. Afterwards every shortest path consists of
+ * edges going up in rank followed by edges going down, so a query is a
+ * bidirectional Dijkstra that only follows edges to higher ranks and touches a
+ * few hundred nodes even on a country-sized network.
+ * <p>
+ * Contraction runs in rounds on all cores: each round picks the nodes that are
+ * less important than everything within two hops, computes their shortcuts in
+ * parallel and then applies them. Importance weighs the shortcuts a node would
+ * add against the edges it removes, so the road hierarchy emerges by itself.
+ * Witness searches never pass through nodes of the current round, so nodes
+ * contracted side by side cannot rely on each other.
+ * <p>
+ * Edge weights are travel times in tenths of a second; distances in
+ * decimeters are carried along so the length of the fastest path is known
+ * without unpacking it. Like {@link RoadGraph}, the hierarchy is kept in int
+ * buffers so it can be used straight from a memory-mapped
+ * {@link RoadGraphFile}.
+ */
+public final class ContractionHierarchy {
+
+    private static final Logger log = LoggerFactory.getLogger(ContractionHierarchy.class);
+
+    /** Weight of unreachable pairs. */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /** Nodes a witness search settles at most before giving up (adding the shortcut). */
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    /** Settle limit while only estimating priorities; overestimating shortcuts there is cheap. */
+    private static final int SIMULATION_SETTLE_LIMIT = 50;
+
+    private final int nodeCount;
+    /** Contraction order of each node; higher ranks are more important. */
+    private final IntBuffer ranks;
+
+    /** Weight of each hierarchy edge, in tenths of a second. */
+    private final IntBuffer edgeWeights;
+    /** Length of each hierarchy edge, in decimeters. */
+    private final IntBuffer edgeDistances;
+    /** Road graph edge ({@code e} or {@code ~e}) of an original edge; unused for shortcuts. */
+    private final IntBuffer edgeBases;
+    /** First half of a shortcut, or -1 for original edges. */
+    private final IntBuffer edgeFirsts;
+    /** Second half of a shortcut, or -1 for original edges. */
+    private final IntBuffer edgeSeconds;
+
+    /** Upward edges {@code v -> w} (rank w > rank v) of each node v, as CSR. */
+    private final IntBuffer upFirsts;
+    private final IntBuffer upHeads;
+    private final IntBuffer upEdges;
+    /** Upward edges {@code w -> v} (rank w > rank v) of each node v, as CSR. */
+    private final IntBuffer downFirsts;
+    private final IntBuffer downTails;
+    private final IntBuffer downEdges;
+
+    ContractionHierarchy(IntBuffer ranks, IntBuffer edgeWeights, IntBuffer edgeDistances, IntBuffer edgeBases,
+            IntBuffer edgeFirsts, IntBuffer edgeSeconds, IntBuffer upFirsts, IntBuffer upHeads, IntBuffer upEdges,
+            IntBuffer downFirsts, IntBuffer downTails, IntBuffer downEdges) {
+        this.nodeCount = ranks.limit();
+        this.ranks = ranks;
+        this.edgeWeights = edgeWeights;
+        this.edgeDistances = edgeDistances;
+        this.edgeBases = edgeBases;
+        this.edgeFirsts = edgeFirsts;
+        this.edgeSeconds = edgeSeconds;
+        this.upFirsts = upFirsts;
+        this.upHeads = upHeads;
+        this.upEdges = upEdges;
+        this.downFirsts = downFirsts;
+        this.downTails = downTails;
+        this.downEdges = downEdges;
+    }
+
+    /**
+     * Contracts a road graph.
+     *
+     * @param graph   The road graph.
+     * @param threads Number of worker threads.
+     * @return The hierarchy.
+     * @throws InterruptedException If interrupted while contracting.
+     */
+    public static ContractionHierarchy build(RoadGraph graph, int threads) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ch-contraction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            ContractionHierarchy hierarchy = new Contractor(graph, pool, threads).contract();
+            log.info("Contraction hierarchy: {} nodes, {} edges ({} shortcuts) in {} ms", hierarchy.nodeCount,
+                    hierarchy.edgeWeights.limit(), hierarchy.edgeWeights.limit() - graph.getArcCount(),
+                    (System.nanoTime() - start) / 1_000_000);
+            return hierarchy;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Gets the arrays in constructor order, for {@link RoadGraphFile}. */
+    IntBuffer[] getSections() {
+        return new IntBuffer[] { ranks, edgeWeights, edgeDistances, edgeBases, edgeFirsts, edgeSeconds, upFirsts,
+                upHeads, upEdges, downFirsts, downTails, downEdges };
+    }
+
+    /** Gets the number of nodes. */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /** Gets the number of hierarchy edges, original edges and shortcuts. */
+    public int getEdgeCount() {
+        return edgeWeights.limit();
+    }
+
+    /**
+     * Creates a query. Queries hold search state sized to the graph and are not
+     * thread-safe; reuse one per thread.
+     */
+    public Query newQuery() {
+        return new Query();
+    }
+
+    /**
+     * Start or end of a query at a point on a road rather than at a node: the
+     * nodes the point connects to, each with the travel time and distance
+     * between the point and the node.
+     */
+    public static final class Endpoint {
+        private final int[] nodes;
+        private final int[] weights;
+        private final int[] distances;
+
+        /** Creates an endpoint at a node. */
+        public Endpoint(int node) {
+            this(new int[] { node }, new int[1], new int[1]);
+        }
+
+        /**
+         * Creates an endpoint connected to several nodes.
+         *
+         * @param nodes     The nodes.
+         * @param weights   Travel time between the point and each node, in
+         *                  tenths of a second.
+         * @param distances Distance between the point and each node, in
+         *                  decimeters.
+         */
+        public Endpoint(int[] nodes, int[] weights, int[] distances) {
+            this.nodes = nodes;
+            this.weights = weights;
+            this.distances = distances;
+        }
+    }
+
+    /**
+     * Search state for point-to-point and many-to-many queries.
+     */
+    public final class Query {
+        private final int[] forwardWeights = new int[nodeCount];
+        private final int[] backwardWeights = new int[nodeCount];
+        private final int[] forwardDistances = new int[nodeCount];
+        private final int[] backwardDistances = new int[nodeCount];
+        /** Hierarchy edge a node was reached by, and the node it came from. */
+        private final int[] forwardEdges = new int[nodeCount];
+        private final int[] forwardParents = new int[nodeCount];
+        private final int[] backwardEdges = new int[nodeCount];
+        private final int[] backwardParents = new int[nodeCount];
+        private final IntList touched = new IntList(256);
+        private final LongHeap forwardHeap = new LongHeap();
+        private final LongHeap backwardHeap = new LongHeap();
+
+        private int meetingNode = -1;
+        private int weight = UNREACHABLE;
+        private int distance;
+
+        private Query() {
+            Arrays.fill(forwardWeights, UNREACHABLE);
+            Arrays.fill(backwardWeights, UNREACHABLE);
+        }
+
+        /**
+         * Finds the fastest path between two nodes.
+         *
+         * @return Whether the target is reachable.
+         */
+        public boolean route(int source, int target) {
+            return route(new Endpoint(source), new Endpoint(target));
+        }
+
+        /**
+         * Finds the fastest path between two endpoints, through whichever of
+         * their nodes is best.
+         *
+         * @return Whether the target is reachable.
+         */
+        public boolean route(Endpoint source, Endpoint target) {
+            reset();
+            for (int i = 0; i < source.nodes.length; i++) {
+                reachForward(source.nodes[i], source.weights[i], source.distances[i], -1, -1);
+            }
+            for (int i = 0; i < target.nodes.length; i++) {
+                reachBackward(target.nodes[i], target.weights[i], target.distances[i], -1, -1);
+            }
+            weight = UNREACHABLE;
+            meetingNode = -1;
+            while (true) {
+                int forwardMin = forwardHeap.isEmpty() ? UNREACHABLE : LongHeap.weightOf(forwardHeap.peek());
+                int backwardMin = backwardHeap.isEmpty() ? UNREACHABLE : LongHeap.weightOf(backwardHeap.peek());
+                if (Math.min(forwardMin, backwardMin) >= weight) {
+                    break;
+                }
+                if (forwardMin <= backwardMin) {
+                    settleForward(true);
+                } else {
+                    settleBackward(true);
+                }
+            }
+            if (meetingNode < 0) {
+                return false;
+            }
+            distance = forwardDistances[meetingNode] + backwardDistances[meetingNode];
+            return true;
+        }
+
+        /** Gets the node the last route leaves its source endpoint from. */
+        public int getSourceNode() {
+            int node = meetingNode;
+            while (forwardEdges[node] >= 0) {
+                node = forwardParents[node];
+            }
+            return node;
+        }
+
+        /** Gets the node the last route reaches its target endpoint at. */
+        public int getTargetNode() {
+            int node = meetingNode;
+            while (backwardEdges[node] >= 0) {
+                node = backwardParents[node];
+            }
+            return node;
+        }
+
+        /** Gets the travel time of the last route, in tenths of a second. */
+        public int getWeight() {
+            return weight;
+        }
+
+        /** Gets the length of the last route, in decimeters. */
+        public int getDistance() {
+            return distance;
+        }
+
+        /**
+         * Gets the road graph edges of the last route in travel order, each as
+         * {@code e} or {@code ~e} like {@link RoadGraph#getArcEdge(int)}.
+         */
+        public int[] getPath() {
+            if (meetingNode < 0) {
+                return new int[0];
+            }
+            IntList hierarchyEdges = new IntList(64);
+            for (int node = meetingNode; forwardEdges[node] >= 0; node = forwardParents[node]) {
+                hierarchyEdges.add(forwardEdges[node]);
+            }
+            hierarchyEdges.reverse();
+            for (int node = meetingNode; backwardEdges[node] >= 0; node = backwardParents[node]) {
+                hierarchyEdges.add(backwardEdges[node]);
+            }
+            IntList path = new IntList(hierarchyEdges.size() * 4);
+            IntList stack = new IntList(32);
+            for (int i = 0; i < hierarchyEdges.size(); i++) {
+                stack.add(hierarchyEdges.get(i));
+                while (stack.size() > 0) {
+                    int edge = stack.removeLast();
+                    if (edgeFirsts.get(edge) < 0) {
+                        path.add(edgeBases.get(edge));
+                    } else {
+                        stack.add(edgeSeconds.get(edge));
+                        stack.add(edgeFirsts.get(edge));
+                    }
+                }
+            }
+            return path.toArray();
+        }
+
+        /**
+         * Computes travel times and distances between all sources and targets.
+         * Each target's backward search space is stored in buckets at the nodes
+         * it reaches; each source's forward search then only scans the buckets
+         * of the nodes it settles.
+         *
+         * @param sources   Source endpoints.
+         * @param targets   Target endpoints.
+         * @param weights   Receives travel times (tenths of a second),
+         *                  row-major by source; {@link #UNREACHABLE} where no
+         *                  path exists.
+         * @param distances Receives distances (decimeters), row-major by source.
+         */
+        public void manyToMany(Endpoint[] sources, Endpoint[] targets, int[] weights, int[] distances) {
+            Arrays.fill(weights, 0, sources.length * targets.length, UNREACHABLE);
+
+            IntList bucketNodes = new IntList(targets.length * 64);
+            IntList bucketTargets = new IntList(targets.length * 64);
+            IntList bucketWeights = new IntList(targets.length * 64);
+            IntList bucketDistances = new IntList(targets.length * 64);
+            for (int t = 0; t < targets.length; t++) {
+                reset();
+                Endpoint target = targets[t];
+                for (int i = 0; i < target.nodes.length; i++) {
+                    reachBackward(target.nodes[i], target.weights[i], target.distances[i], -1, -1);
+                }
+                while (!backwardHeap.isEmpty()) {
+                    int node = settleBackward(false);
+                    if (node >= 0) {
+                        bucketNodes.add(node);
+                        bucketTargets.add(t);
+                        bucketWeights.add(backwardWeights[node]);
+                        bucketDistances.add(backwardDistances[node]);
+                    }
+                }
+            }
+            int[] order = bucketNodes.sortedOrder();
+            int[] sortedNodes = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedNodes[i] = bucketNodes.get(order[i]);
+            }
+
+            for (int s = 0; s < sources.length; s++) {
+                reset();
+                Endpoint source = sources[s];
+                for (int i = 0; i < source.nodes.length; i++) {
+                    reachForward(source.nodes[i], source.weights[i], source.distances[i], -1, -1);
+                }
+                int row = s * targets.length;
+                while (!forwardHeap.isEmpty()) {
+                    int node = settleForward(false);
+                    if (node < 0) {
+                        continue;
+                    }
+                    int i = Arrays.binarySearch(sortedNodes, node);
+                    if (i < 0) {
+                        continue;
+                    }
+                    while (i > 0 && sortedNodes[i - 1] == node) {
+                        i--;
+                    }
+                    for (; i < sortedNodes.length && sortedNodes[i] == node; i++) {
+                        int entry = order[i];
+                        int cell = row + bucketTargets.get(entry);
+                        long total = (long) forwardWeights[node] + bucketWeights.get(entry);
+                        if (total < weights[cell]) {
+                            weights[cell] = (int) total;
+                            distances[cell] = forwardDistances[node] + bucketDistances.get(entry);
+                        }
+                    }
+                }
+            }
+            reset();
+        }
+
+        /**
+         * Settles the next node of the forward search and relaxes its upward
+         * edges.
+         *
+         * @param meet Whether to look for the backward search (point-to-point).
+         * @return The settled node, or -1 if the heap entry was stale.
+         */
+        private int settleForward(boolean meet) {
+            long entry = forwardHeap.pop();
+            int node = LongHeap.nodeOf(entry);
+            int nodeWeight = LongHeap.weightOf(entry);
+            if (nodeWeight > forwardWeights[node]) {
+                return -1;
+            }
+            if (meet && backwardWeights[node] != UNREACHABLE
+                    && (long) nodeWeight + backwardWeights[node] < weight) {
+                weight = nodeWeight + backwardWeights[node];
+                meetingNode = node;
+            }
+            if (meet && stalled(node, nodeWeight, forwardWeights, downFirsts, downTails, downEdges)) {
+                return node;
+            }
+            for (int arc = upFirsts.get(node), end = upFirsts.get(node + 1); arc < end; arc++) {
+                int edge = upEdges.get(arc);
+                reachForward(upHeads.get(arc), nodeWeight + edgeWeights.get(edge),
+                        forwardDistances[node] + edgeDistances.get(edge), edge, node);
+            }
+            return node;
+        }
+
+        /** Counterpart of {@link #settleForward(boolean)} for the backward search. */
+        private int settleBackward(boolean meet) {
+            long entry = backwardHeap.pop();
+            int node = LongHeap.nodeOf(entry);
+            int nodeWeight = LongHeap.weightOf(entry);
+            if (nodeWeight > backwardWeights[node]) {
+                return -1;
+            }
+            if (meet && forwardWeights[node] != UNREACHABLE
+                    && (long) nodeWeight + forwardWeights[node] < weight) {
+                weight = nodeWeight + forwardWeights[node];
+                meetingNode = node;
+            }
+            if (meet && stalled(node, nodeWeight, backwardWeights, upFirsts, upHeads, upEdges)) {
+                return node;
+            }
+            for (int arc = downFirsts.get(node), end = downFirsts.get(node + 1); arc < end; arc++) {
+                int edge = downEdges.get(arc);
+                reachBackward(downTails.get(arc), nodeWeight + edgeWeights.get(edge),
+                        backwardDistances[node] + edgeDistances.get(edge), edge, node);
+            }
+            return node;
+        }
+
+        /**
+         * Stall-on-demand: a node reached suboptimally, as a higher node of the
+         * same search already offers a shorter way to it, needs no relaxing.
+         */
+        private boolean stalled(int node, int nodeWeight, int[] searchWeights, IntBuffer firsts, IntBuffer others,
+                IntBuffer edges) {
+            for (int arc = firsts.get(node), end = firsts.get(node + 1); arc < end; arc++) {
+                int other = searchWeights[others.get(arc)];
+                if (other != UNREACHABLE && (long) other + edgeWeights.get(edges.get(arc)) < nodeWeight) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void reachForward(int node, int nodeWeight, int nodeDistance, int edge, int parent) {
+            if (nodeWeight < forwardWeights[node]) {
+                touch(node);
+                forwardWeights[node] = nodeWeight;
+                forwardDistances[node] = nodeDistance;
+                forwardEdges[node] = edge;
+                forwardParents[node] = parent;
+                forwardHeap.push(nodeWeight, node);
+            }
+        }
+
+        private void reachBackward(int node, int nodeWeight, int nodeDistance, int edge, int parent) {
+            if (nodeWeight < backwardWeights[node]) {
+                touch(node);
+                backwardWeights[node] = nodeWeight;
+                backwardDistances[node] = nodeDistance;
+                backwardEdges[node] = edge;
+                backwardParents[node] = parent;
+                backwardHeap.push(nodeWeight, node);
+            }
+        }
+
+        private void touch(int node) {
+            if (forwardWeights[node] == UNREACHABLE && backwardWeights[node] == UNREACHABLE) {
+                touched.add(node);
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < touched.size(); i++) {
+                int node = touched.get(i);
+                forwardWeights[node] = UNREACHABLE;
+                backwardWeights[node] = UNREACHABLE;
+            }
+            touched.clear();
+            forwardHeap.clear();
+            backwardHeap.clear();
+        }
+    }
+
+    /**
+     * Contracts all nodes of a road graph; used once by {@link #build}.
+     */
+    private static final class Contractor {
+        private final int nodeCount;
+        private final ExecutorService pool;
+        private final int threads;
+        private final int initialEdges;
+
+        // Hierarchy edges, growing as shortcuts are added
+        private int[] sources;
+        private int[] targets;
+        private int[] weights;
+        private int[] distances;
+        private int[] bases;
+        private int[] firsts;
+        private int[] seconds;
+        /** Number of original edges each hierarchy edge stands for. */
+        private int[] hops;
+        private int edgeCount;
+
+        /** Edges between uncontracted nodes, by endpoint. */
+        private final IntList[] outEdges;
+        private final IntList[] inEdges;
+        private final boolean[] contracted;
+        /** Nodes contracted in the current round; witness searches avoid them. */
+        private final boolean[] contracting;
+        private final float[] priorities;
+        private final int[] levels;
+        private final boolean[] dirtyMarks;
+        private final int[] ranks;
+        private final int[][] upLists;
+        private final int[][] downLists;
+
+        Contractor(RoadGraph graph, ExecutorService pool, int threads) {
+            this.nodeCount = graph.getNodeCount();
+            this.pool = pool;
+            this.threads = threads;
+            int arcs = graph.getArcCount();
+            this.initialEdges = arcs;
+            sources = new int[arcs * 2 + 16];
+            targets = new int[sources.length];
+            weights = new int[sources.length];
+            distances = new int[sources.length];
+            bases = new int[sources.length];
+            firsts = new int[sources.length];
+            seconds = new int[sources.length];
+            hops = new int[sources.length];
+
+            outEdges = new IntList[nodeCount];
+            inEdges = new IntList[nodeCount];
+            for (int v = 0; v < nodeCount; v++) {
+                outEdges[v] = new IntList(4);
+                inEdges[v] = new IntList(4);
+            }
+            for (int v = 0; v < nodeCount; v++) {
+                for (int arc = graph.getFirstArc(v); arc < graph.getFirstArc(v + 1); arc++) {
+                    int base = graph.getArcEdge(arc);
+                    int edge = base >= 0 ? base : ~base;
+                    addEdge(v, graph.getArcHead(arc), graph.getEdgeDuration(edge), graph.getEdgeDistance(edge),
+                            base, -1, -1, 1);
+                }
+            }
+            contracted = new boolean[nodeCount];
+            contracting = new boolean[nodeCount];
+            priorities = new float[nodeCount];
+            levels = new int[nodeCount];
+            dirtyMarks = new boolean[nodeCount];
+            ranks = new int[nodeCount];
+            upLists = new int[nodeCount][];
+            downLists = new int[nodeCount][];
+        }
+
+        ContractionHierarchy contract() throws InterruptedException {
+            IntList remaining = new IntList(nodeCount);
+            for (int v = 0; v < nodeCount; v++) {
+                remaining.add(v);
+            }
+            updatePriorities(remaining);
+
+            int nextRank = 0;
+            int rounds = 0;
+            while (remaining.size() > 0) {
+                IntList selected = selectIndependentSet(remaining);
+                for (int i = 0; i < selected.size(); i++) {
+                    contracting[selected.get(i)] = true;
+                }
+                IntList[] shortcuts = findShortcuts(selected);
+
+                IntList dirty = new IntList(selected.size() * 4);
+                for (int i = 0; i < selected.size(); i++) {
+                    int v = selected.get(i);
+                    ranks[v] = nextRank++;
+                    upLists[v] = outEdges[v].toArray();
+                    downLists[v] = inEdges[v].toArray();
+                    for (int edge : upLists[v]) {
+                        inEdges[targets[edge]].removeValue(edge);
+                        notifyContracted(targets[edge], v, dirty);
+                    }
+                    for (int edge : downLists[v]) {
+                        outEdges[sources[edge]].removeValue(edge);
+                        notifyContracted(sources[edge], v, dirty);
+                    }
+                    outEdges[v] = null;
+                    inEdges[v] = null;
+                    contracted[v] = true;
+                    contracting[v] = false;
+                }
+                for (IntList found : shortcuts) {
+                    for (int i = 0; i < found.size(); i += 2) {
+                        addShortcut(found.get(i), found.get(i + 1));
+                    }
+                }
+                for (int i = 0; i < dirty.size(); i++) {
+                    dirtyMarks[dirty.get(i)] = false;
+                }
+
+                remaining = remaining.filter(v -> !contracted[v]);
+                updatePriorities(dirty);
+                rounds++;
+            }
+            log.debug("Contracted {} nodes in {} rounds", nodeCount, rounds);
+            return toHierarchy();
+        }
+
+        /** Records that a neighbor of a node was contracted and queues the node for a new priority. */
+        private void notifyContracted(int neighbor, int node, IntList dirty) {
+            levels[neighbor] = Math.max(levels[neighbor], levels[node] + 1);
+            if (!dirtyMarks[neighbor]) {
+                dirtyMarks[neighbor] = true;
+                dirty.add(neighbor);
+            }
+        }
+
+        /**
+         * Picks the nodes that are less important than all their uncontracted
+         * neighbors; no two of them are adjacent.
+         */
+        private IntList selectIndependentSet(IntList remaining) throws InterruptedException {
+            IntList[] parts = forEachChunk(remaining.size(), (from, to, search) -> {
+                IntList part = new IntList(Math.max(16, (to - from) / 4));
+                for (int i = from; i < to; i++) {
+                    int v = remaining.get(i);
+                    if (isLocalMinimum(v)) {
+                        part.add(v);
+                    }
+                }
+                return part;
+            });
+            IntList selected = new IntList(remaining.size() / 4 + 16);
+            for (IntList part : parts) {
+                selected.addAll(part);
+            }
+            return selected;
+        }
+
+        /**
+         * Checks that a node is less important than every uncontracted node
+         * within two hops, which leaves the neighborhoods witness paths run
+         * through free of other nodes contracted in the same round.
+         */
+        private boolean isLocalMinimum(int v) {
+            return precedesAll(v, outEdges[v], targets, true) && precedesAll(v, inEdges[v], sources, true);
+        }
+
+        /** Checks that {@code v} comes before the far ends of the given edges (and, if deep, their neighbors). */
+        private boolean precedesAll(int v, IntList edges, int[] endpoints, boolean deep) {
+            for (int i = 0; i < edges.size(); i++) {
+                int w = endpoints[edges.get(i)];
+                if (w != v && !before(v, w)) {
+                    return false;
+                }
+                if (deep && (!precedesAll(v, outEdges[w], targets, false)
+                        || !precedesAll(v, inEdges[w], sources, false))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Adds the shortcut bridging two edges, replacing any longer parallel
+         * edge between the same nodes (which no shortest path needs anymore).
+         */
+        private void addShortcut(int in, int out) {
+            int source = sources[in];
+            int target = targets[out];
+            int weight = weights[in] + weights[out];
+            IntList parallel = outEdges[source];
+            for (int i = parallel.size() - 1; i >= 0; i--) {
+                int edge = parallel.get(i);
+                if (targets[edge] != target) {
+                    continue;
+                }
+                if (weights[edge] <= weight) {
+                    return;
+                }
+                parallel.removeValue(edge);
+                inEdges[target].removeValue(edge);
+            }
+            addEdge(source, target, weight, distances[in] + distances[out], -1, in, out, hops[in] + hops[out]);
+        }
+
+        /** Orders nodes by priority, then by a hash that spreads ties evenly. */
+        private boolean before(int v, int w) {
+            if (priorities[v] != priorities[w]) {
+                return priorities[v] < priorities[w];
+            }
+            int hashV = mix(v);
+            int hashW = mix(w);
+            return hashV != hashW ? hashV < hashW : v < w;
+        }
+
+        private static int mix(int value) {
+            int h = value * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * Computes the shortcuts of each selected node in parallel.
+         *
+         * @return Per worker, pairs of (incoming edge, outgoing edge) to bridge.
+         */
+        private IntList[] findShortcuts(IntList selected) throws InterruptedException {
+            return forEachChunk(selected.size(), (from, to, search) -> {
+                IntList found = new IntList(16);
+                for (int i = from; i < to; i++) {
+                    shortcuts(selected.get(i), search, found);
+                }
+                return found;
+            });
+        }
+
+        /**
+         * Recomputes the priorities of the given nodes in parallel: twice the
+         * ratio of shortcuts added to edges removed, plus the same ratio
+         * counted in original edges, plus the node's level. Ratios rather than
+         * differences keep high-degree junctions from being contracted early,
+         * and the level spreads contraction evenly over the network.
+         */
+        private void updatePriorities(IntList nodes) throws InterruptedException {
+            forEachChunk(nodes.size(), (from, to, search) -> {
+                for (int i = from; i < to; i++) {
+                    int v = nodes.get(i);
+                    int added = shortcuts(v, search, null);
+                    int removed = outEdges[v].size() + inEdges[v].size();
+                    int removedHops = 0;
+                    for (int j = 0; j < outEdges[v].size(); j++) {
+                        removedHops += hops[outEdges[v].get(j)];
+                    }
+                    for (int j = 0; j < inEdges[v].size(); j++) {
+                        removedHops += hops[inEdges[v].get(j)];
+                    }
+                    priorities[v] = removed == 0 ? levels[v]
+                            : 2f * added / removed + (float) search.addedHops / removedHops + levels[v];
+                }
+                return null;
+            });
+        }
+
+        /**
+         * Finds the shortcuts contracting a node requires: for each pair of
+         * neighbors u -> v -> w, a shortcut u -> w unless a witness path
+         * avoiding v is at most as long. Also leaves the number of original
+         * edges the shortcuts stand for in {@code search.addedHops}.
+         *
+         * @param found Receives (incoming edge, outgoing edge) pairs, or null to
+         *              only count.
+         * @return The number of shortcuts.
+         */
+        private int shortcuts(int v, WitnessSearch search, IntList found) {
+            IntList in = inEdges[v];
+            IntList out = outEdges[v];
+            boolean[] usefulIn = search.usefulIn(in);
+            boolean[] usefulOut = search.usefulOut(out);
+            int maxOut = -1;
+            for (int j = 0; j < out.size(); j++) {
+                if (usefulOut[j]) {
+                    maxOut = Math.max(maxOut, weights[out.get(j)]);
+                }
+            }
+            int count = 0;
+            search.addedHops = 0;
+            for (int i = 0; i < in.size(); i++) {
+                if (!usefulIn[i] || maxOut < 0) {
+                    continue;
+                }
+                int inEdge = in.get(i);
+                int u = sources[inEdge];
+                search.run(u, v, weights[inEdge] + maxOut,
+                        found != null ? WITNESS_SETTLE_LIMIT : SIMULATION_SETTLE_LIMIT);
+                for (int j = 0; j < out.size(); j++) {
+                    int outEdge = out.get(j);
+                    int w = targets[outEdge];
+                    if (w == u || !usefulOut[j]) {
+                        continue;
+                    }
+                    if (search.weightTo(w) > weights[inEdge] + weights[outEdge]) {
+                        count++;
+                        search.addedHops += hops[inEdge] + hops[outEdge];
+                        if (found != null) {
+                            found.add(inEdge);
+                            found.add(outEdge);
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        private int addEdge(int source, int target, int weight, int distance, int base, int first, int second,
+                int hopCount) {
+            if (edgeCount == sources.length) {
+                int capacity = edgeCount + (edgeCount >> 1);
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+                distances = Arrays.copyOf(distances, capacity);
+                bases = Arrays.copyOf(bases, capacity);
+                firsts = Arrays.copyOf(firsts, capacity);
+                seconds = Arrays.copyOf(seconds, capacity);
+                hops = Arrays.copyOf(hops, capacity);
+            }
+            int edge = edgeCount++;
+            sources[edge] = source;
+            targets[edge] = target;
+            weights[edge] = weight;
+            distances[edge] = distance;
+            bases[edge] = base;
+            firsts[edge] = first;
+            seconds[edge] = second;
+            hops[edge] = hopCount;
+            outEdges[source].add(edge);
+            inEdges[target].add(edge);
+            return edge;
+        }
+
+        private ContractionHierarchy toHierarchy() {
+            int[] upFirsts = new int[nodeCount + 1];
+            int[] downFirsts = new int[nodeCount + 1];
+            for (int v = 0; v < nodeCount; v++) {
+                upFirsts[v + 1] = upFirsts[v] + upLists[v].length;
+                downFirsts[v + 1] = downFirsts[v] + downLists[v].length;
+            }
+            int[] upHeads = new int[upFirsts[nodeCount]];
+            int[] upEdges = new int[upHeads.length];
+            int[] downTails = new int[downFirsts[nodeCount]];
+            int[] downEdges = new int[downTails.length];
+            for (int v = 0; v < nodeCount; v++) {
+                for (int i = 0; i < upLists[v].length; i++) {
+                    upEdges[upFirsts[v] + i] = upLists[v][i];
+                    upHeads[upFirsts[v] + i] = targets[upLists[v][i]];
+                }
+                for (int i = 0; i < downLists[v].length; i++) {
+                    downEdges[downFirsts[v] + i] = downLists[v][i];
+                    downTails[downFirsts[v] + i] = sources[downLists[v][i]];
+                }
+            }
+            log.debug("{} original edges, {} shortcuts", initialEdges, edgeCount - initialEdges);
+            return new ContractionHierarchy(IntBuffer.wrap(ranks), trimmed(weights), trimmed(distances),
+                    trimmed(bases), trimmed(firsts), trimmed(seconds), IntBuffer.wrap(upFirsts),
+                    IntBuffer.wrap(upHeads), IntBuffer.wrap(upEdges), IntBuffer.wrap(downFirsts),
+                    IntBuffer.wrap(downTails), IntBuffer.wrap(downEdges));
+        }
+
+        private IntBuffer trimmed(int[] edgeValues) {
+            return IntBuffer.wrap(Arrays.copyOf(edgeValues, edgeCount));
+        }
+
+        /**
+         * Splits {@code [0, count)} into one contiguous chunk per worker and
+         * runs them on the pool, each with its own witness search.
+         */
+        private IntList[] forEachChunk(int count, ChunkTask task) throws InterruptedException {
+            int chunks = count < 1024 ? 1 : threads;
+            List<Callable<IntList>> calls = new ArrayList<>(chunks);
+            for (int c = 0; c < chunks; c++) {
+                int from = (int) ((long) count * c / chunks);
+                int to = (int) ((long) count * (c + 1) / chunks);
+                calls.add(() -> task.run(from, to, searches.get()));
+            }
+            IntList[] results = new IntList[chunks];
+            List<Future<IntList>> futures = pool.invokeAll(calls);
+            for (int c = 0; c < chunks; c++) {
+                try {
+                    results[c] = futures.get(c).get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Contraction worker failed", e.getCause());
+                }
+                if (results[c] == null) {
+                    results[c] = new IntList(0);
+                }
+            }
+            return results;
+        }
+
+        /** One witness search per worker thread, sized to the graph. */
+        private final ThreadLocal<WitnessSearch> searches = ThreadLocal.withInitial(WitnessSearch::new);
+
+        /**
+         * Dijkstra search for witness paths that avoid the node being contracted
+         * and all nodes contracted before or in the same round.
+         */
+        private final class WitnessSearch {
+            private final int[] searchWeights = new int[nodeCount];
+            private final IntList touched = new IntList(WITNESS_SETTLE_LIMIT * 4);
+            private final LongHeap heap = new LongHeap();
+            private boolean[] usefulIn = new boolean[16];
+            private boolean[] usefulOut = new boolean[16];
+            /** Original edges behind the shortcuts found by the last {@code shortcuts} call. */
+            int addedHops;
+
+            WitnessSearch() {
+                Arrays.fill(searchWeights, UNREACHABLE);
+            }
+
+            /** Flags the incoming edges that are the cheapest (first) from their source. */
+            boolean[] usefulIn(IntList edges) {
+                usefulIn = markCheapest(edges, sources, usefulIn);
+                return usefulIn;
+            }
+
+            /** Flags the outgoing edges that are the cheapest (first) to their target. */
+            boolean[] usefulOut(IntList edges) {
+                usefulOut = markCheapest(edges, targets, usefulOut);
+                return usefulOut;
+            }
+
+            private boolean[] markCheapest(IntList edges, int[] endpoints, boolean[] marks) {
+                int size = edges.size();
+                if (marks.length < size) {
+                    marks = new boolean[Math.max(size, marks.length * 2)];
+                }
+                for (int i = 0; i < size; i++) {
+                    int edge = edges.get(i);
+                    marks[i] = true;
+                    for (int k = 0; k < i && marks[i]; k++) {
+                        int other = edges.get(k);
+                        if (marks[k] && endpoints[other] == endpoints[edge]) {
+                            if (weights[other] <= weights[edge]) {
+                                marks[i] = false;
+                            } else {
+                                marks[k] = false;
+                            }
+                        }
+                    }
+                }
+                return marks;
+            }
+
+            void run(int source, int avoid, int maxWeight, int settleLimit) {
+                for (int i = 0; i < touched.size(); i++) {
+                    searchWeights[touched.get(i)] = UNREACHABLE;
+                }
+                touched.clear();
+                heap.clear();
+                searchWeights[source] = 0;
+                touched.add(source);
+                heap.push(0, source);
+                int settled = 0;
+                while (!heap.isEmpty() && settled < settleLimit) {
+                    long entry = heap.pop();
+                    int node = LongHeap.nodeOf(entry);
+                    int nodeWeight = LongHeap.weightOf(entry);
+                    if (nodeWeight > searchWeights[node]) {
+                        continue;
+                    }
+                    if (nodeWeight > maxWeight) {
+                        break;
+                    }
+                    settled++;
+                    IntList out = outEdges[node];
+                    for (int i = 0; i < out.size(); i++) {
+                        int edge = out.get(i);
+                        int next = targets[edge];
+                        if (next == avoid || contracting[next]) {
+                            continue;
+                        }
+                        int nextWeight = nodeWeight + weights[edge];
+                        if (nextWeight < searchWeights[next]) {
+                            if (searchWeights[next] == UNREACHABLE) {
+                                touched.add(next);
+                            }
+                            searchWeights[next] = nextWeight;
+                            heap.push(nextWeight, next);
+                        }
+                    }
+                }
+            }
+
+            int weightTo(int node) {
+                return searchWeights[node];
+            }
+        }
+    }
+
+    /** Work on a chunk of indices with the worker's witness search. */
+    @FunctionalInterface
+    private interface ChunkTask {
+        IntList run(int from, int to, Contractor.WitnessSearch search);
+    }
+
+    /**
+     * Binary min-heap of (weight, node) pairs packed into longs. Entries are
+     * never updated; stale ones are skipped when popped.
+     */
+    private static final class LongHeap {
+        private long[] entries = new long[64];
+        private int size;
+
+        static int weightOf(long entry) {
+            return (int) (entry >>> 32);
+        }
+
+        static int nodeOf(long entry) {
+            return (int) entry;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        long peek() {
+            return entries[0];
+        }
+
+        void push(int weight, int node) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            long entry = ((long) weight << 32) | (node & 0xFFFFFFFFL);
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (entries[parent] <= entry) {
+                    break;
+                }
+                entries[i] = entries[parent];
+                i = parent;
+            }
+            entries[i] = entry;
+        }
+
+        long pop() {
+            long top = entries[0];
+            long last = entries[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && entries[child + 1] < entries[child]) {
+                    child++;
+                }
+                if (entries[child] >= last) {
+                    break;
+                }
+                entries[i] = entries[child];
+                i = child;
+            }
+            if (size > 0) {
+                entries[i] = last;
+            }
+            return top;
+        }
+    }
+
+    /**
+     * Growable list of ints.
+     */
+    private static final class IntList {
+        private int[] values;
+        private int size;
+
+        IntList(int capacity) {
+            values = new int[Math.max(4, capacity)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(IntList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        int removeLast() {
+            return values[--size];
+        }
+
+        void removeValue(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void reverse() {
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                int swap = values[i];
+                values[i] = values[j];
+                values[j] = swap;
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        IntList filter(IntPredicate keep) {
+            IntList kept = new IntList(size);
+            for (int i = 0; i < size; i++) {
+                if (keep.test(values[i])) {
+                    kept.add(values[i]);
+                }
+            }
+            return kept;
+        }
+
+        /** Gets the indices of the values in ascending value order. */
+        int[] sortedOrder() {
+            long[] keyed = new long[size];
+            for (int i = 0; i < size; i++) {
+                keyed[i] = ((long) values[i] << 32) | i;
+            }
+            Arrays.sort(keyed);
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = (int) keyed[i];
+            }
+            return order;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package tourrouteplanner.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact, read-only table of named places extracted from an OSM extract.
+ * Entries are stored column-wise (parallel arrays, coordinates as E6
+ * integers) to keep the in-memory footprint small. The file format is a
+ * gzip-compressed stream written by {@link Builder#write(File)} and read by
+ * {@link #read(File)}.
+ */
+public final class Gazetteer {
+
+    /** File signature ("TRPG"). */
+    private static final int MAGIC = 0x54525047;
+    /** Current file format version. */
+    private static final int VERSION = 1;
+
+    private final String[] names;
+    private final String[] categories;
+    private final String[] addresses;
+    private final String[] osmIds;
+    private final int[] latitudesE6;
+    private final int[] longitudesE6;
+    private final byte[] ranks;
+
+    private Gazetteer(String[] names, String[] categories, String[] addresses, String[] osmIds,
+            int[] latitudesE6, int[] longitudesE6, byte[] ranks) {
+        this.names = names;
+        this.categories = categories;
+        this.addresses = addresses;
+        this.osmIds = osmIds;
+        this.latitudesE6 = latitudesE6;
+        this.longitudesE6 = longitudesE6;
+        this.ranks = ranks;
+    }
+
+    /**
+     * Reads a gazetteer file written by {@link Builder#write(File)}.
+     *
+     * @param file The gazetteer file.
+     * @return The loaded gazetteer.
+     * @throws IOException If the file cannot be read or has an unknown format.
+     */
+    public static Gazetteer read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file), 1 << 16)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a gazetteer file: " + file.getAbsolutePath());
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported gazetteer version " + version + " in " + file.getAbsolutePath());
+            }
+            int count = in.readInt();
+            Builder builder = new Builder(count);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String category = in.readUTF();
+                String address = in.readUTF();
+                String osmId = in.readUTF();
+                int latitudeE6 = in.readInt();
+                int longitudeE6 = in.readInt();
+                int rank = in.readUnsignedByte();
+                builder.add(name, category, address, osmId, latitudeE6, longitudeE6, rank);
+            }
+            return builder.build();
+        }
+    }
+
+    /** Gets the number of entries. */
+    public int size() {
+        return names.length;
+    }
+
+    /** Gets the name of an entry. */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /** Gets the OSM category of an entry, e.g. "tourism=museum". */
+    public String getCategory(int index) {
+        return categories[index];
+    }
+
+    /** Gets the address of an entry, or an empty string if unknown. */
+    public String getAddress(int index) {
+        return addresses[index];
+    }
+
+    /** Gets the OSM ID of an entry in Nominatim's format, e.g. "N123" or "W456". */
+    public String getOsmId(int index) {
+        return osmIds[index];
+    }
+
+    /** Gets the latitude of an entry. */
+    public double getLatitude(int index) {
+        return latitudesE6[index] / 1e6;
+    }
+
+    /** Gets the longitude of an entry. */
+    public double getLongitude(int index) {
+        return longitudesE6[index] / 1e6;
+    }
+
+    /** Gets the latitude of an entry in microdegrees. */
+    public int getLatitudeE6(int index) {
+        return latitudesE6[index];
+    }
+
+    /** Gets the longitude of an entry in microdegrees. */
+    public int getLongitudeE6(int index) {
+        return longitudesE6[index];
+    }
+
+    /** Gets the rank (0-100) of an entry; higher means more prominent. */
+    public int getRank(int index) {
+        return ranks[index] & 0xFF;
+    }
+
+    /**
+     * Accumulates entries and writes or builds a {@link Gazetteer}.
+     */
+    public static final class Builder {
+        private String[] names;
+        private String[] categories;
+        private String[] addresses;
+        private String[] osmIds;
+        private int[] latitudesE6;
+        private int[] longitudesE6;
+        private byte[] ranks;
+        private int count;
+
+        /** Creates an empty builder. */
+        public Builder() {
+            this(1024);
+        }
+
+        private Builder(int capacity) {
+            capacity = Math.max(capacity, 16);
+            names = new String[capacity];
+            categories = new String[capacity];
+            addresses = new String[capacity];
+            osmIds = new String[capacity];
+            latitudesE6 = new int[capacity];
+            longitudesE6 = new int[capacity];
+            ranks = new byte[capacity];
+        }
+
+        /**
+         * Adds an entry.
+         *
+         * @param name        Place name.
+         * @param category    OSM category, e.g. "place=city".
+         * @param address     Address, or null.
+         * @param osmId       OSM ID in Nominatim's format, e.g. "N123".
+         * @param latitudeE6  Latitude in microdegrees.
+         * @param longitudeE6 Longitude in microdegrees.
+         * @param rank        Prominence between 0 and 100.
+         */
+        public void add(String name, String category, String address, String osmId, int latitudeE6,
+                int longitudeE6, int rank) {
+            if (count == names.length) {
+                int capacity = count * 2;
+                names = Arrays.copyOf(names, capacity);
+                categories = Arrays.copyOf(categories, capacity);
+                addresses = Arrays.copyOf(addresses, capacity);
+                osmIds = Arrays.copyOf(osmIds, capacity);
+                latitudesE6 = Arrays.copyOf(latitudesE6, capacity);
+                longitudesE6 = Arrays.copyOf(longitudesE6, capacity);
+                ranks = Arrays.copyOf(ranks, capacity);
+            }
+            names[count] = name;
+            categories[count] = category != null ? category : "";
+            addresses[count] = address != null ? address : "";
+            osmIds[count] = osmId;
+            latitudesE6[count] = latitudeE6;
+            longitudesE6[count] = longitudeE6;
+            ranks[count] = (byte) Math.max(0, Math.min(100, rank));
+            count++;
+        }
+
+        /** Gets the number of entries added so far. */
+        public int size() {
+            return count;
+        }
+
+        /** Builds an in-memory gazetteer from the added entries. */
+        public Gazetteer build() {
+            return new Gazetteer(Arrays.copyOf(names, count), Arrays.copyOf(categories, count),
+                    Arrays.copyOf(addresses, count), Arrays.copyOf(osmIds, count),
+                    Arrays.copyOf(latitudesE6, count), Arrays.copyOf(longitudesE6, count),
+                    Arrays.copyOf(ranks, count));
+        }
+
+        /**
+         * Writes the added entries to a gazetteer file. The file is replaced
+         * atomically.
+         *
+         * @param file The target file.
+         * @throws IOException If the file cannot be written.
+         */
+        public void write(File file) throws IOException {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Could not create directory " + parent);
+            }
+            File tempFile = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tempFile.toPath()), 1 << 16)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeUTF(names[i]);
+                    out.writeUTF(categories[i]);
+                    out.writeUTF(addresses[i]);
+                    out.writeUTF(osmIds[i]);
+                    out.writeInt(latitudesE6[i]);
+                    out.writeInt(longitudesE6[i]);
+                    out.writeByte(ranks[i]);
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
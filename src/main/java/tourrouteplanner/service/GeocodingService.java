@@ -3,14 +3,18 @@ package tourrouteplanner.service;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import tourrouteplanner.model.Place;
+import tourrouteplanner.model.PlaceSuggestion;
+import tourrouteplanner.util.Constants;
+import tourrouteplanner.util.TtlLruCache;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URI;
+import java.io.InterruptedIOException;
+import java.io.Reader;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -30,20 +34,46 @@ public class GeocodingService implements IGeocodingService {
 
     private static final Logger log = LoggerFactory.getLogger(GeocodingService.class);
     private static final String DEFAULT_NOMINATIM_URL = "https://nominatim.openstreetmap.org";
-    private static final String USER_AGENT = "TourRoutePlanner/1.0 (https://github.com/DoCaoThang568/TourRoutePlanner)";
 
+    private final HttpTransport transport;
+    private final TtlLruCache<String, List<Place>> searchCache = new TtlLruCache<>(
+            Constants.SEARCH_CACHE_MAX_ENTRIES, Constants.SEARCH_CACHE_TTL_MS);
+    private final SingleFlight<String, List<Place>> searchFlights = new SingleFlight<>();
+    private final TtlLruCache<String, List<PlaceSuggestion>> suggestionCache = new TtlLruCache<>(
+            Constants.SEARCH_CACHE_MAX_ENTRIES, Constants.SEARCH_CACHE_TTL_MS);
+    private final SingleFlight<String, List<PlaceSuggestion>> suggestionFlights = new SingleFlight<>();
+    /** Geometry by place ID; an empty string marks a place without detailed geometry. */
+    private final TtlLruCache<String, String> geometryCache = new TtlLruCache<>(
+            Constants.GEOMETRY_CACHE_MAX_ENTRIES, Constants.GEOMETRY_CACHE_TTL_MS);
+    private final ReverseGeocodeCache reverseCache = new ReverseGeocodeCache(
+            Constants.REVERSE_GEOCODE_GEOHASH_PRECISION, Constants.REVERSE_GEOCODE_CACHE_MAX_ENTRIES,
+            Constants.REVERSE_GEOCODE_CACHE_TTL_MS, new File(Constants.REVERSE_GEOCODE_CACHE_FILE));
+    private BackendClient nominatim;
     private String nominatimServerUrl;
     private String lastNormalizedQuery = "";
 
     /**
-     * Creates a GeocodingService and loads configuration.
+     * Creates a GeocodingService using the shared HTTP transport and loads
+     * configuration.
      */
     public GeocodingService() {
+        this(HttpTransport.shared());
+    }
+
+    /**
+     * Creates a GeocodingService on top of the given HTTP transport and loads
+     * configuration.
+     *
+     * @param transport The HTTP transport used for Nominatim requests.
+     */
+    public GeocodingService(HttpTransport transport) {
+        this.transport = transport;
         loadConfig();
     }
 
     /**
-     * Loads server URL configuration from config.properties.
+     * Loads server URL, rate limit and circuit breaker configuration from
+     * config.properties.
      */
     private void loadConfig() {
         Properties prop = new Properties();
@@ -51,14 +81,15 @@ public class GeocodingService implements IGeocodingService {
             if (input == null) {
                 log.warn("config.properties not found, using default Nominatim URL: {}", DEFAULT_NOMINATIM_URL);
                 nominatimServerUrl = DEFAULT_NOMINATIM_URL;
-                return;
+            } else {
+                prop.load(input);
+                nominatimServerUrl = prop.getProperty("nominatim.server.url", DEFAULT_NOMINATIM_URL);
             }
-            prop.load(input);
-            nominatimServerUrl = prop.getProperty("nominatim.server.url", DEFAULT_NOMINATIM_URL);
         } catch (IOException ex) {
             log.error("Error reading config.properties, using default Nominatim URL", ex);
             nominatimServerUrl = DEFAULT_NOMINATIM_URL;
         }
+        nominatim = BackendClient.fromConfig("Nominatim", "nominatim", transport, prop);
     }
 
     @Override
@@ -71,33 +102,66 @@ public class GeocodingService implements IGeocodingService {
             return new ArrayList<>();
         }
 
-        String encodedQuery = URLEncoder.encode(query, StandardCharsets.UTF_8.toString());
-        String apiUrl = String.format(
-                "%s/search?q=%s&format=json&addressdetails=1&limit=20&polygon_geojson=1&countrycodes=vn&accept-language=vi",
-                nominatimServerUrl, encodedQuery);
+        String normalizedQuery = normalizeString(query);
+        lastNormalizedQuery = normalizedQuery;
 
-        lastNormalizedQuery = normalizeString(query);
+        List<Place> cached = searchCache.get(normalizedQuery);
+        if (cached != null) {
+            log.debug("Search cache hit for '{}' ({})", normalizedQuery, searchCache);
+            return new ArrayList<>(cached);
+        }
 
-        HttpURLConnection connection = (HttpURLConnection) URI.create(apiUrl).toURL().openConnection();
-        connection.setRequestMethod("GET");
-        connection.setRequestProperty("User-Agent", USER_AGENT);
-        connection.setRequestProperty("Accept-Charset", StandardCharsets.UTF_8.toString());
+        // Concurrent searches for the same normalized query share one Nominatim request
+        try {
+            List<Place> places = searchFlights.execute(normalizedQuery, () -> {
+                String encodedQuery = URLEncoder.encode(query, StandardCharsets.UTF_8.toString());
+                String apiUrl = String.format(
+                        "%s/search?q=%s&format=json&addressdetails=1&limit=20&countrycodes=vn&accept-language=vi",
+                        nominatimServerUrl, encodedQuery);
+
+                List<Place> fetched = List.copyOf(
+                        nominatim.get(apiUrl, "Nominatim place search", this::parseSearchResponse));
+                searchCache.put(normalizedQuery, fetched);
+                return fetched;
+            });
+            return new ArrayList<>(places);
+        } catch (IOException e) {
+            return new ArrayList<>(staleOrThrow(e, searchCache.getStale(normalizedQuery), "search results"));
+        }
+    }
 
-        int responseCode = connection.getResponseCode();
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-            reader.close();
-            return parseSearchResponse(response.toString());
-        } else {
-            handleErrorResponse(connection, responseCode, "Nominatim place search");
+    @Override
+    public List<PlaceSuggestion> suggest(String query, int limit) throws IOException {
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("Query string must not be empty.");
+        }
+        if (nominatimServerUrl == null || nominatimServerUrl.trim().isEmpty()) {
+            log.warn("Nominatim server URL is not configured. Returning empty list.");
             return new ArrayList<>();
         }
+
+        String cacheKey = normalizeString(query) + "|" + limit;
+        List<PlaceSuggestion> cached = suggestionCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        try {
+            return suggestionFlights.execute(cacheKey, () -> {
+                // Minimal payload: no address details, no polygons
+                String encodedQuery = URLEncoder.encode(query, StandardCharsets.UTF_8.toString());
+                String apiUrl = String.format(Locale.US,
+                        "%s/search?q=%s&format=jsonv2&limit=%d&countrycodes=vn&accept-language=vi",
+                        nominatimServerUrl, encodedQuery, limit);
+
+                List<PlaceSuggestion> fetched = List.copyOf(
+                        nominatim.get(apiUrl, "Nominatim suggestions", this::parseSuggestResponse));
+                suggestionCache.put(cacheKey, fetched);
+                return fetched;
+            });
+        } catch (IOException e) {
+            return staleOrThrow(e, suggestionCache.getStale(cacheKey), "suggestions");
+        }
     }
 
     @Override
@@ -106,31 +170,66 @@ public class GeocodingService implements IGeocodingService {
             throw new IllegalStateException("Nominatim server URL is not configured.");
         }
 
+        Place cached = reverseCache.get(latitude, longitude);
+        if (cached != null) {
+            log.debug("Reverse geocoding cache hit for {}, {}", latitude, longitude);
+            return cached;
+        }
+
         String reversePath = nominatimServerUrl.startsWith("http://localhost") ? "/reverse.php" : "/reverse";
         String apiUrl = String.format(Locale.US,
                 "%s%s?lat=%f&lon=%f&format=json&addressdetails=1&zoom=18&accept-language=vi",
                 nominatimServerUrl, reversePath, latitude, longitude);
 
-        HttpURLConnection connection = (HttpURLConnection) URI.create(apiUrl).toURL().openConnection();
-        connection.setRequestMethod("GET");
-        connection.setRequestProperty("Accept", "application/json");
-        connection.setRequestProperty("User-Agent", USER_AGENT);
-
-        int responseCode = connection.getResponseCode();
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-            reader.close();
-            return parseReverseResponse(response.toString(), latitude, longitude);
-        } else {
-            log.error("Nominatim reverse geocoding error: HTTP {}", responseCode);
+        try {
+            Place place = nominatim.get(apiUrl, "Nominatim reverse geocoding",
+                    body -> parseReverseResponse(body, latitude, longitude));
+            reverseCache.put(latitude, longitude, place);
+            return place;
+        } catch (HttpTransport.HttpStatusException e) {
+            log.error("Nominatim reverse geocoding error: HTTP {}", e.getStatusCode());
+            return reverseCache.getStale(latitude, longitude);
+        } catch (IOException e) {
+            return staleOrThrow(e, reverseCache.getStale(latitude, longitude), "reverse geocoding result");
+        }
+    }
+
+    @Override
+    public String lookupGeometry(Place place) throws IOException {
+        if (place == null) {
+            return null;
+        }
+        if (place.getGeoJson() != null && !place.getGeoJson().isEmpty()) {
+            return place.getGeoJson();
+        }
+        String placeId = place.getPlaceId();
+        // Only ways and relations have a shape worth fetching; nodes are points
+        if (placeId == null || !placeId.matches("[WR]\\d+")) {
             return null;
         }
+        String cached = geometryCache.get(placeId);
+        if (cached != null) {
+            return cached.isEmpty() ? null : cached;
+        }
+        if (nominatimServerUrl == null || nominatimServerUrl.trim().isEmpty()) {
+            return null;
+        }
+
+        String lookupPath = nominatimServerUrl.startsWith("http://localhost") ? "/lookup.php" : "/lookup";
+        String apiUrl = String.format("%s%s?osm_ids=%s&format=json&polygon_geojson=1&polygon_threshold=0.0001",
+                nominatimServerUrl, lookupPath, placeId);
+        String geoJson;
+        try {
+            geoJson = nominatim.get(apiUrl, "Nominatim geometry lookup", body -> {
+                JsonArray results = JsonParser.parseReader(body).getAsJsonArray();
+                return results.isEmpty() ? null : parseGeoJson(results.get(0).getAsJsonObject());
+            });
+        } catch (IOException e) {
+            String stale = staleOrThrow(e, geometryCache.getStale(placeId), "geometry");
+            return stale.isEmpty() ? null : stale;
+        }
+        geometryCache.put(placeId, geoJson != null ? geoJson : "");
+        return geoJson;
     }
 
     @Override
@@ -138,12 +237,36 @@ public class GeocodingService implements IGeocodingService {
         return lastNormalizedQuery;
     }
 
+    /**
+     * Gets the forward geocoding cache, mainly to read its hit, miss and
+     * eviction counters.
+     *
+     * @return The search result cache keyed by normalized query.
+     */
+    public TtlLruCache<String, List<Place>> getSearchCache() {
+        return searchCache;
+    }
+
+    /**
+     * Gets the geohash-keyed reverse geocoding cache.
+     *
+     * @return The reverse geocoding cache.
+     */
+    public ReverseGeocodeCache getReverseCache() {
+        return reverseCache;
+    }
+
+    @Override
+    public void shutdown() {
+        reverseCache.save();
+    }
+
     /**
      * Parses Nominatim search response JSON.
      */
-    private List<Place> parseSearchResponse(String jsonResponse) {
+    private List<Place> parseSearchResponse(Reader jsonResponse) {
         List<Place> foundPlaces = new ArrayList<>();
-        JsonArray resultsArray = JsonParser.parseString(jsonResponse).getAsJsonArray();
+        JsonArray resultsArray = JsonParser.parseReader(jsonResponse).getAsJsonArray();
 
         if (resultsArray.isEmpty()) {
             return foundPlaces;
@@ -162,6 +285,67 @@ public class GeocodingService implements IGeocodingService {
         return foundPlaces;
     }
 
+    /**
+     * Parses a Nominatim jsonv2 search response into suggestions.
+     * Streams over the response and skips every field it does not need.
+     */
+    private List<PlaceSuggestion> parseSuggestResponse(Reader jsonResponse) throws IOException {
+        List<PlaceSuggestion> suggestions = new ArrayList<>();
+        JsonReader reader = new JsonReader(jsonResponse);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String osmType = null;
+            String osmId = null;
+            String nominatimId = null;
+            String name = null;
+            String displayName = null;
+            double lat = Double.NaN;
+            double lon = Double.NaN;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "place_id" -> nominatimId = nextStringOrNull(reader);
+                    case "osm_type" -> osmType = nextStringOrNull(reader);
+                    case "osm_id" -> osmId = nextStringOrNull(reader);
+                    case "name" -> name = nextStringOrNull(reader);
+                    case "display_name" -> displayName = nextStringOrNull(reader);
+                    case "lat" -> lat = reader.nextDouble();
+                    case "lon" -> lon = reader.nextDouble();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (displayName == null || Double.isNaN(lat) || Double.isNaN(lon)) {
+                continue;
+            }
+            if (name == null || name.trim().isEmpty()) {
+                int firstCommaIndex = displayName.indexOf(',');
+                name = firstCommaIndex > 0 ? displayName.substring(0, firstCommaIndex).trim() : displayName;
+            }
+            String placeId;
+            if (osmType != null && !osmType.isEmpty() && osmId != null) {
+                placeId = osmType.substring(0, 1).toUpperCase() + osmId;
+            } else if (nominatimId != null) {
+                placeId = "nominatim_" + nominatimId;
+            } else {
+                placeId = "unknown_id";
+            }
+            suggestions.add(new PlaceSuggestion(placeId, name, displayName, lat, lon));
+        }
+        reader.endArray();
+        return suggestions;
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
     /**
      * Parses a single place from JSON object.
      */
@@ -187,8 +371,8 @@ public class GeocodingService implements IGeocodingService {
     /**
      * Parses reverse geocoding response.
      */
-    private Place parseReverseResponse(String jsonResponse, double originalLat, double originalLng) {
-        JsonObject resultObject = JsonParser.parseString(jsonResponse).getAsJsonObject();
+    private Place parseReverseResponse(Reader jsonResponse, double originalLat, double originalLng) {
+        JsonObject resultObject = JsonParser.parseReader(jsonResponse).getAsJsonObject();
 
         if (resultObject.has("error")) {
             log.error("Nominatim error: {}", resultObject.get("error").getAsString());
@@ -378,32 +562,29 @@ public class GeocodingService implements IGeocodingService {
         }
     }
 
-    private void handleErrorResponse(HttpURLConnection connection, int responseCode, String apiName)
-            throws IOException {
-        log.error("{} API error: HTTP {} - {}", apiName, responseCode, connection.getResponseMessage());
-        try (BufferedReader errorReader = new BufferedReader(new InputStreamReader(connection.getErrorStream()))) {
-            StringBuilder errorResponse = new StringBuilder();
-            String errorLine;
-            while ((errorLine = errorReader.readLine()) != null) {
-                errorResponse.append(errorLine);
-            }
-            log.error("{} error details: {}", apiName, errorResponse);
-            throw new IOException(
-                    "Error calling " + apiName + " API: " + responseCode + ". Details: " + errorResponse.toString());
-        } catch (IOException e) {
-            throw new IOException(
-                    "Error calling " + apiName + " API: " + responseCode + ". Could not read error details.");
+    /**
+     * Returns a stale cached value in place of a failed request, so the UI keeps
+     * working while Nominatim is down or its circuit is open. Cancellations and
+     * requests without a cached value rethrow the original exception.
+     */
+    private <T> T staleOrThrow(IOException failure, T stale, String what) throws IOException {
+        if (stale == null || failure instanceof InterruptedIOException) {
+            throw failure;
         }
+        log.warn("Nominatim unavailable ({}), serving stale {}", failure.getMessage(), what);
+        return stale;
     }
 
     /**
      * Normalizes an input string for comparison.
+     * Also used as the search cache key, so runs of whitespace are collapsed and
+     * the Vietnamese letter "đ" (which has no decomposed form) maps to "d".
      */
     public static String normalizeString(String input) {
         if (input == null)
             return "";
         String temp = java.text.Normalizer.normalize(input, java.text.Normalizer.Form.NFD);
-        temp = temp.replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
-        return temp.toLowerCase().replaceAll("[^a-z0-9 ]", "").trim();
+        temp = temp.replaceAll("\\p{InCombiningDiacriticalMarks}+", "").replace('đ', 'd').replace('Đ', 'D');
+        return temp.toLowerCase().replaceAll("[^a-z0-9 ]", "").trim().replaceAll("\\s+", " ");
     }
 }
@@ -0,0 +1,243 @@
+package tourrouteplanner.service;
+
+import tourrouteplanner.util.Constants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared HTTP transport for the Nominatim and OSRM services.
+ * Wraps a single {@link HttpClient} so that connections are pooled and kept
+ * alive across requests, HTTP/2 is negotiated where the server supports it,
+ * and every request is bounded by {@link Constants#HTTP_TIMEOUT_MS}.
+ * Response bodies are streamed straight into the caller's parser instead of
+ * being buffered into a String first.
+ * <p>
+ * The request timeout covers the whole exchange, body included: a watchdog
+ * closes the body stream when the deadline passes, which wakes a parser
+ * blocked on a server that stalls mid-body.
+ */
+public class HttpTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpTransport.class);
+    private static final int MAX_ERROR_BODY_CHARS = 2048;
+
+    /** Closes the bodies of requests that run past their deadline. */
+    private static final ScheduledExecutorService DEADLINE_WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "http-deadline-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static volatile HttpTransport shared;
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+
+    /**
+     * Parses a streamed response body into a result object.
+     *
+     * @param <T> The type of the parsed result.
+     */
+    @FunctionalInterface
+    public interface BodyParser<T> {
+        T parse(Reader body) throws IOException;
+    }
+
+    /**
+     * Thrown when the server answers with a non-2xx status code.
+     */
+    public static class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+        private final long retryAfterMillis;
+
+        public HttpStatusException(String message, int statusCode) {
+            this(message, statusCode, -1);
+        }
+
+        public HttpStatusException(String message, int statusCode, long retryAfterMillis) {
+            super(message);
+            this.statusCode = statusCode;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        /** Gets the HTTP status code returned by the server. */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * Gets the delay requested by the server's Retry-After header, in
+         * milliseconds, or -1 if the header was absent or not a number of seconds.
+         */
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+
+    /**
+     * Creates a transport with the default timeouts from {@link Constants}.
+     */
+    public HttpTransport() {
+        this(Duration.ofMillis(Constants.HTTP_TIMEOUT_MS), Duration.ofMillis(Constants.HTTP_TIMEOUT_MS));
+    }
+
+    /**
+     * Creates a transport with explicit timeouts.
+     *
+     * @param connectTimeout Maximum time to establish a TCP/TLS connection.
+     * @param requestTimeout Maximum time for a single request, from sending it
+     *                       until its body has been parsed.
+     */
+    public HttpTransport(Duration connectTimeout, Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * Returns the application-wide transport instance, creating it on first use.
+     */
+    public static HttpTransport shared() {
+        HttpTransport instance = shared;
+        if (instance == null) {
+            synchronized (HttpTransport.class) {
+                instance = shared;
+                if (instance == null) {
+                    instance = new HttpTransport();
+                    shared = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Performs a GET request and hands the streamed body to the given parser.
+     *
+     * @param url     The absolute request URL.
+     * @param apiName Human-readable API name used in log and error messages.
+     * @param parser  Parser consuming the response body.
+     * @param <T>     The type of the parsed result.
+     * @return The parsed result.
+     * @throws HttpStatusException If the server answers with a non-2xx status.
+     * @throws IOException         If the request fails, times out, or is
+     *                             interrupted. A request that has not been
+     *                             parsed within the request timeout fails with
+     *                             {@link HttpTimeoutException}.
+     */
+    public <T> T get(String url, String apiName, BodyParser<T> parser) throws IOException {
+        long deadline = System.nanoTime() + requestTimeout.toNanos();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("User-Agent", Constants.USER_AGENT)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build();
+
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(apiName + " request was interrupted");
+        }
+
+        InputStream stream = response.body();
+        AtomicBoolean expired = new AtomicBoolean();
+        ScheduledFuture<?> watchdog = DEADLINE_WATCHDOG.schedule(() -> {
+            expired.set(true);
+            closeQuietly(stream);
+        }, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        try (Reader body = openBody(response, stream)) {
+            int statusCode = response.statusCode();
+            if (statusCode < 200 || statusCode >= 300) {
+                String details = readErrorBody(body);
+                log.error("{} API error: HTTP {} - {}", apiName, statusCode, details);
+                throw new HttpStatusException(
+                        "Error calling " + apiName + " API: " + statusCode + ". Details: " + details, statusCode,
+                        parseRetryAfter(response));
+            }
+            return parser.parse(body);
+        } catch (IOException | RuntimeException e) {
+            // Tree parsers report the closed stream wrapped in an unchecked exception
+            if (expired.get()) {
+                HttpTimeoutException timeout = new HttpTimeoutException(
+                        apiName + " response was not received within " + requestTimeout.toMillis() + " ms");
+                timeout.initCause(e);
+                throw timeout;
+            }
+            throw e;
+        } finally {
+            watchdog.cancel(false);
+        }
+    }
+
+    /**
+     * Opens the response body as a UTF-8 reader, transparently inflating gzip.
+     */
+    private Reader openBody(HttpResponse<InputStream> response, InputStream stream) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if ("gzip".equalsIgnoreCase(encoding)) {
+            stream = new GZIPInputStream(stream);
+        }
+        return new InputStreamReader(stream, StandardCharsets.UTF_8);
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            log.debug("Could not close expired response body: {}", e.getMessage());
+        }
+    }
+
+    private long parseRetryAfter(HttpResponse<InputStream> response) {
+        String retryAfter = response.headers().firstValue("Retry-After").orElse("").trim();
+        try {
+            return retryAfter.isEmpty() ? -1 : Long.parseLong(retryAfter) * 1000;
+        } catch (NumberFormatException e) {
+            return -1; // HTTP-date form is not used by Nominatim or OSRM
+        }
+    }
+
+    private String readErrorBody(Reader body) {
+        StringBuilder details = new StringBuilder();
+        char[] buffer = new char[512];
+        try {
+            int read;
+            while (details.length() < MAX_ERROR_BODY_CHARS && (read = body.read(buffer)) != -1) {
+                details.append(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            return "Could not read error details.";
+        }
+        return details.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package tourrouteplanner.service;
+
+import tourrouteplanner.model.Place;
+import tourrouteplanner.model.PlaceSuggestion;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Combines an online geocoding service (Nominatim) with the local gazetteer.
+ * Autocomplete is answered from the gazetteer and only goes online when it has
+ * no match; searches and reverse geocoding go online and fall back to the
+ * gazetteer when the server is unreachable or fails. Cancelled requests are
+ * not retried offline.
+ */
+public class HybridGeocodingService implements IGeocodingService {
+
+    private static final Logger log = LoggerFactory.getLogger(HybridGeocodingService.class);
+
+    private final IGeocodingService online;
+    private final OfflineGeocodingService offline;
+    private volatile IGeocodingService lastSearchService;
+
+    /**
+     * Creates a hybrid service.
+     *
+     * @param online  The online service, tried first for searches.
+     * @param offline The gazetteer-backed service, used for autocomplete and as
+     *                fallback.
+     */
+    public HybridGeocodingService(IGeocodingService online, OfflineGeocodingService offline) {
+        this.online = online;
+        this.offline = offline;
+        this.lastSearchService = online;
+    }
+
+    @Override
+    public List<Place> searchPlaces(String query) throws IOException {
+        try {
+            List<Place> places = online.searchPlaces(query);
+            lastSearchService = online;
+            return places;
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            log.warn("Online search failed ({}), answering from local gazetteer", e.getMessage());
+            lastSearchService = offline;
+            return offline.searchPlaces(query);
+        }
+    }
+
+    @Override
+    public List<PlaceSuggestion> suggest(String query, int limit) throws IOException {
+        List<PlaceSuggestion> suggestions = offline.suggest(query, limit);
+        if (!suggestions.isEmpty()) {
+            return suggestions;
+        }
+        return online.suggest(query, limit);
+    }
+
+    @Override
+    public Place reverseGeocode(double latitude, double longitude) throws IOException {
+        try {
+            return online.reverseGeocode(latitude, longitude);
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            log.warn("Online reverse geocoding failed ({}), answering from local gazetteer", e.getMessage());
+            return offline.reverseGeocode(latitude, longitude);
+        }
+    }
+
+    @Override
+    public String lookupGeometry(Place place) throws IOException {
+        return online.lookupGeometry(place);
+    }
+
+    @Override
+    public String getLastNormalizedQuery() {
+        return lastSearchService.getLastNormalizedQuery();
+    }
+
+    @Override
+    public void shutdown() {
+        online.shutdown();
+        offline.shutdown();
+    }
+}
@@ -1,6 +1,7 @@
 package tourrouteplanner.service;
 
 import tourrouteplanner.model.Place;
+import tourrouteplanner.model.PlaceSuggestion;
 
 import java.io.IOException;
 import java.util.List;
@@ -22,6 +23,20 @@ public interface IGeocodingService {
      */
     List<Place> searchPlaces(String query) throws IOException;
 
+    /**
+     * Returns lightweight autocomplete suggestions for the given query.
+     * Unlike {@link #searchPlaces(String)}, implementations request only the
+     * fields a suggestion list needs (no address details or geometry).
+     *
+     * @param query The partial search query typed by the user.
+     * @param limit Maximum number of suggestions to return.
+     * @return List of suggestions, most relevant first.
+     * @throws IOException              If there's an error communicating with the
+     *                                  geocoding API.
+     * @throws IllegalArgumentException If query is null or empty.
+     */
+    List<PlaceSuggestion> suggest(String query, int limit) throws IOException;
+
     /**
      * Performs reverse geocoding to find address information for given coordinates.
      *
@@ -32,6 +47,19 @@ public interface IGeocodingService {
      */
     Place reverseGeocode(double latitude, double longitude) throws IOException;
 
+    /**
+     * Fetches the detailed GeoJSON geometry (e.g. polygon outline) of a place on
+     * demand. Search results do not carry geometry; it is only loaded for the
+     * place the user highlights.
+     *
+     * @param place The place whose geometry is needed.
+     * @return The GeoJSON geometry string, or null if the place has no detailed
+     *         geometry.
+     * @throws IOException If there's an error communicating with the geocoding
+     *                     API.
+     */
+    String lookupGeometry(Place place) throws IOException;
+
     /**
      * Returns the normalized query string from the last search operation.
      * Useful for result sorting and relevance scoring.
@@ -39,4 +67,11 @@ public interface IGeocodingService {
      * @return The last normalized query, or empty string if no search performed.
      */
     String getLastNormalizedQuery();
+
+    /**
+     * Releases resources held by the service, such as flushing persistent caches.
+     * Called once when the application shuts down.
+     */
+    default void shutdown() {
+    }
 }
@@ -2,6 +2,7 @@ package tourrouteplanner.service;
 
 import tourrouteplanner.model.Place;
 import tourrouteplanner.model.Route;
+import tourrouteplanner.model.TravelMatrix;
 
 import java.io.IOException;
 import java.util.List;
@@ -26,6 +27,18 @@ public interface IRoutingService {
      */
     Route getRoute(List<Place> waypoints) throws IOException;
 
+    /**
+     * Calculates pairwise travel durations and distances between places.
+     *
+     * @param places List of places; rows and columns of the matrix follow this
+     *               order.
+     * @return The travel matrix. Unreachable pairs are NaN.
+     * @throws IOException              If there's an error communicating with the
+     *                                  routing API.
+     * @throws IllegalArgumentException If places is null or empty.
+     */
+    TravelMatrix getMatrix(List<Place> places) throws IOException;
+
     /**
      * Returns the last successfully calculated route.
      *
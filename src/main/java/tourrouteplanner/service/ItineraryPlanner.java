@@ -0,0 +1,476 @@
+package tourrouteplanner.service;
+
+import tourrouteplanner.model.DayPlan;
+import tourrouteplanner.model.Itinerary;
+import tourrouteplanner.model.Place;
+import tourrouteplanner.model.TravelMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Splits route places into days, a vehicle routing problem with time windows
+ * where every day is one "vehicle":
+ * <ul>
+ * <li>each day starts at {@code dayStartMinute} from where the previous day
+ * ended (the first day from the first place of the matrix),</li>
+ * <li>driving, waiting for opening time and the dwell time at each stop must
+ * fit into {@code dayBudgetMinutes},</li>
+ * <li>a visit must start after the place opens and end before it closes.</li>
+ * </ul>
+ * {@link #plan(TravelMatrix)} builds the trip with regret-2 insertion: the
+ * place whose best and second-best day differ the most is inserted first, and
+ * a new day is opened only when no place fits into the existing ones. A
+ * relocate pass then tightens each day.
+ * <p>
+ * Insertions never append to a day other than the last one, so the place each
+ * day starts from stays fixed. This keeps edits local:
+ * {@link #replanDay(Itinerary, TravelMatrix, int, List)} and
+ * {@link #insertPlace(Itinerary, TravelMatrix, Place)} re-time only the
+ * changed day (and the following day if its start moved), keeping all other
+ * days as they are.
+ */
+public class ItineraryPlanner {
+
+    private static final Logger log = LoggerFactory.getLogger(ItineraryPlanner.class);
+
+    /** Travel time used for pairs without a route; makes any visit infeasible. */
+    private static final double UNREACHABLE_MINUTES = 1e9;
+    private static final double EPSILON = 1e-6;
+
+    private final int dayStartMinute;
+    private final int dayBudgetMinutes;
+    private final int maxDays;
+
+    /**
+     * Creates a planner.
+     *
+     * @param dayStartMinute   Start of each day in minutes after midnight.
+     * @param dayBudgetMinutes Time available per day for driving, waiting and
+     *                         visiting, in minutes.
+     * @param maxDays          Maximum number of days.
+     */
+    public ItineraryPlanner(int dayStartMinute, int dayBudgetMinutes, int maxDays) {
+        if (dayBudgetMinutes <= 0 || maxDays <= 0) {
+            throw new IllegalArgumentException("Day budget and number of days must be positive.");
+        }
+        this.dayStartMinute = dayStartMinute;
+        this.dayBudgetMinutes = dayBudgetMinutes;
+        this.maxDays = maxDays;
+    }
+
+    /**
+     * Plans a trip over all places of the matrix. The first place is the trip
+     * start and is not visited.
+     *
+     * @param matrix Travel durations between the places.
+     * @return The itinerary.
+     */
+    public Itinerary plan(TravelMatrix matrix) {
+        Context ctx = new Context(matrix);
+        List<int[]> days = new ArrayList<>();
+        Set<Integer> pending = new LinkedHashSet<>();
+        for (int i = 1; i < ctx.n; i++) {
+            pending.add(i);
+        }
+
+        while (!pending.isEmpty()) {
+            if (insertBest(ctx, days, pending, -1)) {
+                continue;
+            }
+            if (days.size() >= maxDays || !openDay(ctx, days, pending)) {
+                break;
+            }
+        }
+        for (int d = 0; d < days.size(); d++) {
+            days.set(d, relocate(ctx, anchor(days, d), days.get(d), d == days.size() - 1));
+        }
+        log.debug("Planned {} places into {} days, {} unscheduled", ctx.n - 1, days.size(), pending.size());
+        return ctx.toItinerary(days, pending, null, -1, -1);
+    }
+
+    /**
+     * Re-plans one day after its stops were edited (reordered, added or
+     * removed). The stops are kept in the given order as far as they fit; stops
+     * that do not fit become unscheduled. Unscheduled places are then inserted
+     * into the edited day where they fit. If the day now ends elsewhere, the
+     * following days are re-timed in order, dropping stops that no longer fit,
+     * until a day starts where it did before. All other days are kept.
+     *
+     * @param itinerary The current itinerary.
+     * @param matrix    Travel durations covering all places of the itinerary.
+     * @param dayIndex  The edited day.
+     * @param stops     The day's stops in the wanted order.
+     * @return The updated itinerary.
+     */
+    public Itinerary replanDay(Itinerary itinerary, TravelMatrix matrix, int dayIndex, List<Place> stops) {
+        Context ctx = new Context(matrix);
+        List<int[]> days = ctx.toIndices(itinerary);
+        Set<Integer> pending = ctx.toIndexSet(itinerary.getUnscheduled());
+        for (Place stop : stops) {
+            pending.remove(ctx.indexOf(stop));
+        }
+
+        int[] anchors = new int[days.size()];
+        for (int d = 0; d < anchors.length; d++) {
+            anchors[d] = anchor(days, d);
+        }
+
+        days.set(dayIndex, fitInOrder(ctx, anchors[dayIndex], ctx.toIndices(stops), pending));
+        while (insertBest(ctx, days, pending, dayIndex)) {
+            // Fill the edited day with places that fit
+        }
+        // The edited day is final now; carry a moved end forward
+        int changedUntil = dayIndex;
+        for (int d = dayIndex + 1; d < days.size() && anchor(days, d) != anchors[d]; d++) {
+            days.set(d, fitInOrder(ctx, anchor(days, d), days.get(d), pending));
+            changedUntil = d;
+        }
+        return ctx.toItinerary(days, pending, itinerary, dayIndex, changedUntil);
+    }
+
+    /**
+     * Adds a place at its cheapest feasible position, opening a new day at the
+     * end of the trip if it fits nowhere else. Only the day that receives the
+     * place changes.
+     *
+     * @param itinerary The current itinerary.
+     * @param matrix    Travel durations covering the itinerary's places and the
+     *                  new place.
+     * @param place     The place to add.
+     * @return The updated itinerary; the place is unscheduled if it fits
+     *         nowhere.
+     */
+    public Itinerary insertPlace(Itinerary itinerary, TravelMatrix matrix, Place place) {
+        Context ctx = new Context(matrix);
+        List<int[]> days = ctx.toIndices(itinerary);
+        Set<Integer> pending = ctx.toIndexSet(itinerary.getUnscheduled());
+        int index = ctx.indexOf(place);
+        Set<Integer> single = new LinkedHashSet<>(List.of(index));
+        int daysBefore = days.size();
+        int[] before = days.stream().mapToInt(day -> day.length).toArray();
+        if (!insertBest(ctx, days, single, -1) && days.size() < maxDays) {
+            openDay(ctx, days, single);
+        }
+        pending.remove(index);
+        pending.addAll(single);
+        int changed = -1;
+        for (int d = 0; d < days.size(); d++) {
+            if (d >= daysBefore || days.get(d).length != before[d]) {
+                changed = d;
+            }
+        }
+        return ctx.toItinerary(days, pending, itinerary, changed, changed);
+    }
+
+    /** Gets the place index a day starts from. */
+    private static int anchor(List<int[]> days, int day) {
+        if (day == 0) {
+            return 0;
+        }
+        for (int d = day - 1; d >= 0; d--) {
+            int[] stops = days.get(d);
+            if (stops.length > 0) {
+                return stops[stops.length - 1];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Inserts the pending place with the highest regret at its best position.
+     *
+     * @param onlyDay Restricts insertion to this day, or -1 for all days.
+     * @return Whether a place was inserted.
+     */
+    private boolean insertBest(Context ctx, List<int[]> days, Set<Integer> pending, int onlyDay) {
+        int chosen = -1;
+        int chosenDay = -1;
+        int chosenPosition = -1;
+        double chosenRegret = Double.NEGATIVE_INFINITY;
+        double chosenCost = Double.POSITIVE_INFINITY;
+
+        double[] dayEnds = new double[days.size()];
+        for (int d = 0; d < days.size(); d++) {
+            dayEnds[d] = ctx.simulate(anchor(days, d), days.get(d), -1, -1);
+        }
+        for (int place : pending) {
+            double best = Double.POSITIVE_INFINITY;
+            double second = Double.POSITIVE_INFINITY;
+            int bestDay = -1;
+            int bestPosition = -1;
+            for (int d = 0; d < days.size(); d++) {
+                if (onlyDay >= 0 && d != onlyDay) {
+                    continue;
+                }
+                int[] stops = days.get(d);
+                int anchor = anchor(days, d);
+                // Appending to an earlier day would move the start of the next one
+                int positions = d == days.size() - 1 || stops.length == 0 ? stops.length : stops.length - 1;
+                double dayBest = Double.POSITIVE_INFINITY;
+                int dayBestPosition = -1;
+                for (int position = 0; position <= positions; position++) {
+                    double end = ctx.simulate(anchor, stops, position, place);
+                    if (!Double.isNaN(end) && end - dayEnds[d] < dayBest) {
+                        dayBest = end - dayEnds[d];
+                        dayBestPosition = position;
+                    }
+                }
+                if (dayBest < best) {
+                    second = best;
+                    best = dayBest;
+                    bestDay = d;
+                    bestPosition = dayBestPosition;
+                } else if (dayBest < second) {
+                    second = dayBest;
+                }
+            }
+            if (bestDay < 0) {
+                continue;
+            }
+            double regret = Double.isInfinite(second) ? UNREACHABLE_MINUTES : second - best;
+            if (regret > chosenRegret + EPSILON || (Math.abs(regret - chosenRegret) <= EPSILON && best < chosenCost)) {
+                chosen = place;
+                chosenDay = bestDay;
+                chosenPosition = bestPosition;
+                chosenRegret = regret;
+                chosenCost = best;
+            }
+        }
+        if (chosen < 0) {
+            return false;
+        }
+        days.set(chosenDay, insert(days.get(chosenDay), chosenPosition, chosen));
+        pending.remove(chosen);
+        return true;
+    }
+
+    /**
+     * Opens a new day at the end of the trip, seeded with the pending place
+     * closest to where the day starts that can be visited on its own.
+     */
+    private boolean openDay(Context ctx, List<int[]> days, Set<Integer> pending) {
+        int anchor = anchor(days, days.size());
+        int seed = -1;
+        double seedEnd = Double.POSITIVE_INFINITY;
+        for (int place : pending) {
+            double end = ctx.simulate(anchor, new int[0], 0, place);
+            if (!Double.isNaN(end) && end < seedEnd) {
+                seed = place;
+                seedEnd = end;
+            }
+        }
+        if (seed < 0) {
+            return false;
+        }
+        days.add(new int[] { seed });
+        pending.remove(seed);
+        return true;
+    }
+
+    /**
+     * Keeps stops in order while they fit into the day; the rest become
+     * pending.
+     */
+    private static int[] fitInOrder(Context ctx, int anchor, int[] stops, Set<Integer> pending) {
+        int[] kept = new int[0];
+        for (int stop : stops) {
+            if (!Double.isNaN(ctx.simulate(anchor, kept, kept.length, stop))) {
+                kept = insert(kept, kept.length, stop);
+            } else {
+                pending.add(stop);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Moves single stops within a day while that makes the day end earlier. The
+     * last stop of all but the last day stays in place.
+     */
+    private static int[] relocate(Context ctx, int anchor, int[] stops, boolean lastDay) {
+        int movable = lastDay ? stops.length : stops.length - 1;
+        double end = ctx.simulate(anchor, stops, -1, -1);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int from = 0; from < movable && !improved; from++) {
+                int[] without = remove(stops, from);
+                for (int to = 0; to <= movable - 1; to++) {
+                    if (to == from) {
+                        continue;
+                    }
+                    double candidate = ctx.simulate(anchor, without, to, stops[from]);
+                    if (!Double.isNaN(candidate) && candidate < end - EPSILON) {
+                        stops = insert(without, to, stops[from]);
+                        end = candidate;
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return stops;
+    }
+
+    private static int[] insert(int[] stops, int position, int place) {
+        int[] result = new int[stops.length + 1];
+        System.arraycopy(stops, 0, result, 0, position);
+        result[position] = place;
+        System.arraycopy(stops, position, result, position + 1, stops.length - position);
+        return result;
+    }
+
+    private static int[] remove(int[] stops, int position) {
+        int[] result = new int[stops.length - 1];
+        System.arraycopy(stops, 0, result, 0, position);
+        System.arraycopy(stops, position + 1, result, position, stops.length - position - 1);
+        return result;
+    }
+
+    /**
+     * Per-request view of the matrix and the places' visit constraints, indexed
+     * like the matrix.
+     */
+    private final class Context {
+        final int n;
+        final List<Place> places;
+        final double[] durations;
+        final int[] dwell;
+        final int[] opening;
+        final int[] closing;
+        final Map<Place, Integer> indices = new HashMap<>();
+
+        Context(TravelMatrix matrix) {
+            this.n = matrix.size();
+            this.places = matrix.getPlaces();
+            this.durations = matrix.getDurations();
+            this.dwell = new int[n];
+            this.opening = new int[n];
+            this.closing = new int[n];
+            for (int i = 0; i < n; i++) {
+                Place place = places.get(i);
+                indices.put(place, i);
+                dwell[i] = place.getDwellMinutes();
+                opening[i] = place.hasOpeningHours() ? place.getOpeningMinute() : Integer.MIN_VALUE;
+                closing[i] = place.hasOpeningHours() ? place.getClosingMinute() : Integer.MAX_VALUE;
+            }
+        }
+
+        double travelMinutes(int from, int to) {
+            double seconds = durations[from * n + to];
+            return Double.isNaN(seconds) ? UNREACHABLE_MINUTES : seconds / 60.0;
+        }
+
+        /**
+         * Simulates a day, optionally with one extra stop inserted.
+         *
+         * @param insertAt    Position of the extra stop, or -1 for none.
+         * @param insertPlace The extra stop.
+         * @return The minute the day ends, or NaN if a time window or the day
+         *         budget is violated.
+         */
+        double simulate(int anchor, int[] stops, int insertAt, int insertPlace) {
+            double time = dayStartMinute;
+            double limit = dayStartMinute + dayBudgetMinutes;
+            int at = anchor;
+            int count = stops.length + (insertAt >= 0 ? 1 : 0);
+            for (int k = 0, s = 0; k < count; k++) {
+                int place = k == insertAt ? insertPlace : stops[s++];
+                time = Math.max(time + travelMinutes(at, place), opening[place]);
+                time += dwell[place];
+                if (time > closing[place] || time > limit) {
+                    return Double.NaN;
+                }
+                at = place;
+            }
+            return time;
+        }
+
+        DayPlan toDayPlan(int anchor, int[] stops) {
+            int[] arrivals = new int[stops.length];
+            int[] departures = new int[stops.length];
+            List<Place> dayStops = new ArrayList<>(stops.length);
+            double time = dayStartMinute;
+            double driving = 0;
+            int at = anchor;
+            for (int k = 0; k < stops.length; k++) {
+                int place = stops[k];
+                double travel = travelMinutes(at, place);
+                driving += travel;
+                time = Math.max(time + travel, opening[place]);
+                arrivals[k] = (int) Math.round(time);
+                time += dwell[place];
+                departures[k] = (int) Math.round(time);
+                dayStops.add(places.get(place));
+                at = place;
+            }
+            return new DayPlan(places.get(anchor), dayStops, dayStartMinute, arrivals, departures, driving * 60.0);
+        }
+
+        int indexOf(Place place) {
+            Integer index = indices.get(place);
+            if (index == null) {
+                throw new IllegalArgumentException("Place is not part of the travel matrix: " + place.getName());
+            }
+            return index;
+        }
+
+        int[] toIndices(List<Place> stops) {
+            int[] result = new int[stops.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = indexOf(stops.get(i));
+            }
+            return result;
+        }
+
+        List<int[]> toIndices(Itinerary itinerary) {
+            List<int[]> days = new ArrayList<>();
+            for (DayPlan day : itinerary.getDays()) {
+                days.add(toIndices(day.getStops()));
+            }
+            return days;
+        }
+
+        Set<Integer> toIndexSet(List<Place> unscheduled) {
+            Set<Integer> result = new LinkedHashSet<>();
+            for (Place place : unscheduled) {
+                result.add(indexOf(place));
+            }
+            return result;
+        }
+
+        /**
+         * Builds the itinerary, reusing the day plans of {@code previous} outside
+         * the changed range. Empty days are dropped.
+         */
+        Itinerary toItinerary(List<int[]> days, Set<Integer> pending, Itinerary previous, int changedFrom,
+                int changedUntil) {
+            List<DayPlan> plans = new ArrayList<>(days.size());
+            for (int d = 0; d < days.size(); d++) {
+                boolean reuse = previous != null && d < previous.getDays().size()
+                        && (changedFrom < 0 || d < changedFrom || d > changedUntil)
+                        && Arrays.equals(days.get(d), toIndices(previous.getDays().get(d).getStops()))
+                        && places.get(anchor(days, d)).equals(previous.getDays().get(d).getStart());
+                if (reuse) {
+                    plans.add(previous.getDays().get(d));
+                } else if (days.get(d).length > 0) {
+                    plans.add(toDayPlan(anchor(days, d), days.get(d)));
+                }
+            }
+            List<Place> unscheduled = new ArrayList<>(pending.size());
+            for (int place : pending) {
+                unscheduled.add(places.get(place));
+            }
+            return new Itinerary(plans, unscheduled);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package tourrouteplanner.service;
+
+import tourrouteplanner.model.Place;
+import tourrouteplanner.model.PlaceSuggestion;
+import tourrouteplanner.util.Constants;
+import tourrouteplanner.util.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Geocoding service answering queries from a local gazetteer file instead of
+ * Nominatim, so search and autocomplete work without network access.
+ * <p>
+ * Names are normalized with {@link Utils#normalizeForSearch(String)} and
+ * indexed once per word start ("Hồ Hoàn Kiếm" is found by "ho hoan", "hoan
+ * kiem" and "kiem"). The keys are suffixes of one shared character pool,
+ * sorted, so a query is a binary search plus a scan over the matching range
+ * that keeps the best matches in a bounded heap.
+ * The gazetteer is created with {@link tourrouteplanner.tools.GazetteerImporter}.
+ */
+public class OfflineGeocodingService implements IGeocodingService {
+
+    private static final Logger log = LoggerFactory.getLogger(OfflineGeocodingService.class);
+
+    /** Maximum number of word-start keys indexed per name. */
+    private static final int MAX_KEYS_PER_NAME = 4;
+    /** Maximum distance in meters between a map click and a reverse geocoded place. */
+    private static final double MAX_REVERSE_DISTANCE_METERS = 500;
+
+    private final File file;
+    private volatile Index index;
+    private volatile String lastNormalizedQuery = "";
+
+    /**
+     * Creates a service backed by the default gazetteer file. The file is read
+     * on first use or by {@link #preload()}.
+     */
+    public OfflineGeocodingService() {
+        this(new File(Constants.GAZETTEER_FILE));
+    }
+
+    /**
+     * Creates a service backed by the given gazetteer file. The file is read on
+     * first use or by {@link #preload()}.
+     *
+     * @param file The gazetteer file.
+     */
+    public OfflineGeocodingService(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Checks whether the default gazetteer file exists.
+     */
+    public static boolean isAvailable() {
+        return new File(Constants.GAZETTEER_FILE).canRead();
+    }
+
+    /**
+     * Loads the gazetteer and builds the index, if not done yet. Call from a
+     * background thread to avoid a delay on the first query.
+     *
+     * @throws IOException If the gazetteer file cannot be read.
+     */
+    public void preload() throws IOException {
+        index();
+    }
+
+    @Override
+    public List<Place> searchPlaces(String query) throws IOException {
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("Query string must not be empty.");
+        }
+        String normalizedQuery = Utils.normalizeForSearch(query);
+        lastNormalizedQuery = normalizedQuery;
+        Index current = index();
+        List<Place> places = new ArrayList<>();
+        for (int entry : current.find(normalizedQuery, Constants.MAX_SEARCH_RESULTS)) {
+            places.add(current.toPlace(entry));
+        }
+        return places;
+    }
+
+    @Override
+    public List<PlaceSuggestion> suggest(String query, int limit) throws IOException {
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("Query string must not be empty.");
+        }
+        Index current = index();
+        Gazetteer gazetteer = current.gazetteer;
+        List<PlaceSuggestion> suggestions = new ArrayList<>();
+        for (int entry : current.find(Utils.normalizeForSearch(query), limit)) {
+            suggestions.add(new PlaceSuggestion(gazetteer.getOsmId(entry), gazetteer.getName(entry),
+                    current.displayNameOf(entry), gazetteer.getLatitude(entry), gazetteer.getLongitude(entry)));
+        }
+        return suggestions;
+    }
+
+    @Override
+    public Place reverseGeocode(double latitude, double longitude) throws IOException {
+        Index current = index();
+        Gazetteer gazetteer = current.gazetteer;
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        int best = -1;
+        double bestDistanceSquared = Double.MAX_VALUE;
+        for (int i = 0; i < gazetteer.size(); i++) {
+            double dLat = gazetteer.getLatitude(i) - latitude;
+            double dLon = (gazetteer.getLongitude(i) - longitude) * cosLatitude;
+            double distanceSquared = dLat * dLat + dLon * dLon;
+            if (distanceSquared < bestDistanceSquared) {
+                bestDistanceSquared = distanceSquared;
+                best = i;
+            }
+        }
+        double bestDistanceMeters = Math.sqrt(bestDistanceSquared) * 111_320;
+        if (best < 0 || bestDistanceMeters > MAX_REVERSE_DISTANCE_METERS) {
+            return null;
+        }
+        return current.toPlace(best);
+    }
+
+    /**
+     * The gazetteer stores points only, so the only geometry available is the
+     * one a place already carries.
+     */
+    @Override
+    public String lookupGeometry(Place place) {
+        return place != null ? place.getGeoJson() : null;
+    }
+
+    @Override
+    public String getLastNormalizedQuery() {
+        return lastNormalizedQuery;
+    }
+
+    private Index index() throws IOException {
+        Index current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) {
+                    long start = System.nanoTime();
+                    current = new Index(Gazetteer.read(file));
+                    index = current;
+                    log.info("Gazetteer loaded: {} places, {} keys in {} ms", current.gazetteer.size(),
+                            current.keyPositions.length, (System.nanoTime() - start) / 1_000_000);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Sorted word-start keys over the normalized names of a gazetteer.
+     */
+    private static final class Index {
+        final Gazetteer gazetteer;
+        /** All normalized names, concatenated. */
+        final char[] pool;
+        /** Start of each entry's normalized name in {@link #pool}. */
+        final int[] nameStarts;
+        /** End (exclusive) of each entry's normalized name in {@link #pool}. */
+        final int[] nameEnds;
+        /** Start of each key in {@link #pool}, sorted by key text. */
+        final int[] keyPositions;
+        /** Entry of each key. */
+        final int[] keyEntries;
+
+        Index(Gazetteer gazetteer) {
+            this.gazetteer = gazetteer;
+            int size = gazetteer.size();
+            nameStarts = new int[size];
+            nameEnds = new int[size];
+            StringBuilder poolBuilder = new StringBuilder(size * 16);
+            int[] positions = new int[Math.max(16, size * 2)];
+            int[] entries = new int[positions.length];
+            int keyCount = 0;
+
+            for (int entry = 0; entry < size; entry++) {
+                nameStarts[entry] = poolBuilder.length();
+                int keysForName = 0;
+                for (String word : gazetteer.getName(entry).split("[\\s\\p{Punct}]+")) {
+                    String normalizedWord = Utils.normalizeForSearch(word);
+                    if (normalizedWord.isEmpty()) {
+                        continue;
+                    }
+                    if (keysForName < MAX_KEYS_PER_NAME) {
+                        if (keyCount == positions.length) {
+                            positions = Arrays.copyOf(positions, keyCount * 2);
+                            entries = Arrays.copyOf(entries, keyCount * 2);
+                        }
+                        positions[keyCount] = poolBuilder.length();
+                        entries[keyCount++] = entry;
+                        keysForName++;
+                    }
+                    poolBuilder.append(normalizedWord);
+                }
+                nameEnds[entry] = poolBuilder.length();
+            }
+            pool = new char[poolBuilder.length()];
+            poolBuilder.getChars(0, pool.length, pool, 0);
+
+            Integer[] order = new Integer[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+                order[i] = i;
+            }
+            int[] unsortedPositions = positions;
+            int[] unsortedEntries = entries;
+            Arrays.sort(order, (a, b) -> compareKeys(unsortedPositions[a], unsortedEntries[a],
+                    unsortedPositions[b], unsortedEntries[b]));
+            keyPositions = new int[keyCount];
+            keyEntries = new int[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+                keyPositions[i] = unsortedPositions[order[i]];
+                keyEntries[i] = unsortedEntries[order[i]];
+            }
+        }
+
+        /**
+         * Finds the best entries whose name has a word-start key beginning with
+         * the normalized query. Exact name matches rank first, then names that
+         * start with the query, then matches on a later word; ties are broken by
+         * place rank and then by shorter name.
+         * <p>
+         * The whole matching range is ranked, whatever its size: the best
+         * {@code limit} entries seen so far are kept in a heap whose head is
+         * the worst of them, so short prefixes cost one pass over their keys
+         * and memory for {@code limit} entries.
+         */
+        List<Integer> find(String normalizedQuery, int limit) {
+            if (normalizedQuery == null || normalizedQuery.isEmpty() || limit <= 0) {
+                return List.of();
+            }
+            // Scores of the entries in the heap
+            Map<Integer, Integer> scores = new HashMap<>();
+            Comparator<Integer> better = (a, b) -> {
+                int byScore = Integer.compare(scores.get(b), scores.get(a));
+                if (byScore != 0) {
+                    return byScore;
+                }
+                int byRank = Integer.compare(gazetteer.getRank(b), gazetteer.getRank(a));
+                if (byRank != 0) {
+                    return byRank;
+                }
+                int byLength = Integer.compare(nameEnds[a] - nameStarts[a], nameEnds[b] - nameStarts[b]);
+                return byLength != 0 ? byLength : Integer.compare(a, b);
+            };
+            PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1, better.reversed());
+
+            for (int k = lowerBound(normalizedQuery); k < keyPositions.length; k++) {
+                int entry = keyEntries[k];
+                int position = keyPositions[k];
+                if (!startsWith(position, nameEnds[entry], normalizedQuery)) {
+                    break;
+                }
+                int score;
+                if (position != nameStarts[entry]) {
+                    if (startsWith(nameStarts[entry], nameEnds[entry], normalizedQuery)) {
+                        continue; // Scored higher through the key of its first word
+                    }
+                    score = 1;
+                } else if (nameEnds[entry] - position == normalizedQuery.length()) {
+                    score = 3;
+                } else {
+                    score = 2;
+                }
+                if (scores.containsKey(entry)) {
+                    continue; // Another later word of a name already in the heap
+                }
+                scores.put(entry, score);
+                if (best.size() < limit) {
+                    best.add(entry);
+                } else if (better.compare(entry, best.peek()) < 0) {
+                    scores.remove(best.poll());
+                    best.add(entry);
+                } else {
+                    scores.remove(entry);
+                }
+            }
+
+            List<Integer> matches = new ArrayList<>(best);
+            matches.sort(better);
+            return matches;
+        }
+
+        Place toPlace(int entry) {
+            String address = gazetteer.getAddress(entry);
+            return new Place(gazetteer.getOsmId(entry), gazetteer.getName(entry), gazetteer.getLatitude(entry),
+                    gazetteer.getLongitude(entry), address.isEmpty() ? gazetteer.getName(entry) : address, null,
+                    null, gazetteer.getRank(entry) / 100.0);
+        }
+
+        String displayNameOf(int entry) {
+            String address = gazetteer.getAddress(entry);
+            return address.isEmpty() ? gazetteer.getName(entry) : gazetteer.getName(entry) + ", " + address;
+        }
+
+        /** Index of the first key not less than the query. */
+        private int lowerBound(String query) {
+            int low = 0;
+            int high = keyPositions.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareToQuery(keyPositions[mid], nameEnds[keyEntries[mid]], query) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int compareKeys(int positionA, int entryA, int positionB, int entryB) {
+            int endA = nameEnds[entryA];
+            int endB = nameEnds[entryB];
+            int lengthA = endA - positionA;
+            int lengthB = endB - positionB;
+            int length = Math.min(lengthA, lengthB);
+            for (int i = 0; i < length; i++) {
+                int diff = pool[positionA + i] - pool[positionB + i];
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return lengthA - lengthB;
+        }
+
+        private int compareToQuery(int position, int end, String query) {
+            int length = Math.min(end - position, query.length());
+            for (int i = 0; i < length; i++) {
+                int diff = pool[position + i] - query.charAt(i);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return (end - position) - query.length();
+        }
+
+        private boolean startsWith(int position, int end, String query) {
+            if (end - position < query.length()) {
+                return false;
+            }
+            for (int i = 0; i < query.length(); i++) {
+                if (pool[position + i] != query.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
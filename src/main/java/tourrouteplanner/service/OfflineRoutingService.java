@@ -0,0 +1,585 @@
+package tourrouteplanner.service;
+
+import tourrouteplanner.model.CoordinateSequence;
+import tourrouteplanner.model.Place;
+import tourrouteplanner.model.Route;
+import tourrouteplanner.model.RouteLeg;
+import tourrouteplanner.model.TravelMatrix;
+import tourrouteplanner.util.Constants;
+import tourrouteplanner.util.InstructionFormatter;
+import tourrouteplanner.util.SegmentIndex;
+import tourrouteplanner.util.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Routing service answering route and matrix requests in-process, without an
+ * OSRM server.
+ * <p>
+ * The drivable road network is read from an OSM extract by
+ * {@link RoadGraphExtractor} and preprocessed into a
+ * {@link ContractionHierarchy} on all cores when the service is first used (or
+ * by {@link #preload()}). The result is saved as a {@link RoadGraphFile}, which
+ * later starts memory-mapped in milliseconds until the extract changes.
+ * Queries then take milliseconds. Places are snapped onto the nearest road
+ * through a {@link SegmentIndex}, and routes start and end at the snapped
+ * points, part-way along their roads; turn-by-turn instructions are derived
+ * from street names and the angles between roads.
+ */
+public class OfflineRoutingService implements IRoutingService {
+
+    private static final Logger log = LoggerFactory.getLogger(OfflineRoutingService.class);
+
+    private final File pbfFile;
+    private final File graphFile;
+    private final InstructionFormatter instructionFormatter = new InstructionFormatter();
+    /** Guards loading or building the engine, which can take minutes. */
+    private final Object engineLock = new Object();
+    private volatile Engine engine;
+    /** Read without locking, so callers on the UI thread never wait for a build. */
+    private volatile Route lastRoute;
+
+    /**
+     * Creates a service using the extract and road graph file configured by
+     * {@link Constants#CONFIG_ROUTING_PBF_FILE} and
+     * {@link Constants#CONFIG_ROUTING_GRAPH_FILE}. The road graph is loaded or
+     * built on first use or by {@link #preload()}.
+     */
+    public OfflineRoutingService() {
+        this(configuredPbfFile(), configuredGraphFile());
+    }
+
+    /**
+     * Creates a service using the given files. The road graph is loaded or
+     * built on first use or by {@link #preload()}.
+     *
+     * @param pbfFile   The {@code .osm.pbf} extract.
+     * @param graphFile The road graph file to load, and to save a newly built
+     *                  graph to; null to always build from the extract.
+     */
+    public OfflineRoutingService(File pbfFile, File graphFile) {
+        this.pbfFile = pbfFile;
+        this.graphFile = graphFile;
+    }
+
+    /**
+     * Checks whether the configured OSM extract or road graph file exists.
+     */
+    public static boolean isAvailable() {
+        return configuredPbfFile().canRead() || configuredGraphFile().canRead();
+    }
+
+    /**
+     * Gets the OSM extract named by {@link Constants#CONFIG_ROUTING_PBF_FILE}.
+     */
+    public static File configuredPbfFile() {
+        return new File(Utils.loadConfigProperty(Constants.CONFIG_ROUTING_PBF_FILE, Constants.ROUTING_PBF_FILE));
+    }
+
+    /**
+     * Gets the road graph file named by {@link Constants#CONFIG_ROUTING_GRAPH_FILE}.
+     */
+    public static File configuredGraphFile() {
+        return new File(Utils.loadConfigProperty(Constants.CONFIG_ROUTING_GRAPH_FILE, Constants.ROUTING_GRAPH_FILE));
+    }
+
+    /**
+     * Loads or builds the road graph and contraction hierarchy, if not done
+     * yet. Call from a background thread to avoid a delay on the first route.
+     *
+     * @throws IOException If neither the road graph file nor the extract can
+     *                     be read.
+     */
+    public void preload() throws IOException {
+        engine();
+    }
+
+    @Override
+    public synchronized Route getRoute(List<Place> waypoints) throws IOException {
+        if (waypoints == null || waypoints.size() < 2) {
+            throw new IllegalArgumentException("Routing requires at least 2 waypoints.");
+        }
+        Engine current = engine();
+        RoadGraph graph = current.graph;
+        Snap[] snaps = new Snap[waypoints.size()];
+        for (int i = 0; i < snaps.length; i++) {
+            snaps[i] = current.roadIndex.snap(waypoints.get(i).getLatitude(), waypoints.get(i).getLongitude());
+        }
+        RouteLeg[] legs = new RouteLeg[snaps.length - 1];
+        for (int i = 0; i < legs.length; i++) {
+            Snap from = snaps[i];
+            Snap to = snaps[i + 1];
+            int direct = directWeight(graph, from, to);
+            boolean found = current.query.route(departure(graph, from), arrival(graph, to));
+            if (direct != ContractionHierarchy.UNREACHABLE && (!found || direct <= current.query.getWeight())) {
+                legs[i] = toDirectLeg(graph, from, to, direct);
+            } else if (found) {
+                legs[i] = toLeg(graph, from, to, current.query);
+            } else {
+                log.warn("No road connection from {} to {}", waypoints.get(i).getName(),
+                        waypoints.get(i + 1).getName());
+                lastRoute = null;
+                return null;
+            }
+        }
+        lastRoute = RoutingService.assembleRoute(waypoints, legs);
+        return lastRoute;
+    }
+
+    @Override
+    public synchronized TravelMatrix getMatrix(List<Place> places) throws IOException {
+        if (places == null || places.isEmpty()) {
+            throw new IllegalArgumentException("Matrix requires at least 1 place.");
+        }
+        Engine current = engine();
+        RoadGraph graph = current.graph;
+        int n = places.size();
+        Snap[] snaps = new Snap[n];
+        ContractionHierarchy.Endpoint[] departures = new ContractionHierarchy.Endpoint[n];
+        ContractionHierarchy.Endpoint[] arrivals = new ContractionHierarchy.Endpoint[n];
+        for (int i = 0; i < n; i++) {
+            snaps[i] = current.roadIndex.snap(places.get(i).getLatitude(), places.get(i).getLongitude());
+            departures[i] = departure(graph, snaps[i]);
+            arrivals[i] = arrival(graph, snaps[i]);
+        }
+        int[] weights = new int[n * n];
+        int[] distances = new int[n * n];
+        current.query.manyToMany(departures, arrivals, weights, distances);
+
+        double[] durationSeconds = new double[n * n];
+        double[] distanceMeters = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                int cell = i * n + j;
+                int direct = directWeight(graph, snaps[i], snaps[j]);
+                if (direct != ContractionHierarchy.UNREACHABLE && direct <= weights[cell]) {
+                    weights[cell] = direct;
+                    distances[cell] = (int) Math.round(graph.getEdgeDistance(snaps[i].edge)
+                            * Math.abs(snaps[j].ratio - snaps[i].ratio));
+                }
+                boolean reachable = weights[cell] != ContractionHierarchy.UNREACHABLE;
+                durationSeconds[cell] = reachable ? weights[cell] / 10.0 : Double.NaN;
+                distanceMeters[cell] = reachable ? distances[cell] / 10.0 : Double.NaN;
+            }
+        }
+        return new TravelMatrix(places, durationSeconds, distanceMeters);
+    }
+
+    @Override
+    public Route getLastRoute() {
+        return lastRoute;
+    }
+
+    /**
+     * Gets the nodes a route can leave a snapped point from: along its road to
+     * either end the road may be driven towards, with the share of the road's
+     * travel time and length on the way.
+     */
+    private static ContractionHierarchy.Endpoint departure(RoadGraph graph, Snap snap) {
+        return endpoint(graph, snap, RoadGraph.FORWARD, RoadGraph.BACKWARD);
+    }
+
+    /** Counterpart of {@link #departure} for the nodes a route can reach a snapped point from. */
+    private static ContractionHierarchy.Endpoint arrival(RoadGraph graph, Snap snap) {
+        return endpoint(graph, snap, RoadGraph.BACKWARD, RoadGraph.FORWARD);
+    }
+
+    private static ContractionHierarchy.Endpoint endpoint(RoadGraph graph, Snap snap, int towardTarget,
+            int towardSource) {
+        int directions = graph.getEdgeDirections(snap.edge);
+        int count = Integer.bitCount(directions);
+        int[] nodes = new int[count];
+        int[] weights = new int[count];
+        int[] distances = new int[count];
+        int i = 0;
+        if ((directions & towardTarget) != 0) {
+            nodes[i] = graph.getEdgeTarget(snap.edge);
+            weights[i] = (int) Math.round(graph.getEdgeDuration(snap.edge) * (1 - snap.ratio));
+            distances[i++] = (int) Math.round(graph.getEdgeDistance(snap.edge) * (1 - snap.ratio));
+        }
+        if ((directions & towardSource) != 0) {
+            nodes[i] = graph.getEdgeSource(snap.edge);
+            weights[i] = (int) Math.round(graph.getEdgeDuration(snap.edge) * snap.ratio);
+            distances[i] = (int) Math.round(graph.getEdgeDistance(snap.edge) * snap.ratio);
+        }
+        return new ContractionHierarchy.Endpoint(nodes, weights, distances);
+    }
+
+    /**
+     * Gets the travel time between two points on the same road when driving
+     * along it, or {@link ContractionHierarchy#UNREACHABLE} if they are on
+     * different roads or the road is one-way the other way.
+     */
+    private static int directWeight(RoadGraph graph, Snap from, Snap to) {
+        if (from.edge != to.edge) {
+            return ContractionHierarchy.UNREACHABLE;
+        }
+        if (to.ratio == from.ratio) {
+            return 0;
+        }
+        int directions = graph.getEdgeDirections(from.edge);
+        boolean forward = to.ratio > from.ratio;
+        if ((directions & (forward ? RoadGraph.FORWARD : RoadGraph.BACKWARD)) == 0) {
+            return ContractionHierarchy.UNREACHABLE;
+        }
+        return (int) Math.round(graph.getEdgeDuration(from.edge) * Math.abs(to.ratio - from.ratio));
+    }
+
+    /**
+     * Turns the last route of a query into a route leg: from the start point
+     * along its road to the first node, the path, and from the last node along
+     * the destination's road to the end point.
+     */
+    private RouteLeg toLeg(RoadGraph graph, Snap from, Snap to, ContractionHierarchy.Query query) {
+        int[] path = query.getPath();
+        boolean leavesForward = query.getSourceNode() == graph.getEdgeTarget(from.edge);
+        boolean arrivesForward = query.getTargetNode() == graph.getEdgeSource(to.edge);
+        double fromEdgeMeters = graph.getEdgeDistance(from.edge) / 10.0;
+        double toEdgeMeters = graph.getEdgeDistance(to.edge) / 10.0;
+
+        CoordinateSequence.Builder coordinates = new CoordinateSequence.Builder(path.length * 4 + 8);
+        coordinates.addE6(from.latitudeE6, from.longitudeE6);
+        int fromPoints = graph.getEdgePointCount(from.edge);
+        if (leavesForward) {
+            for (int point = from.segment + 1; point < fromPoints; point++) {
+                addEdgePoint(graph, from.edge, point, coordinates);
+            }
+        } else {
+            for (int point = from.segment; point >= 0; point--) {
+                addEdgePoint(graph, from.edge, point, coordinates);
+            }
+        }
+        for (int edge : path) {
+            graph.appendEdgePath(edge, coordinates);
+        }
+        int toPoints = graph.getEdgePointCount(to.edge);
+        if (arrivesForward) {
+            for (int point = 1; point <= to.segment; point++) {
+                addEdgePoint(graph, to.edge, point, coordinates);
+            }
+        } else {
+            for (int point = toPoints - 2; point > to.segment; point--) {
+                addEdgePoint(graph, to.edge, point, coordinates);
+            }
+        }
+        coordinates.addE6(to.latitudeE6, to.longitudeE6);
+
+        int[] arcs = new int[path.length + 2];
+        double[] meters = new double[arcs.length];
+        arcs[0] = leavesForward ? from.edge : ~from.edge;
+        meters[0] = fromEdgeMeters * (leavesForward ? 1 - from.ratio : from.ratio);
+        for (int k = 0; k < path.length; k++) {
+            arcs[k + 1] = path[k];
+            meters[k + 1] = graph.getEdgeDistance(edgeOf(path[k])) / 10.0;
+        }
+        arcs[arcs.length - 1] = arrivesForward ? to.edge : ~to.edge;
+        meters[arcs.length - 1] = toEdgeMeters * (arrivesForward ? to.ratio : 1 - to.ratio);
+        return new RouteLeg(coordinates.build(), query.getDistance() / 10.0, query.getWeight() / 10.0,
+                describePath(graph, arcs, meters));
+    }
+
+    /**
+     * Creates the route leg between two points on the same road.
+     */
+    private RouteLeg toDirectLeg(RoadGraph graph, Snap from, Snap to, int weight) {
+        boolean forward = to.ratio >= from.ratio;
+        CoordinateSequence.Builder coordinates = new CoordinateSequence.Builder(
+                Math.abs(to.segment - from.segment) + 2);
+        coordinates.addE6(from.latitudeE6, from.longitudeE6);
+        if (forward) {
+            for (int point = from.segment + 1; point <= to.segment; point++) {
+                addEdgePoint(graph, from.edge, point, coordinates);
+            }
+        } else {
+            for (int point = from.segment; point > to.segment; point--) {
+                addEdgePoint(graph, from.edge, point, coordinates);
+            }
+        }
+        coordinates.addE6(to.latitudeE6, to.longitudeE6);
+        double meters = graph.getEdgeDistance(from.edge) / 10.0 * Math.abs(to.ratio - from.ratio);
+        return new RouteLeg(coordinates.build(), meters, weight / 10.0, describePath(graph,
+                new int[] { forward ? from.edge : ~from.edge }, new double[] { meters }));
+    }
+
+    private static void addEdgePoint(RoadGraph graph, int edge, int point, CoordinateSequence.Builder coordinates) {
+        coordinates.addE6(graph.getEdgePointLatitudeE6(edge, point), graph.getEdgePointLongitudeE6(edge, point));
+    }
+
+    /**
+     * Derives turn-by-turn instructions from a path: a new step starts where
+     * the street name changes or the road turns by at least 60 degrees. Pieces
+     * of road shorter than a meter, where a point snapped next to a junction,
+     * are left out.
+     *
+     * @param arcs   The path's edges, each as {@code e} or {@code ~e}.
+     * @param meters The length driven on each edge.
+     */
+    private List<String> describePath(RoadGraph graph, int[] arcs, double[] meters) {
+        List<String> steps = new ArrayList<>();
+        int previous = -1;
+        String instruction = null;
+        double stepMeters = 0;
+        for (int k = 0; k < arcs.length; k++) {
+            if (meters[k] < 1) {
+                continue;
+            }
+            int edge = edgeOf(arcs[k]);
+            if (previous < 0) {
+                instruction = instructionFormatter.generateInstruction("depart", "", null, graph.getEdgeName(edge),
+                        "");
+            } else {
+                String modifier = turnModifier(graph.getHeading(arcs[k], false)
+                        - graph.getHeading(arcs[previous], true));
+                boolean renamed = graph.getEdgeNameIndex(edge) != graph.getEdgeNameIndex(edgeOf(arcs[previous]));
+                boolean turns = !modifier.equals("straight") && !modifier.startsWith("slight");
+                if (renamed || turns) {
+                    steps.add(OsrmRouteParser.describeStep(instruction, stepMeters));
+                    stepMeters = 0;
+                    String type = turns || modifier.startsWith("slight") ? "turn" : "new name";
+                    instruction = instructionFormatter.generateInstruction(type,
+                            type.equals("turn") ? modifier : "", null, graph.getEdgeName(edge), "");
+                }
+            }
+            stepMeters += meters[k];
+            previous = k;
+        }
+        if (instruction != null) {
+            steps.add(OsrmRouteParser.describeStep(instruction, stepMeters));
+        }
+        steps.add(OsrmRouteParser.describeStep(
+                instructionFormatter.generateInstruction("arrive", "", null, "", ""), 0));
+        return steps;
+    }
+
+    private static int edgeOf(int arcEdge) {
+        return arcEdge >= 0 ? arcEdge : ~arcEdge;
+    }
+
+    /**
+     * Maps a change of heading (degrees, clockwise positive) to an OSRM turn
+     * modifier.
+     */
+    private static String turnModifier(double headingChange) {
+        double angle = ((headingChange % 360) + 540) % 360 - 180;
+        double magnitude = Math.abs(angle);
+        String side = angle > 0 ? "right" : "left";
+        if (magnitude < 25) {
+            return "straight";
+        } else if (magnitude < 60) {
+            return "slight " + side;
+        } else if (magnitude < 120) {
+            return side;
+        } else if (magnitude < 165) {
+            return "sharp " + side;
+        }
+        return "uturn";
+    }
+
+    private Engine engine() throws IOException {
+        Engine current = engine;
+        if (current == null) {
+            synchronized (engineLock) {
+                current = engine;
+                if (current == null) {
+                    RoadGraphFile saved = loadGraphFile();
+                    current = saved != null ? new Engine(saved.getGraph(), saved.getHierarchy()) : buildEngine();
+                    engine = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Maps the road graph file if it exists and matches the extract.
+     *
+     * @return The file, or null if the graph has to be built.
+     */
+    private RoadGraphFile loadGraphFile() {
+        if (graphFile == null || !graphFile.canRead()) {
+            return null;
+        }
+        try {
+            long start = System.nanoTime();
+            RoadGraphFile saved = RoadGraphFile.read(graphFile, pbfFile);
+            if (saved == null) {
+                log.info("Road graph file {} is older than {}; rebuilding", graphFile, pbfFile);
+                return null;
+            }
+            log.info("Mapped road graph file {} ({} nodes) in {} ms", graphFile, saved.getGraph().getNodeCount(),
+                    (System.nanoTime() - start) / 1_000_000);
+            return saved;
+        } catch (IOException e) {
+            log.warn("Could not load road graph file {}; rebuilding: {}", graphFile, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Builds the road graph and hierarchy from the extract and saves them to
+     * the road graph file for the next start.
+     */
+    private Engine buildEngine() throws IOException {
+        if (!pbfFile.canRead()) {
+            throw new IOException("Road network extract not found: " + pbfFile.getAbsolutePath());
+        }
+        RoadGraph graph = RoadGraphExtractor.extract(pbfFile);
+        ContractionHierarchy hierarchy;
+        try {
+            hierarchy = ContractionHierarchy.build(graph, Runtime.getRuntime().availableProcessors());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while preparing the road network");
+        }
+        if (graphFile != null) {
+            try {
+                RoadGraphFile.write(graphFile, graph, hierarchy, pbfFile);
+                log.info("Saved road graph file {}", graphFile.getAbsolutePath());
+            } catch (IOException e) {
+                log.warn("Could not save road graph file {}: {}", graphFile, e.getMessage());
+            }
+        }
+        return new Engine(graph, hierarchy);
+    }
+
+    /**
+     * Road graph, hierarchy and the search state used by this service.
+     */
+    private static final class Engine {
+        final RoadGraph graph;
+        final ContractionHierarchy hierarchy;
+        final ContractionHierarchy.Query query;
+        final RoadIndex roadIndex;
+
+        Engine(RoadGraph graph, ContractionHierarchy hierarchy) {
+            this.graph = graph;
+            this.hierarchy = hierarchy;
+            this.query = hierarchy.newQuery();
+            this.roadIndex = new RoadIndex(graph);
+        }
+    }
+
+    /**
+     * A place snapped onto a road.
+     */
+    private static final class Snap {
+        final int edge;
+        /** Segment of the edge the point lies on, numbered from the edge's source. */
+        final int segment;
+        final int latitudeE6;
+        final int longitudeE6;
+        /** Share of the edge's length between its source and the point. */
+        final double ratio;
+
+        Snap(int edge, int segment, int latitudeE6, int longitudeE6, double ratio) {
+            this.edge = edge;
+            this.segment = segment;
+            this.latitudeE6 = latitudeE6;
+            this.longitudeE6 = longitudeE6;
+            this.ratio = ratio;
+        }
+    }
+
+    /**
+     * Spatial index over the straight segments of all roads, for snapping
+     * places onto the nearest road.
+     */
+    private static final class RoadIndex implements SegmentIndex.Segments {
+        /** Farthest a place may be from a road, in meters. */
+        private static final double MAX_SNAP_METERS = 50_000;
+
+        private final RoadGraph graph;
+        /** First segment of each edge; one extra entry holds the segment count. */
+        private final int[] firstSegments;
+        /** Edge of each segment. */
+        private final int[] segmentEdges;
+        private final SegmentIndex index;
+
+        RoadIndex(RoadGraph graph) {
+            this.graph = graph;
+            int edgeCount = graph.getEdgeCount();
+            firstSegments = new int[edgeCount + 1];
+            for (int e = 0; e < edgeCount; e++) {
+                firstSegments[e + 1] = firstSegments[e] + graph.getEdgePointCount(e) - 1;
+            }
+            segmentEdges = new int[firstSegments[edgeCount]];
+            for (int e = 0; e < edgeCount; e++) {
+                Arrays.fill(segmentEdges, firstSegments[e], firstSegments[e + 1], e);
+            }
+            index = new SegmentIndex(this);
+        }
+
+        @Override
+        public int size() {
+            return segmentEdges.length;
+        }
+
+        @Override
+        public int getStartLatitudeE6(int segment) {
+            int edge = segmentEdges[segment];
+            return graph.getEdgePointLatitudeE6(edge, segment - firstSegments[edge]);
+        }
+
+        @Override
+        public int getStartLongitudeE6(int segment) {
+            int edge = segmentEdges[segment];
+            return graph.getEdgePointLongitudeE6(edge, segment - firstSegments[edge]);
+        }
+
+        @Override
+        public int getEndLatitudeE6(int segment) {
+            int edge = segmentEdges[segment];
+            return graph.getEdgePointLatitudeE6(edge, segment - firstSegments[edge] + 1);
+        }
+
+        @Override
+        public int getEndLongitudeE6(int segment) {
+            int edge = segmentEdges[segment];
+            return graph.getEdgePointLongitudeE6(edge, segment - firstSegments[edge] + 1);
+        }
+
+        /**
+         * Snaps a coordinate onto the nearest road.
+         *
+         * @throws IOException If no road lies near the coordinate.
+         */
+        Snap snap(double latitude, double longitude) throws IOException {
+            SegmentIndex.Match match = index.nearest(latitude, longitude, MAX_SNAP_METERS);
+            if (match == null) {
+                throw new IOException(String.format(Locale.US, "No road near %.5f, %.5f", latitude, longitude));
+            }
+            int edge = segmentEdges[match.getSegment()];
+            int segment = match.getSegment() - firstSegments[edge];
+            double before = 0;
+            double total = 0;
+            for (int k = firstSegments[edge]; k < firstSegments[edge + 1]; k++) {
+                double length = length(k);
+                if (k < match.getSegment()) {
+                    before += length;
+                } else if (k == match.getSegment()) {
+                    before += length * match.getFraction();
+                }
+                total += length;
+            }
+            return new Snap(edge, segment, (int) Math.round(match.getLatitude() * 1e6),
+                    (int) Math.round(match.getLongitude() * 1e6), total > 0 ? before / total : 0);
+        }
+
+        /** Gets the length of a segment in microdegrees of latitude. */
+        private double length(int segment) {
+            double dy = getEndLatitudeE6(segment) - getStartLatitudeE6(segment);
+            double dx = (getEndLongitudeE6(segment) - getStartLongitudeE6(segment))
+                    * Math.cos(Math.toRadians(getStartLatitudeE6(segment) * 1e-6));
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package tourrouteplanner.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import tourrouteplanner.model.CoordinateSequence;
+import tourrouteplanner.model.Place;
+import tourrouteplanner.model.Route;
+import tourrouteplanner.model.RouteLeg;
+import tourrouteplanner.util.InstructionFormatter;
+import tourrouteplanner.util.Polyline;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses OSRM {@code /route} responses (steps enabled) into {@link Route}
+ * objects or per-leg {@link RouteLeg} objects. The route geometry may be GeoJSON or an encoded polyline
+ * ({@code geometries=polyline6}), which is decoded straight into the packed
+ * coordinate storage.
+ * <p>
+ * {@link #parse(Reader, List)} streams the response with a {@link JsonReader}:
+ * coordinates and maneuvers are read in a single pass and no intermediate
+ * JSON tree is built, which keeps peak memory flat for long routes.
+ * {@link #parseTree(Reader, List)} is the previous tree-based parser, kept as
+ * a reference for {@link tourrouteplanner.tools.RouteParserBenchmark}.
+ */
+public class OsrmRouteParser {
+
+    private static final Logger log = LoggerFactory.getLogger(OsrmRouteParser.class);
+
+    private final InstructionFormatter instructionFormatter;
+    private final int polylinePrecision;
+
+    /**
+     * Creates a parser expecting polyline6 for encoded geometries.
+     *
+     * @param instructionFormatter Turns maneuvers into instruction text.
+     */
+    public OsrmRouteParser(InstructionFormatter instructionFormatter) {
+        this(instructionFormatter, 6);
+    }
+
+    /**
+     * Creates a parser.
+     *
+     * @param instructionFormatter Turns maneuvers into instruction text.
+     * @param polylinePrecision    Precision of encoded polyline geometries: 5 for
+     *                             {@code polyline}, 6 for {@code polyline6}.
+     */
+    public OsrmRouteParser(InstructionFormatter instructionFormatter, int polylinePrecision) {
+        this.instructionFormatter = instructionFormatter;
+        this.polylinePrecision = polylinePrecision;
+    }
+
+    /**
+     * Parses an OSRM route response in one streaming pass. Only the first route
+     * is read; alternatives and the waypoints array are skipped.
+     *
+     * @param body      The response body.
+     * @param waypoints The waypoints the route was requested for.
+     * @return The route, or null if OSRM reported an error or found no route.
+     * @throws IOException If the body cannot be read or is not valid JSON.
+     */
+    public Route parse(Reader body, List<Place> waypoints) throws IOException {
+        RouteBuilder route = readResponse(body, false);
+        if (route == null) {
+            return null;
+        }
+        List<String> instructions = new ArrayList<>();
+        for (LegBuilder leg : route.legs) {
+            for (String instruction : leg.instructions) {
+                instructions.add(numberInstruction(instructions.size() + 1, instruction));
+            }
+        }
+        return new Route(waypoints, route.coordinates.build(), route.distance, route.duration,
+                String.join("\n", instructions));
+    }
+
+    /**
+     * Parses the legs of an OSRM route response in one streaming pass. Leg
+     * geometry is assembled from the step geometries, so the request may use
+     * {@code overview=false}.
+     *
+     * @param body The response body of a request with {@code steps=true}.
+     * @return One leg per consecutive waypoint pair, or null if OSRM reported an
+     *         error or found no route.
+     * @throws IOException If the body cannot be read or is not valid JSON.
+     */
+    public List<RouteLeg> parseLegs(Reader body) throws IOException {
+        RouteBuilder route = readResponse(body, true);
+        if (route == null) {
+            return null;
+        }
+        List<RouteLeg> legs = new ArrayList<>(route.legs.size());
+        for (LegBuilder leg : route.legs) {
+            legs.add(new RouteLeg(leg.coordinates.build(), leg.distance, leg.duration, leg.instructions));
+        }
+        return legs;
+    }
+
+    /**
+     * Numbers an instruction produced by {@link #parseLegs(Reader)}, giving the
+     * same text as the instructions of a full route.
+     */
+    public static String numberInstruction(int stepNumber, String legInstruction) {
+        return stepNumber + ". " + legInstruction;
+    }
+
+    private RouteBuilder readResponse(Reader body, boolean legGeometry) throws IOException {
+        JsonReader reader = new JsonReader(body);
+        String code = "";
+        String message = "Unknown error";
+        RouteBuilder route = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "code" -> code = reader.nextString();
+                case "message" -> message = reader.nextString();
+                case "routes" -> {
+                    reader.beginArray();
+                    if (reader.hasNext()) {
+                        route = readRoute(reader, legGeometry);
+                    }
+                    while (reader.hasNext()) {
+                        reader.skipValue();
+                    }
+                    reader.endArray();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // "code" may follow "routes", so it is only checked once the object is done
+        if (!"Ok".equalsIgnoreCase(code)) {
+            log.error("OSRM API error: {}", message);
+            return null;
+        }
+        if (route == null) {
+            log.error("OSRM response contains no routes");
+            return null;
+        }
+        return route;
+    }
+
+    /**
+     * Fields of the first route collected while streaming.
+     */
+    private static final class RouteBuilder {
+        final CoordinateSequence.Builder coordinates = new CoordinateSequence.Builder();
+        final List<LegBuilder> legs = new ArrayList<>();
+        double distance;
+        double duration;
+    }
+
+    /**
+     * Fields of one leg collected while streaming. Consecutive steps share
+     * their boundary vertex, which is only kept once.
+     */
+    private static final class LegBuilder {
+        final CoordinateSequence.Builder coordinates = new CoordinateSequence.Builder();
+        final List<String> instructions = new ArrayList<>();
+        double distance;
+        double duration;
+        private int lastLatE6;
+        private int lastLonE6;
+
+        void addVertex(int latE6, int lonE6) {
+            if (coordinates.size() > 0 && latE6 == lastLatE6 && lonE6 == lastLonE6) {
+                return;
+            }
+            coordinates.addE6(latE6, lonE6);
+            lastLatE6 = latE6;
+            lastLonE6 = lonE6;
+        }
+    }
+
+    private RouteBuilder readRoute(JsonReader reader, boolean legGeometry) throws IOException {
+        RouteBuilder route = new RouteBuilder();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "distance" -> route.distance = reader.nextDouble();
+                case "duration" -> route.duration = reader.nextDouble();
+                case "geometry" -> readGeometry(reader, route.coordinates::addE6);
+                case "legs" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        route.legs.add(readLeg(reader, legGeometry));
+                    }
+                    reader.endArray();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return route;
+    }
+
+    private void readGeometry(JsonReader reader, Polyline.E6Consumer vertices) throws IOException {
+        if (reader.peek() == JsonToken.STRING) {
+            Polyline.decode(reader.nextString(), polylinePrecision, vertices);
+            return;
+        }
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"coordinates".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginArray();
+                double lng = reader.nextDouble();
+                double lat = reader.nextDouble();
+                while (reader.hasNext()) {
+                    reader.skipValue(); // elevation, if any
+                }
+                reader.endArray();
+                vertices.accept((int) Math.round(lat * 1e6), (int) Math.round(lng * 1e6));
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    private LegBuilder readLeg(JsonReader reader, boolean legGeometry) throws IOException {
+        LegBuilder leg = new LegBuilder();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "distance" -> leg.distance = reader.nextDouble();
+                case "duration" -> leg.duration = reader.nextDouble();
+                case "steps" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readStep(reader, leg, legGeometry);
+                    }
+                    reader.endArray();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return leg;
+    }
+
+    private void readStep(JsonReader reader, LegBuilder leg, boolean legGeometry) throws IOException {
+        String name = "";
+        String rotaryName = "";
+        double distance = 0.0;
+        String type = null;
+        String modifier = "";
+        Integer exit = null;
+        boolean hasManeuver = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name" -> name = nextStringOrEmpty(reader);
+                case "rotary_name" -> rotaryName = nextStringOrEmpty(reader);
+                case "distance" -> distance = reader.nextDouble();
+                case "geometry" -> {
+                    if (legGeometry) {
+                        readGeometry(reader, leg::addVertex);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                case "maneuver" -> {
+                    hasManeuver = true;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "type" -> type = nextStringOrEmpty(reader);
+                            case "modifier" -> modifier = nextStringOrEmpty(reader);
+                            case "exit" -> {
+                                if (reader.peek() == JsonToken.NULL) {
+                                    reader.nextNull();
+                                } else {
+                                    exit = reader.nextInt();
+                                }
+                            }
+                            default -> reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!hasManeuver) {
+            return;
+        }
+        String instruction = instructionFormatter.generateInstruction(type, modifier, exit, name, rotaryName);
+        if (!instruction.isEmpty()) {
+            leg.instructions.add(describeStep(instruction, distance));
+        }
+    }
+
+    private static String nextStringOrEmpty(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return "";
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Parses an OSRM route response by first building the full JSON tree.
+     * Produces the same result as {@link #parse(Reader, List)}.
+     */
+    public Route parseTree(Reader jsonResponse, List<Place> waypoints) {
+        JsonObject responseObject = JsonParser.parseReader(jsonResponse).getAsJsonObject();
+
+        String code = responseObject.has("code") ? responseObject.get("code").getAsString() : "";
+        if (!"Ok".equalsIgnoreCase(code)) {
+            String message = responseObject.has("message") ? responseObject.get("message").getAsString()
+                    : "Unknown error";
+            log.error("OSRM API error: {}", message);
+            return null;
+        }
+
+        if (!responseObject.has("routes") || !responseObject.get("routes").isJsonArray()
+                || responseObject.getAsJsonArray("routes").isEmpty()) {
+            log.error("OSRM response contains no routes");
+            return null;
+        }
+
+        JsonObject routeObject = responseObject.getAsJsonArray("routes").get(0).getAsJsonObject();
+
+        // Parse distance (meters to km) and duration (seconds to minutes)
+        double distanceInKm = routeObject.get("distance").getAsDouble() / 1000.0;
+        double durationInMinutes = routeObject.get("duration").getAsDouble() / 60.0;
+
+        // Parse coordinates
+        CoordinateSequence pathCoordinates = parseCoordinates(routeObject);
+
+        // Parse turn-by-turn instructions
+        String instructions = parseInstructions(routeObject);
+
+        return new Route(waypoints, pathCoordinates, distanceInKm * 1000, durationInMinutes * 60, instructions);
+    }
+
+    /**
+     * Parses route coordinates from OSRM response.
+     */
+    private CoordinateSequence parseCoordinates(JsonObject routeObject) {
+        if (routeObject.has("geometry") && routeObject.get("geometry").isJsonPrimitive()) {
+            CoordinateSequence.Builder coordinates = new CoordinateSequence.Builder();
+            Polyline.decode(routeObject.get("geometry").getAsString(), polylinePrecision, coordinates::addE6);
+            return coordinates.build();
+        }
+        if (!routeObject.has("geometry") || !routeObject.get("geometry").isJsonObject()) {
+            return CoordinateSequence.empty();
+        }
+
+        JsonObject geometryObject = routeObject.getAsJsonObject("geometry");
+        if (!geometryObject.has("coordinates") || !geometryObject.get("coordinates").isJsonArray()) {
+            return CoordinateSequence.empty();
+        }
+
+        JsonArray coordsArray = geometryObject.getAsJsonArray("coordinates");
+        CoordinateSequence.Builder coordinates = new CoordinateSequence.Builder(coordsArray.size());
+        for (int i = 0; i < coordsArray.size(); i++) {
+            JsonArray pointArray = coordsArray.get(i).getAsJsonArray();
+            if (pointArray.size() >= 2) {
+                double lng = pointArray.get(0).getAsDouble();
+                double lat = pointArray.get(1).getAsDouble();
+                coordinates.add(lat, lng);
+            }
+        }
+
+        return coordinates.build();
+    }
+
+    /**
+     * Parses turn-by-turn instructions from OSRM response.
+     */
+    private String parseInstructions(JsonObject routeObject) {
+        List<String> instructions = new ArrayList<>();
+
+        if (!routeObject.has("legs") || !routeObject.get("legs").isJsonArray()) {
+            return "";
+        }
+
+        JsonArray legsArray = routeObject.getAsJsonArray("legs");
+        int stepGlobalIndex = 0;
+
+        for (int legIndex = 0; legIndex < legsArray.size(); legIndex++) {
+            JsonObject legObj = legsArray.get(legIndex).getAsJsonObject();
+
+            if (!legObj.has("steps") || !legObj.get("steps").isJsonArray()) {
+                continue;
+            }
+
+            JsonArray stepsArray = legObj.getAsJsonArray("steps");
+            for (int stepIndex = 0; stepIndex < stepsArray.size(); stepIndex++) {
+                JsonObject stepObj = stepsArray.get(stepIndex).getAsJsonObject();
+
+                if (!stepObj.has("maneuver") || !stepObj.get("maneuver").isJsonObject()) {
+                    continue;
+                }
+
+                JsonObject maneuverObj = stepObj.getAsJsonObject("maneuver");
+                String stepName = stepObj.has("name") ? stepObj.get("name").getAsString() : "";
+                String rotaryName = stepObj.has("rotary_name") ? stepObj.get("rotary_name").getAsString() : "";
+                double stepDistance = stepObj.has("distance") ? stepObj.get("distance").getAsDouble() : 0.0;
+
+                String instruction = instructionFormatter.generateInstruction(maneuverObj, stepName, rotaryName);
+
+                if (!instruction.isEmpty()) {
+                    String formattedInstruction = formatInstructionWithDistance(stepGlobalIndex + 1, instruction,
+                            stepDistance);
+                    instructions.add(formattedInstruction);
+                    stepGlobalIndex++;
+                }
+            }
+        }
+
+        return String.join("\n", instructions);
+    }
+
+    /**
+     * Formats instruction with step number and distance.
+     */
+    private String formatInstructionWithDistance(int stepNumber, String instruction, double distanceInMeters) {
+        return numberInstruction(stepNumber, describeStep(instruction, distanceInMeters));
+    }
+
+    /**
+     * Formats instruction with distance.
+     */
+    static String describeStep(String instruction, double distanceInMeters) {
+        String distanceStr;
+        if (distanceInMeters >= 1000) {
+            distanceStr = String.format(Locale.US, "%.1f km", distanceInMeters / 1000);
+        } else {
+            distanceStr = String.format(Locale.US, "%.0f m", distanceInMeters);
+        }
+        return instruction + " (" + distanceStr + ")";
+    }
+}
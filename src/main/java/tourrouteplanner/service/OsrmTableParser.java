@@ -0,0 +1,99 @@
+package tourrouteplanner.service;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Parses OSRM {@code /table} responses ({@code annotations=duration,distance})
+ * straight into a region of row-major matrix arrays.
+ */
+public final class OsrmTableParser {
+
+    private OsrmTableParser() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Parses a table response in one streaming pass. Unreachable pairs
+     * ({@code null} in the response) are stored as {@link Double#NaN}.
+     *
+     * @param body      The response body.
+     * @param durations Row-major duration matrix to fill (s).
+     * @param distances Row-major distance matrix to fill (m).
+     * @param size      Row length of the matrices.
+     * @param rows      Matrix row of each source of the request.
+     * @param columns   Matrix column of each destination of the request.
+     * @return Always null; the matrices are filled in place.
+     * @throws IOException If the body is invalid or OSRM reported an error.
+     */
+    public static Void parse(Reader body, double[] durations, double[] distances, int size, int[] rows,
+            int[] columns) throws IOException {
+        JsonReader reader = new JsonReader(body);
+        String code = "";
+        String message = "Unknown error";
+        boolean hasDurations = false;
+        boolean hasDistances = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "code" -> code = reader.nextString();
+                case "message" -> message = reader.nextString();
+                case "durations" -> {
+                    readTable(reader, durations, size, rows, columns);
+                    hasDurations = true;
+                }
+                case "distances" -> {
+                    readTable(reader, distances, size, rows, columns);
+                    hasDistances = true;
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!"Ok".equalsIgnoreCase(code)) {
+            throw new IOException("OSRM table error: " + message);
+        }
+        if (!hasDurations || !hasDistances) {
+            throw new IOException("OSRM table response lacks durations or distances");
+        }
+        return null;
+    }
+
+    private static void readTable(JsonReader reader, double[] target, int size, int[] rows, int[] columns)
+            throws IOException {
+        reader.beginArray();
+        int r = 0;
+        for (; reader.hasNext(); r++) {
+            if (r >= rows.length) {
+                throw new IOException("OSRM table has more rows than sources");
+            }
+            int offset = rows[r] * size;
+            reader.beginArray();
+            int c = 0;
+            for (; reader.hasNext(); c++) {
+                if (c >= columns.length) {
+                    throw new IOException("OSRM table has more columns than destinations");
+                }
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    target[offset + columns[c]] = Double.NaN;
+                } else {
+                    target[offset + columns[c]] = reader.nextDouble();
+                }
+            }
+            reader.endArray();
+            if (c != columns.length) {
+                throw new IOException("OSRM table row has " + c + " columns, expected " + columns.length);
+            }
+        }
+        reader.endArray();
+        if (r != rows.length) {
+            throw new IOException("OSRM table has " + r + " rows, expected " + rows.length);
+        }
+    }
+}
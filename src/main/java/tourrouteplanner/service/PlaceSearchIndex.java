@@ -0,0 +1,218 @@
+package tourrouteplanner.service;
+
+import tourrouteplanner.model.Place;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory, typo-tolerant index over the names of places the application has
+ * seen (search results, route places, loaded routes).
+ * <p>
+ * Names are normalized with {@link GeocodingService#normalizeString(String)}
+ * (accent- and case-insensitive) and split into word trigrams, padded like
+ * PostgreSQL's pg_trgm ("kiem" gives "  k", " ki", "kie", "iem", "em ").
+ * Each trigram has a sorted posting list of entry IDs. A query only scans the
+ * rarest posting lists needed to reach the minimum overlap (prefix
+ * filtering); candidates found there are verified against the remaining lists
+ * by binary search, so lookups stay fast as the index grows.
+ */
+public class PlaceSearchIndex {
+
+    /** Characters of a normalized name: space, a-z and 0-9. */
+    private static final int ALPHABET_SIZE = 37;
+    /** Minimum share of query trigrams a name must contain to match. */
+    private static final double MIN_QUERY_COVERAGE = 0.5;
+
+    private final List<Place> places = new ArrayList<>();
+    private int[] trigramCounts = new int[64];
+    private final Map<String, Integer> idsByKey = new HashMap<>();
+    private final int[][] postings = new int[ALPHABET_SIZE * ALPHABET_SIZE * ALPHABET_SIZE][];
+    private final int[] postingSizes = new int[postings.length];
+    /** Per-entry overlap counters reused across queries; only touched slots are reset. */
+    private int[] overlapCounts = new int[64];
+    private int[] touchedIds = new int[64];
+
+    /**
+     * Adds a place to the index. Places already indexed (same place ID, or same
+     * name and coordinates when there is no ID) are ignored.
+     */
+    public synchronized void add(Place place) {
+        if (place == null || place.getName() == null) {
+            return;
+        }
+        String key = keyOf(place);
+        if (idsByKey.containsKey(key)) {
+            return;
+        }
+        int[] trigrams = trigramsOf(place.getName());
+        if (trigrams.length == 0) {
+            return;
+        }
+        int id = places.size();
+        places.add(place);
+        if (id == trigramCounts.length) {
+            trigramCounts = Arrays.copyOf(trigramCounts, id * 2);
+        }
+        trigramCounts[id] = trigrams.length;
+        idsByKey.put(key, id);
+        for (int trigram : trigrams) {
+            int[] posting = postings[trigram];
+            int size = postingSizes[trigram];
+            if (posting == null) {
+                posting = new int[4];
+            } else if (size == posting.length) {
+                posting = Arrays.copyOf(posting, size * 2);
+            }
+            posting[size] = id; // IDs only grow, so posting lists stay sorted
+            postings[trigram] = posting;
+            postingSizes[trigram] = size + 1;
+        }
+    }
+
+    /**
+     * Adds all places to the index.
+     */
+    public synchronized void addAll(Collection<Place> newPlaces) {
+        for (Place place : newPlaces) {
+            add(place);
+        }
+    }
+
+    /**
+     * Finds indexed places whose name is similar to the query.
+     * Results are ranked by the share of query trigrams found in the name,
+     * blended with the Dice coefficient (so shorter, closer names win), and then
+     * by place importance.
+     *
+     * @param query The raw query, with or without diacritics.
+     * @param limit Maximum number of results.
+     * @return Matching places, best first.
+     */
+    public synchronized List<Place> search(String query, int limit) {
+        int[] queryTrigrams = trigramsOf(query);
+        int queryCount = queryTrigrams.length;
+        if (queryCount == 0 || limit <= 0 || places.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // Rarest trigrams first; a match must appear in one of the first
+        // (queryCount - minOverlap + 1) lists, so only those are scanned
+        Integer[] order = new Integer[queryCount];
+        for (int i = 0; i < queryCount; i++) {
+            order[i] = queryTrigrams[i];
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(postingSizes[a], postingSizes[b]));
+        int minOverlap = Math.max(1, (int) Math.ceil(MIN_QUERY_COVERAGE * queryCount));
+        int scannedLists = queryCount - minOverlap + 1;
+
+        if (overlapCounts.length < places.size()) {
+            overlapCounts = new int[Math.max(places.size(), overlapCounts.length * 2)];
+        }
+        int touchedCount = 0;
+        for (int i = 0; i < scannedLists; i++) {
+            int trigram = order[i];
+            int[] posting = postings[trigram];
+            for (int j = 0; j < postingSizes[trigram]; j++) {
+                int id = posting[j];
+                if (overlapCounts[id]++ == 0) {
+                    if (touchedCount == touchedIds.length) {
+                        touchedIds = Arrays.copyOf(touchedIds, touchedCount * 2);
+                    }
+                    touchedIds[touchedCount++] = id;
+                }
+            }
+        }
+
+        List<int[]> matches = new ArrayList<>(); // {id, overlap}
+        for (int t = 0; t < touchedCount; t++) {
+            int id = touchedIds[t];
+            int overlap = overlapCounts[id];
+            overlapCounts[id] = 0;
+            for (int i = scannedLists; i < queryCount; i++) {
+                int trigram = order[i];
+                if (postings[trigram] != null
+                        && Arrays.binarySearch(postings[trigram], 0, postingSizes[trigram], id) >= 0) {
+                    overlap++;
+                }
+            }
+            if (overlap >= minOverlap) {
+                matches.add(new int[] { id, overlap });
+            }
+        }
+
+        matches.sort((a, b) -> {
+            int byScore = Double.compare(score(b[0], b[1], queryCount), score(a[0], a[1], queryCount));
+            if (byScore != 0) {
+                return byScore;
+            }
+            return Double.compare(places.get(b[0]).getImportance(), places.get(a[0]).getImportance());
+        });
+        List<Place> results = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            results.add(places.get(matches.get(i)[0]));
+        }
+        return results;
+    }
+
+    /** Gets the number of indexed places. */
+    public synchronized int size() {
+        return places.size();
+    }
+
+    private double score(int id, int overlap, int queryCount) {
+        double coverage = (double) overlap / queryCount;
+        double dice = 2.0 * overlap / (queryCount + trigramCounts[id]);
+        return 0.6 * coverage + 0.4 * dice;
+    }
+
+    private static String keyOf(Place place) {
+        if (place.getPlaceId() != null) {
+            return place.getPlaceId();
+        }
+        return String.format(Locale.US, "%s|%.6f|%.6f", place.getName(), place.getLatitude(), place.getLongitude());
+    }
+
+    /**
+     * Returns the distinct, sorted trigram codes of a text.
+     */
+    static int[] trigramsOf(String text) {
+        String normalized = GeocodingService.normalizeString(text);
+        if (normalized.isEmpty()) {
+            return new int[0];
+        }
+        int[] codes = new int[normalized.length() * 3 + 3];
+        int count = 0;
+        for (String word : normalized.split(" ")) {
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                codes[count++] = (codeOf(padded.charAt(i)) * ALPHABET_SIZE + codeOf(padded.charAt(i + 1)))
+                        * ALPHABET_SIZE + codeOf(padded.charAt(i + 2));
+            }
+        }
+        int[] sorted = Arrays.copyOf(codes, count);
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, unique);
+    }
+
+    private static int codeOf(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 1;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 27;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,70 @@
+package tourrouteplanner.service;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Token-bucket rate limiter for requests to one backend.
+ * Tokens are added continuously at the configured rate, up to the burst size;
+ * each request takes one token and waits if none is available. Waiting
+ * callers are served in arrival order because each reserves its token before
+ * sleeping.
+ */
+public class RateLimiter {
+
+    private final double permitsPerSecond;
+    private final double burst;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Creates a rate limiter.
+     *
+     * @param permitsPerSecond Sustained request rate; zero or negative disables
+     *                         limiting.
+     * @param burst            Maximum number of requests allowed back to back
+     *                         after an idle period (at least 1).
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes one token, waiting until it is available.
+     *
+     * @throws InterruptedIOException If the calling thread is interrupted while
+     *                                waiting; the reserved token is returned.
+     */
+    public void acquire() throws InterruptedIOException {
+        if (permitsPerSecond <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) / 1e9 * permitsPerSecond);
+            lastRefillNanos = now;
+            tokens -= 1;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens / permitsPerSecond * 1e9);
+        }
+        if (waitNanos == 0) {
+            return;
+        }
+        try {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                tokens += 1;
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for rate limiter");
+        }
+    }
+
+    /** Gets the sustained request rate in requests per second. */
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+}
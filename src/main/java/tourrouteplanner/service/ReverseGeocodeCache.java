@@ -0,0 +1,178 @@
+package tourrouteplanner.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import tourrouteplanner.model.Place;
+import tourrouteplanner.util.GeoHash;
+import tourrouteplanner.util.TtlLruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spatially quantized cache for reverse geocoding results.
+ * Coordinates are bucketed into geohash cells, so repeated and nearby map
+ * clicks that fall into the same cell are answered locally. The cache is
+ * bounded, evicts least recently used cells, and can be persisted to a JSON
+ * file between sessions.
+ */
+public class ReverseGeocodeCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ReverseGeocodeCache.class);
+
+    private final TtlLruCache<String, Place> cells;
+    private final int precision;
+    private final File file;
+    private final Gson gson = new Gson();
+    private boolean dirty;
+
+    /**
+     * Persisted form of one cache cell.
+     */
+    private static class StoredCell {
+        String cell;
+        long expiresAt;
+        Place place;
+
+        StoredCell(String cell, long expiresAt, Place place) {
+            this.cell = cell;
+            this.expiresAt = expiresAt;
+            this.place = place;
+        }
+    }
+
+    /**
+     * Creates a reverse geocoding cache and loads previously persisted cells.
+     *
+     * @param precision  Geohash precision (number of characters) of a cell.
+     * @param maxEntries Maximum number of cells kept.
+     * @param ttlMillis  Time-to-live of a cell, in milliseconds.
+     * @param file       File used for persistence, or null to keep the cache
+     *                   in memory only.
+     */
+    public ReverseGeocodeCache(int precision, int maxEntries, long ttlMillis, File file) {
+        this.precision = precision;
+        this.cells = new TtlLruCache<>(maxEntries, ttlMillis);
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Returns the cached place for the cell containing the coordinate.
+     *
+     * @return A copy of the cached place, or null if the cell is not cached.
+     */
+    public Place get(double latitude, double longitude) {
+        Place place = cells.get(cellOf(latitude, longitude));
+        return place != null ? copyOf(place) : null;
+    }
+
+    /**
+     * Returns the cached place for the cell containing the coordinate even if
+     * it has expired, as a fallback while Nominatim is unavailable.
+     *
+     * @return A copy of the cached place, or null if the cell is not cached.
+     */
+    public Place getStale(double latitude, double longitude) {
+        Place place = cells.getStale(cellOf(latitude, longitude));
+        return place != null ? copyOf(place) : null;
+    }
+
+    /**
+     * Caches a reverse geocoding result for the cell containing the queried
+     * coordinate.
+     */
+    public void put(double latitude, double longitude, Place place) {
+        if (place == null) {
+            return;
+        }
+        cells.put(cellOf(latitude, longitude), copyOf(place));
+        synchronized (this) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Gets the underlying cache, mainly to read its counters.
+     */
+    public TtlLruCache<String, Place> getCells() {
+        return cells;
+    }
+
+    /**
+     * Writes all live cells to the persistence file if anything changed since
+     * the last save. The file is replaced atomically.
+     */
+    public synchronized void save() {
+        if (file == null || !dirty) {
+            return;
+        }
+        List<StoredCell> stored = new ArrayList<>();
+        cells.forEachLive((cell, place, expiresAt) -> stored.add(new StoredCell(cell, expiresAt, place)));
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            log.warn("Could not create directory for reverse geocoding cache: {}", parent);
+            return;
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+            gson.toJson(stored, writer);
+        } catch (IOException e) {
+            log.error("Error saving reverse geocoding cache to {}", tempFile.getAbsolutePath(), e);
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+            log.info("Reverse geocoding cache saved ({} cells) to {}", stored.size(), file.getAbsolutePath());
+        } catch (IOException e) {
+            log.error("Error replacing reverse geocoding cache file {}", file.getAbsolutePath(), e);
+        }
+    }
+
+    private void load() {
+        if (file == null || !file.exists() || !file.canRead()) {
+            return;
+        }
+        Type listType = new TypeToken<ArrayList<StoredCell>>() {
+        }.getType();
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            List<StoredCell> stored = gson.fromJson(reader, listType);
+            if (stored == null) {
+                return;
+            }
+            for (StoredCell cell : stored) {
+                if (cell != null && cell.cell != null && cell.place != null) {
+                    cells.put(cell.cell, cell.place, cell.expiresAt);
+                }
+            }
+            log.info("Reverse geocoding cache loaded: {} cells from {}", cells.size(), file.getAbsolutePath());
+        } catch (IOException | JsonSyntaxException e) {
+            log.warn("Could not load reverse geocoding cache from {}: {}", file.getAbsolutePath(), e.getMessage());
+        }
+    }
+
+    private String cellOf(double latitude, double longitude) {
+        return GeoHash.encode(latitude, longitude, precision);
+    }
+
+    private static Place copyOf(Place place) {
+        double[] boundingBox = place.getBoundingBox() != null ? place.getBoundingBox().clone() : null;
+        return new Place(place.getPlaceId(), place.getName(), place.getLatitude(), place.getLongitude(),
+                place.getAddress(), boundingBox, place.getGeoJson(), place.getImportance());
+    }
+}
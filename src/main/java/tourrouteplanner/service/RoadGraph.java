@@ -0,0 +1,385 @@
+package tourrouteplanner.service;
+
+import tourrouteplanner.model.CoordinateSequence;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only road network for offline routing, stored in compressed sparse row
+ * (CSR) form in int buffers: arrays when built by {@link Builder}, or
+ * memory-mapped file sections when loaded by {@link RoadGraphFile}.
+ * <p>
+ * Nodes are road junctions and dead ends (coordinates as E6 integers). The
+ * road between two junctions is one edge; its intermediate vertices are kept
+ * as shape points so routes can be drawn, but are not part of the graph.
+ * Each edge may be drivable in one or both directions. The arcs leaving node
+ * {@code v} are {@code getFirstArc(v)} to {@code getFirstArc(v + 1) - 1};
+ * an arc refers to its edge as {@code e} when traversed from source to target
+ * and as {@code ~e} when traversed against it.
+ */
+public final class RoadGraph {
+
+    /** Edge direction flag: drivable from source to target. */
+    public static final int FORWARD = 1;
+    /** Edge direction flag: drivable from target to source. */
+    public static final int BACKWARD = 2;
+
+    private final IntBuffer latitudesE6;
+    private final IntBuffer longitudesE6;
+
+    private final IntBuffer edgeSources;
+    private final IntBuffer edgeTargets;
+    /** Travel time of each edge in tenths of a second. */
+    private final IntBuffer edgeDurations;
+    /** Length of each edge in decimeters. */
+    private final IntBuffer edgeDistances;
+    /** Index of each edge's street name in {@link #names}, or -1. */
+    private final IntBuffer edgeNames;
+    private final IntBuffer edgeDirections;
+    /** Start of each edge's shape points in {@link #shapes}; one extra entry marks the end. */
+    private final IntBuffer shapeStarts;
+    /** Intermediate vertices of all edges, interleaved latitude/longitude E6. */
+    private final IntBuffer shapes;
+    private final String[] names;
+
+    private final IntBuffer firstArcs;
+    private final IntBuffer arcHeads;
+    private final IntBuffer arcEdges;
+
+    RoadGraph(IntBuffer latitudesE6, IntBuffer longitudesE6, IntBuffer edgeSources, IntBuffer edgeTargets,
+            IntBuffer edgeDurations, IntBuffer edgeDistances, IntBuffer edgeNames, IntBuffer edgeDirections,
+            IntBuffer shapeStarts, IntBuffer shapes, IntBuffer firstArcs, IntBuffer arcHeads, IntBuffer arcEdges,
+            String[] names) {
+        this.latitudesE6 = latitudesE6;
+        this.longitudesE6 = longitudesE6;
+        this.edgeSources = edgeSources;
+        this.edgeTargets = edgeTargets;
+        this.edgeDurations = edgeDurations;
+        this.edgeDistances = edgeDistances;
+        this.edgeNames = edgeNames;
+        this.edgeDirections = edgeDirections;
+        this.shapeStarts = shapeStarts;
+        this.shapes = shapes;
+        this.names = names;
+        this.firstArcs = firstArcs;
+        this.arcHeads = arcHeads;
+        this.arcEdges = arcEdges;
+    }
+
+    /** Gets the arrays in constructor order, for {@link RoadGraphFile}. */
+    IntBuffer[] getSections() {
+        return new IntBuffer[] { latitudesE6, longitudesE6, edgeSources, edgeTargets, edgeDurations, edgeDistances,
+                edgeNames, edgeDirections, shapeStarts, shapes, firstArcs, arcHeads, arcEdges };
+    }
+
+    /** Gets the street names, for {@link RoadGraphFile}. */
+    String[] getNames() {
+        return names;
+    }
+
+    /** Gets the number of nodes. */
+    public int getNodeCount() {
+        return latitudesE6.limit();
+    }
+
+    /** Gets the number of edges (roads between junctions). */
+    public int getEdgeCount() {
+        return edgeSources.limit();
+    }
+
+    /** Gets the number of arcs (drivable edge directions). */
+    public int getArcCount() {
+        return arcHeads.limit();
+    }
+
+    /** Gets the latitude of a node in millionths of a degree. */
+    public int getLatitudeE6(int node) {
+        return latitudesE6.get(node);
+    }
+
+    /** Gets the longitude of a node in millionths of a degree. */
+    public int getLongitudeE6(int node) {
+        return longitudesE6.get(node);
+    }
+
+    /** Gets the first arc leaving a node; {@code getFirstArc(node + 1)} ends the range. */
+    public int getFirstArc(int node) {
+        return firstArcs.get(node);
+    }
+
+    /** Gets the node an arc leads to. */
+    public int getArcHead(int arc) {
+        return arcHeads.get(arc);
+    }
+
+    /** Gets the edge of an arc: {@code e} along the edge, {@code ~e} against it. */
+    public int getArcEdge(int arc) {
+        return arcEdges.get(arc);
+    }
+
+    /** Gets the source node of an edge. */
+    public int getEdgeSource(int edge) {
+        return edgeSources.get(edge);
+    }
+
+    /** Gets the target node of an edge. */
+    public int getEdgeTarget(int edge) {
+        return edgeTargets.get(edge);
+    }
+
+    /** Gets the travel time of an edge in tenths of a second. */
+    public int getEdgeDuration(int edge) {
+        return edgeDurations.get(edge);
+    }
+
+    /** Gets the length of an edge in decimeters. */
+    public int getEdgeDistance(int edge) {
+        return edgeDistances.get(edge);
+    }
+
+    /** Gets the street name of an edge, or an empty string. */
+    public String getEdgeName(int edge) {
+        return edgeNames.get(edge) >= 0 ? names[edgeNames.get(edge)] : "";
+    }
+
+    /** Gets the street name index of an edge, or -1; equal indices mean equal names. */
+    public int getEdgeNameIndex(int edge) {
+        return edgeNames.get(edge);
+    }
+
+    /** Gets the direction flags ({@link #FORWARD}, {@link #BACKWARD}) of an edge. */
+    public int getEdgeDirections(int edge) {
+        return edgeDirections.get(edge);
+    }
+
+    /** Gets the number of points of an edge: its source, shape points and target. */
+    public int getEdgePointCount(int edge) {
+        return (shapeStarts.get(edge + 1) - shapeStarts.get(edge)) / 2 + 2;
+    }
+
+    /** Gets the latitude of a point of an edge, numbered from its source (0) to its target. */
+    public int getEdgePointLatitudeE6(int edge, int point) {
+        if (point == 0) {
+            return latitudesE6.get(edgeSources.get(edge));
+        }
+        int shape = shapeStarts.get(edge) + 2 * (point - 1);
+        return shape < shapeStarts.get(edge + 1) ? shapes.get(shape) : latitudesE6.get(edgeTargets.get(edge));
+    }
+
+    /** Gets the longitude of a point of an edge, numbered from its source (0) to its target. */
+    public int getEdgePointLongitudeE6(int edge, int point) {
+        if (point == 0) {
+            return longitudesE6.get(edgeSources.get(edge));
+        }
+        int shape = shapeStarts.get(edge) + 2 * (point - 1);
+        return shape < shapeStarts.get(edge + 1) ? shapes.get(shape + 1) : longitudesE6.get(edgeTargets.get(edge));
+    }
+
+    /**
+     * Appends the path of an edge, in travel direction, without its first node:
+     * the shape points followed by the node it leads to.
+     *
+     * @param arcEdge The edge as stored on an arc ({@code e} or {@code ~e}).
+     * @param path    Receives the vertices.
+     */
+    public void appendEdgePath(int arcEdge, CoordinateSequence.Builder path) {
+        boolean reversed = arcEdge < 0;
+        int edge = reversed ? ~arcEdge : arcEdge;
+        int start = shapeStarts.get(edge);
+        int end = shapeStarts.get(edge + 1);
+        if (reversed) {
+            for (int i = end - 2; i >= start; i -= 2) {
+                path.addE6(shapes.get(i), shapes.get(i + 1));
+            }
+            path.addE6(latitudesE6.get(edgeSources.get(edge)), longitudesE6.get(edgeSources.get(edge)));
+        } else {
+            for (int i = start; i < end; i += 2) {
+                path.addE6(shapes.get(i), shapes.get(i + 1));
+            }
+            path.addE6(latitudesE6.get(edgeTargets.get(edge)), longitudesE6.get(edgeTargets.get(edge)));
+        }
+    }
+
+    /**
+     * Gets the heading in degrees (0 = north, clockwise) at the start or end of
+     * an edge in travel direction.
+     *
+     * @param arcEdge The edge as stored on an arc ({@code e} or {@code ~e}).
+     * @param atEnd   Whether to measure at the end of the edge instead of the
+     *                start.
+     */
+    public double getHeading(int arcEdge, boolean atEnd) {
+        boolean reversed = arcEdge < 0;
+        int edge = reversed ? ~arcEdge : arcEdge;
+        int from = reversed ? edgeTargets.get(edge) : edgeSources.get(edge);
+        int to = reversed ? edgeSources.get(edge) : edgeTargets.get(edge);
+        int start = shapeStarts.get(edge);
+        int end = shapeStarts.get(edge + 1);
+        int latA;
+        int lonA;
+        int latB;
+        int lonB;
+        if (atEnd) {
+            latB = latitudesE6.get(to);
+            lonB = longitudesE6.get(to);
+            int last = reversed ? start : end - 2;
+            latA = start == end ? latitudesE6.get(from) : shapes.get(last);
+            lonA = start == end ? longitudesE6.get(from) : shapes.get(last + 1);
+        } else {
+            latA = latitudesE6.get(from);
+            lonA = longitudesE6.get(from);
+            int first = reversed ? end - 2 : start;
+            latB = start == end ? latitudesE6.get(to) : shapes.get(first);
+            lonB = start == end ? longitudesE6.get(to) : shapes.get(first + 1);
+        }
+        double dx = (lonB - lonA) * Math.cos(Math.toRadians(latA * 1e-6));
+        double dy = latB - latA;
+        double heading = Math.toDegrees(Math.atan2(dx, dy));
+        return heading < 0 ? heading + 360 : heading;
+    }
+
+    /**
+     * Collects nodes and edges and builds a {@link RoadGraph}.
+     */
+    public static final class Builder {
+        private int[] latitudesE6 = new int[1024];
+        private int[] longitudesE6 = new int[1024];
+        private int nodeCount;
+
+        private int[] edgeSources = new int[1024];
+        private int[] edgeTargets = new int[1024];
+        private int[] edgeDurations = new int[1024];
+        private int[] edgeDistances = new int[1024];
+        private int[] edgeNames = new int[1024];
+        private int[] edgeDirections = new int[1024];
+        private int[] shapeStarts = new int[1025];
+        private int edgeCount;
+
+        private int[] shapes = new int[4096];
+        private int shapeSize;
+
+        private final Map<String, Integer> nameIndices = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        /**
+         * Adds a node.
+         *
+         * @return The node index.
+         */
+        public int addNode(int latitudeE6, int longitudeE6) {
+            if (nodeCount == latitudesE6.length) {
+                latitudesE6 = Arrays.copyOf(latitudesE6, nodeCount * 2);
+                longitudesE6 = Arrays.copyOf(longitudesE6, nodeCount * 2);
+            }
+            latitudesE6[nodeCount] = latitudeE6;
+            longitudesE6[nodeCount] = longitudeE6;
+            return nodeCount++;
+        }
+
+        /**
+         * Adds an edge between two existing nodes.
+         *
+         * @param source     Source node.
+         * @param target     Target node.
+         * @param shape      Intermediate vertices from source to target,
+         *                   interleaved latitude/longitude E6.
+         * @param shapeFrom  First used index of {@code shape}.
+         * @param shapeTo    End (exclusive) of the used part of {@code shape}.
+         * @param duration   Travel time in tenths of a second.
+         * @param distance   Length in decimeters.
+         * @param name       Street name, or null.
+         * @param directions Direction flags ({@link RoadGraph#FORWARD},
+         *                   {@link RoadGraph#BACKWARD}).
+         * @return The edge index.
+         */
+        public int addEdge(int source, int target, int[] shape, int shapeFrom, int shapeTo, int duration,
+                int distance, String name, int directions) {
+            if (edgeCount == edgeSources.length) {
+                int capacity = edgeCount * 2;
+                edgeSources = Arrays.copyOf(edgeSources, capacity);
+                edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+                edgeDurations = Arrays.copyOf(edgeDurations, capacity);
+                edgeDistances = Arrays.copyOf(edgeDistances, capacity);
+                edgeNames = Arrays.copyOf(edgeNames, capacity);
+                edgeDirections = Arrays.copyOf(edgeDirections, capacity);
+                shapeStarts = Arrays.copyOf(shapeStarts, capacity + 1);
+            }
+            int length = shapeTo - shapeFrom;
+            if (shapeSize + length > shapes.length) {
+                shapes = Arrays.copyOf(shapes, Math.max(shapes.length * 2, shapeSize + length));
+            }
+            System.arraycopy(shape, shapeFrom, shapes, shapeSize, length);
+            shapeSize += length;
+
+            edgeSources[edgeCount] = source;
+            edgeTargets[edgeCount] = target;
+            edgeDurations[edgeCount] = duration;
+            edgeDistances[edgeCount] = distance;
+            edgeNames[edgeCount] = name == null || name.isEmpty() ? -1
+                    : nameIndices.computeIfAbsent(name, key -> {
+                        names.add(key);
+                        return names.size() - 1;
+                    });
+            edgeDirections[edgeCount] = directions;
+            shapeStarts[edgeCount + 1] = shapeSize;
+            return edgeCount++;
+        }
+
+        /** Gets the number of nodes added so far. */
+        public int getNodeCount() {
+            return nodeCount;
+        }
+
+        /** Gets the number of edges added so far. */
+        public int getEdgeCount() {
+            return edgeCount;
+        }
+
+        /**
+         * Creates the graph, sorting the arcs by the node they leave.
+         */
+        public RoadGraph build() {
+            int[] firstArcs = new int[nodeCount + 1];
+            for (int e = 0; e < edgeCount; e++) {
+                if ((edgeDirections[e] & FORWARD) != 0) {
+                    firstArcs[edgeSources[e] + 1]++;
+                }
+                if ((edgeDirections[e] & BACKWARD) != 0) {
+                    firstArcs[edgeTargets[e] + 1]++;
+                }
+            }
+            for (int v = 0; v < nodeCount; v++) {
+                firstArcs[v + 1] += firstArcs[v];
+            }
+            int[] arcHeads = new int[firstArcs[nodeCount]];
+            int[] arcEdges = new int[arcHeads.length];
+            int[] next = Arrays.copyOf(firstArcs, nodeCount);
+            for (int e = 0; e < edgeCount; e++) {
+                if ((edgeDirections[e] & FORWARD) != 0) {
+                    int arc = next[edgeSources[e]]++;
+                    arcHeads[arc] = edgeTargets[e];
+                    arcEdges[arc] = e;
+                }
+                if ((edgeDirections[e] & BACKWARD) != 0) {
+                    int arc = next[edgeTargets[e]]++;
+                    arcHeads[arc] = edgeSources[e];
+                    arcEdges[arc] = ~e;
+                }
+            }
+            return new RoadGraph(wrap(latitudesE6, nodeCount), wrap(longitudesE6, nodeCount),
+                    wrap(edgeSources, edgeCount), wrap(edgeTargets, edgeCount), wrap(edgeDurations, edgeCount),
+                    wrap(edgeDistances, edgeCount), wrap(edgeNames, edgeCount), wrap(edgeDirections, edgeCount),
+                    wrap(shapeStarts, edgeCount + 1), wrap(shapes, shapeSize), IntBuffer.wrap(firstArcs),
+                    IntBuffer.wrap(arcHeads), IntBuffer.wrap(arcEdges), names.toArray(new String[0]));
+        }
+
+        private static IntBuffer wrap(int[] values, int length) {
+            return IntBuffer.wrap(Arrays.copyOf(values, length));
+        }
+    }
+}
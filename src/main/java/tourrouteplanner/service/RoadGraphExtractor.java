@@ -0,0 +1,374 @@
+package tourrouteplanner.service;
+
+import tourrouteplanner.util.OsmPbfReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Extracts the drivable road network from an OSM PBF extract (e.g. the
+ * {@code vietnam-latest.osm.pbf} used by docker-compose.yml) into a
+ * {@link RoadGraph}.
+ * <p>
+ * Ways are kept if their {@code highway} tag is in {@link #SPEEDS_KMH} and
+ * cars may use them. Speeds come from {@code maxspeed} where it is numeric,
+ * otherwise from the road class, similar to the OSRM car profile. The PBF is
+ * read twice: the first pass collects the road ways, the second resolves the
+ * coordinates of their nodes. Ways are then split at junctions, and road
+ * fragments with fewer than {@link #MIN_COMPONENT_NODES} junctions that are
+ * not connected to the rest of the network are dropped, so places do not snap
+ * onto isolated parking lots or private driveways.
+ */
+public final class RoadGraphExtractor {
+
+    private static final Logger log = LoggerFactory.getLogger(RoadGraphExtractor.class);
+
+    /** Default speed by highway class, in km/h. */
+    private static final Map<String, Integer> SPEEDS_KMH = Map.ofEntries(
+            Map.entry("motorway", 90), Map.entry("motorway_link", 45),
+            Map.entry("trunk", 85), Map.entry("trunk_link", 40),
+            Map.entry("primary", 65), Map.entry("primary_link", 30),
+            Map.entry("secondary", 55), Map.entry("secondary_link", 25),
+            Map.entry("tertiary", 40), Map.entry("tertiary_link", 20),
+            Map.entry("unclassified", 25), Map.entry("residential", 25),
+            Map.entry("living_street", 10), Map.entry("service", 15), Map.entry("road", 20));
+
+    /** Smallest isolated road fragment kept, in junctions. */
+    private static final int MIN_COMPONENT_NODES = 50;
+
+    private static final int NO_COORDINATE = Integer.MIN_VALUE;
+
+    private RoadGraphExtractor() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Reads the road network of a PBF extract.
+     *
+     * @param pbf The {@code .osm.pbf} extract.
+     * @return The road graph.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public static RoadGraph extract(File pbf) throws IOException {
+        long start = System.nanoTime();
+        OsmPbfReader reader = new OsmPbfReader(pbf);
+
+        // Pass 1: road ways
+        Ways ways = new Ways();
+        reader.read(new OsmPbfReader.Handler() {
+            @Override
+            public boolean wantsNodes() {
+                return false;
+            }
+
+            @Override
+            public void way(long id, long[] nodeRefs, Map<String, String> tags) {
+                if (nodeRefs.length < 2) {
+                    return;
+                }
+                int speed = speedOf(tags);
+                int directions = speed > 0 ? directionsOf(tags) : 0;
+                if (directions != 0) {
+                    ways.add(nodeRefs, speed, directions, tags.get("name"));
+                }
+            }
+        });
+
+        // Node IDs become slots into a sorted ID table; slots used by more than
+        // one way, or at the end of a way, are junctions
+        long[] ids = ways.sortedUniqueNodeIds();
+        int[] refSlots = new int[ways.refCount];
+        int[] useCounts = new int[ids.length];
+        for (int i = 0; i < ways.refCount; i++) {
+            refSlots[i] = Arrays.binarySearch(ids, ways.refs[i]);
+            useCounts[refSlots[i]]++;
+        }
+        ways.refs = null;
+        for (int w = 0; w < ways.count; w++) {
+            useCounts[refSlots[ways.starts[w]]]++;
+            useCounts[refSlots[ways.starts[w + 1] - 1]]++;
+        }
+        log.info("Pass 1: {} road ways over {} nodes", ways.count, ids.length);
+
+        // Pass 2: coordinates of road nodes
+        int[] latitudes = new int[ids.length];
+        int[] longitudes = new int[ids.length];
+        Arrays.fill(latitudes, NO_COORDINATE);
+        reader.read(new OsmPbfReader.Handler() {
+            @Override
+            public boolean wantsWays() {
+                return false;
+            }
+
+            @Override
+            public void node(long id, double latitude, double longitude, Map<String, String> tags) {
+                int slot = Arrays.binarySearch(ids, id);
+                if (slot >= 0) {
+                    latitudes[slot] = (int) Math.round(latitude * 1e6);
+                    longitudes[slot] = (int) Math.round(longitude * 1e6);
+                }
+            }
+        });
+
+        RoadGraph graph = split(ways, refSlots, useCounts, latitudes, longitudes);
+        log.info("Road graph: {} junctions, {} roads, {} arcs in {} ms", graph.getNodeCount(), graph.getEdgeCount(),
+                graph.getArcCount(), (System.nanoTime() - start) / 1_000_000);
+        return graph;
+    }
+
+    /**
+     * Splits the ways at junctions into edges and keeps the connected parts of
+     * the network that are large enough.
+     */
+    private static RoadGraph split(Ways ways, int[] refSlots, int[] useCounts, int[] latitudes, int[] longitudes) {
+        int[] junctions = new int[useCounts.length];
+        Arrays.fill(junctions, -1);
+        int junctionCount = 0;
+        for (int slot = 0; slot < useCounts.length; slot++) {
+            if (useCounts[slot] > 1 && latitudes[slot] != NO_COORDINATE) {
+                junctions[slot] = junctionCount++;
+            }
+        }
+
+        // Road pieces between junctions, referring to a run of refSlots
+        Segments segments = new Segments();
+        for (int w = 0; w < ways.count; w++) {
+            int from = -1;
+            for (int i = ways.starts[w]; i < ways.starts[w + 1]; i++) {
+                int slot = refSlots[i];
+                if (latitudes[slot] == NO_COORDINATE) {
+                    from = -1; // Node outside the extract: drop the piece around it
+                } else if (junctions[slot] >= 0) {
+                    if (from >= 0 && i > from) {
+                        segments.add(w, from, i);
+                    }
+                    from = i;
+                }
+            }
+        }
+
+        // Keep large connected parts of the network (union-find over junctions)
+        int[] parents = new int[junctionCount];
+        for (int v = 0; v < junctionCount; v++) {
+            parents[v] = v;
+        }
+        for (int s = 0; s < segments.count; s++) {
+            int a = find(parents, junctions[refSlots[segments.from[s]]]);
+            int b = find(parents, junctions[refSlots[segments.to[s]]]);
+            if (a != b) {
+                parents[a] = b;
+            }
+        }
+        int[] componentSizes = new int[junctionCount];
+        int largest = 0;
+        for (int v = 0; v < junctionCount; v++) {
+            largest = Math.max(largest, ++componentSizes[find(parents, v)]);
+        }
+        int minSize = Math.min(MIN_COMPONENT_NODES, largest);
+
+        RoadGraph.Builder builder = new RoadGraph.Builder();
+        int[] nodes = new int[junctionCount];
+        Arrays.fill(nodes, -1);
+        int[] shape = new int[256];
+        int dropped = 0;
+        for (int s = 0; s < segments.count; s++) {
+            int fromSlot = refSlots[segments.from[s]];
+            int toSlot = refSlots[segments.to[s]];
+            int from = junctions[fromSlot];
+            int to = junctions[toSlot];
+            if (componentSizes[find(parents, from)] < minSize) {
+                dropped++;
+                continue;
+            }
+            if (from == to) {
+                continue; // Loops are never part of a shortest path
+            }
+            int shapeLength = 2 * (segments.to[s] - segments.from[s] - 1);
+            if (shape.length < shapeLength) {
+                shape = new int[shapeLength * 2];
+            }
+            double meters = 0;
+            int previous = fromSlot;
+            for (int i = segments.from[s] + 1, k = 0; i <= segments.to[s]; i++) {
+                int slot = refSlots[i];
+                meters += distanceMeters(latitudes[previous], longitudes[previous], latitudes[slot],
+                        longitudes[slot]);
+                if (i < segments.to[s]) {
+                    shape[k++] = latitudes[slot];
+                    shape[k++] = longitudes[slot];
+                }
+                previous = slot;
+            }
+            if (nodes[from] < 0) {
+                nodes[from] = builder.addNode(latitudes[fromSlot], longitudes[fromSlot]);
+            }
+            if (nodes[to] < 0) {
+                nodes[to] = builder.addNode(latitudes[toSlot], longitudes[toSlot]);
+            }
+            int way = segments.way[s];
+            int duration = (int) Math.max(1, Math.round(meters / (ways.speeds[way] / 3.6) * 10));
+            builder.addEdge(nodes[from], nodes[to], shape, 0, shapeLength, duration, (int) Math.round(meters * 10),
+                    ways.names.get(way), ways.directions[way]);
+        }
+        log.debug("Dropped {} road pieces in isolated fragments", dropped);
+        return builder.build();
+    }
+
+    private static int find(int[] parents, int v) {
+        while (parents[v] != v) {
+            parents[v] = parents[parents[v]];
+            v = parents[v];
+        }
+        return v;
+    }
+
+    /**
+     * Gets the speed for a way in km/h, or 0 if it is not a road for cars.
+     */
+    static int speedOf(Map<String, String> tags) {
+        Integer speed = SPEEDS_KMH.get(tags.getOrDefault("highway", ""));
+        if (speed == null || "yes".equals(tags.get("area"))) {
+            return 0;
+        }
+        String access = firstNonNull(tags.get("motorcar"), tags.get("motor_vehicle"), tags.get("vehicle"),
+                tags.get("access"));
+        if (access != null && (access.equals("no") || access.equals("private"))) {
+            return 0;
+        }
+        String maxspeed = tags.get("maxspeed");
+        if (maxspeed != null) {
+            try {
+                String value = maxspeed.trim();
+                double factor = 1;
+                if (value.endsWith("mph")) {
+                    factor = 1.609;
+                    value = value.substring(0, value.length() - 3).trim();
+                } else if (value.endsWith("km/h")) {
+                    value = value.substring(0, value.length() - 4).trim();
+                }
+                int parsed = (int) Math.round(Integer.parseInt(value) * factor);
+                if (parsed > 0) {
+                    return parsed;
+                }
+            } catch (NumberFormatException e) {
+                // Symbolic values such as "VN:urban" use the road class default
+            }
+        }
+        return speed;
+    }
+
+    /**
+     * Gets the drivable directions of a road way.
+     */
+    static int directionsOf(Map<String, String> tags) {
+        String oneway = tags.getOrDefault("oneway", "");
+        switch (oneway) {
+            case "yes", "true", "1":
+                return RoadGraph.FORWARD;
+            case "-1", "reverse":
+                return RoadGraph.BACKWARD;
+            case "no", "false", "0":
+                return RoadGraph.FORWARD | RoadGraph.BACKWARD;
+            default:
+                break;
+        }
+        String junction = tags.getOrDefault("junction", "");
+        if ("motorway".equals(tags.get("highway")) || junction.equals("roundabout")
+                || junction.equals("circular")) {
+            return RoadGraph.FORWARD;
+        }
+        return RoadGraph.FORWARD | RoadGraph.BACKWARD;
+    }
+
+    private static String firstNonNull(String... values) {
+        for (String value : values) {
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static double distanceMeters(int latitudeA, int longitudeA, int latitudeB, int longitudeB) {
+        double lat1 = Math.toRadians(latitudeA * 1e-6);
+        double lat2 = Math.toRadians(latitudeB * 1e-6);
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians((longitudeB - longitudeA) * 1e-6);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * 6_371_000 * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Road ways from pass 1, with their node IDs concatenated.
+     */
+    private static final class Ways {
+        long[] refs = new long[1 << 16];
+        int refCount;
+        int[] starts = new int[1025];
+        int[] speeds = new int[1024];
+        byte[] directions = new byte[1024];
+        final List<String> names = new ArrayList<>();
+        final Map<String, String> internedNames = new HashMap<>();
+        int count;
+
+        void add(long[] nodeRefs, int speed, int wayDirections, String name) {
+            if (count + 1 == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                speeds = Arrays.copyOf(speeds, starts.length);
+                directions = Arrays.copyOf(directions, starts.length);
+            }
+            if (refCount + nodeRefs.length > refs.length) {
+                refs = Arrays.copyOf(refs, Math.max(refs.length * 2, refCount + nodeRefs.length));
+            }
+            System.arraycopy(nodeRefs, 0, refs, refCount, nodeRefs.length);
+            refCount += nodeRefs.length;
+            speeds[count] = speed;
+            directions[count] = (byte) wayDirections;
+            names.add(name == null ? null : internedNames.computeIfAbsent(name, key -> key));
+            starts[++count] = refCount;
+        }
+
+        long[] sortedUniqueNodeIds() {
+            long[] sorted = Arrays.copyOf(refs, refCount);
+            Arrays.parallelSort(sorted);
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[unique++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, unique);
+        }
+    }
+
+    /**
+     * Road pieces between two junctions: way index and the range of its
+     * references from the first to the last junction (inclusive).
+     */
+    private static final class Segments {
+        int[] way = new int[1024];
+        int[] from = new int[1024];
+        int[] to = new int[1024];
+        int count;
+
+        void add(int wayIndex, int fromRef, int toRef) {
+            if (count == way.length) {
+                way = Arrays.copyOf(way, count * 2);
+                from = Arrays.copyOf(from, count * 2);
+                to = Arrays.copyOf(to, count * 2);
+            }
+            way[count] = wayIndex;
+            from[count] = fromRef;
+            to[count++] = toRef;
+        }
+    }
+}
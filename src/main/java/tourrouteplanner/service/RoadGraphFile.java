@@ -0,0 +1,298 @@
+package tourrouteplanner.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file holding a {@link RoadGraph} together with its
+ * {@link ContractionHierarchy}, so the offline router starts without reading
+ * the OSM extract again.
+ * <p>
+ * All values are little-endian. The header holds the signature, the format
+ * version, the size and modification time of the source extract and the byte
+ * length of every section. The sections follow, each starting at a multiple of
+ * 8 bytes: the graph's int arrays, the hierarchy's int arrays, the start offset
+ * of each street name and finally the UTF-8 street names.
+ * <p>
+ * {@link #read(File, File)} maps each section with {@link FileChannel#map} and
+ * uses it in place instead of parsing it. Loading therefore takes milliseconds
+ * whatever the network size, and app instances using the same file share its
+ * pages through the operating system's page cache.
+ */
+public final class RoadGraphFile {
+
+    /** File signature ("TRRG"). */
+    private static final int MAGIC = 0x54525247;
+    /** Current file format version. */
+    private static final int VERSION = 1;
+
+    private static final int GRAPH_SECTIONS = 13;
+    private static final int HIERARCHY_SECTIONS = 12;
+    /** Graph and hierarchy arrays, name offsets and name bytes. */
+    private static final int SECTIONS = GRAPH_SECTIONS + HIERARCHY_SECTIONS + 2;
+    /** Signature, version, source length and time, section count (padded), section lengths. */
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8 + SECTIONS * 8;
+
+    private final RoadGraph graph;
+    private final ContractionHierarchy hierarchy;
+
+    private RoadGraphFile(RoadGraph graph, ContractionHierarchy hierarchy) {
+        this.graph = graph;
+        this.hierarchy = hierarchy;
+    }
+
+    /**
+     * Maps a road graph file written by {@link #write} if it was built from an
+     * OSM extract as it is now, judged by the extract's size and modification
+     * time. The returned graph and hierarchy read the file's pages directly.
+     * <p>
+     * The header, the section sizes and the street names are checked with
+     * plain reads first; nothing is mapped unless the file is current and
+     * intact, so a file that is going to be rebuilt can be replaced right away.
+     *
+     * @param file   The road graph file.
+     * @param source The OSM extract the file should be built from, or null to
+     *               skip the check.
+     * @return The loaded file, or null if it was built from another version
+     *         of {@code source}.
+     * @throws IOException If the file cannot be read, has an unknown format or
+     *                     is inconsistent.
+     */
+    public static RoadGraphFile read(File file, File source) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a road graph file: " + file.getAbsolutePath());
+            }
+            ByteBuffer header = readSection(channel, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a road graph file: " + file.getAbsolutePath());
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported road graph version " + version + " in " + file.getAbsolutePath());
+            }
+            long sourceLength = header.getLong();
+            long sourceModified = header.getLong();
+            if (source != null && source.canRead()
+                    && (source.length() != sourceLength || source.lastModified() != sourceModified)) {
+                return null;
+            }
+            if (header.getLong() != SECTIONS) {
+                throw new IOException("Corrupt road graph file: " + file.getAbsolutePath());
+            }
+
+            long[] offsets = new long[SECTIONS];
+            int[] lengths = new int[SECTIONS];
+            long offset = HEADER_BYTES;
+            for (int i = 0; i < SECTIONS; i++) {
+                long length = header.getLong();
+                if (length < 0 || length > Integer.MAX_VALUE || offset + length > channel.size()
+                        || (i < SECTIONS - 1 && length % 4 != 0)) {
+                    throw new IOException("Corrupt road graph file: " + file.getAbsolutePath());
+                }
+                offsets[i] = offset;
+                lengths[i] = (int) length;
+                offset += align(length);
+            }
+            checkSizes(lengths, file);
+            IntBuffer nameOffsets = readSection(channel, offsets[SECTIONS - 2], lengths[SECTIONS - 2]).asIntBuffer();
+            ByteBuffer nameBytes = readSection(channel, offsets[SECTIONS - 1], lengths[SECTIONS - 1]);
+            String[] names = readNames(nameOffsets, nameBytes, file);
+
+            IntBuffer[] g = new IntBuffer[GRAPH_SECTIONS];
+            for (int i = 0; i < GRAPH_SECTIONS; i++) {
+                g[i] = mapSection(channel, offsets[i], lengths[i]);
+            }
+            IntBuffer[] h = new IntBuffer[HIERARCHY_SECTIONS];
+            for (int i = 0; i < HIERARCHY_SECTIONS; i++) {
+                h[i] = mapSection(channel, offsets[GRAPH_SECTIONS + i], lengths[GRAPH_SECTIONS + i]);
+            }
+            RoadGraph graph = new RoadGraph(g[0], g[1], g[2], g[3], g[4], g[5], g[6], g[7], g[8], g[9], g[10], g[11],
+                    g[12], names);
+            ContractionHierarchy hierarchy = new ContractionHierarchy(h[0], h[1], h[2], h[3], h[4], h[5], h[6], h[7],
+                    h[8], h[9], h[10], h[11]);
+            return new RoadGraphFile(graph, hierarchy);
+        }
+    }
+
+    /**
+     * Writes a road graph and its hierarchy. The file is replaced atomically.
+     *
+     * @param file      The target file.
+     * @param graph     The road graph.
+     * @param hierarchy The hierarchy built from {@code graph}.
+     * @param source    The OSM extract the graph was built from; its size and
+     *                  modification time are recorded for
+     *                  {@link #read(File, File)}.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(File file, RoadGraph graph, ContractionHierarchy hierarchy, File source)
+            throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        IntBuffer[] graphSections = graph.getSections();
+        IntBuffer[] hierarchySections = hierarchy.getSections();
+        String[] names = graph.getNames();
+        int[] nameOffsets = new int[names.length + 1];
+        byte[][] encodedNames = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            encodedNames[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            nameOffsets[i + 1] = nameOffsets[i] + encodedNames[i].length;
+        }
+
+        IntBuffer[] intSections = new IntBuffer[SECTIONS - 1];
+        System.arraycopy(graphSections, 0, intSections, 0, GRAPH_SECTIONS);
+        System.arraycopy(hierarchySections, 0, intSections, GRAPH_SECTIONS, HIERARCHY_SECTIONS);
+        intSections[SECTIONS - 2] = IntBuffer.wrap(nameOffsets);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(source.length()).putLong(source.lastModified())
+                .putLong(SECTIONS);
+        for (IntBuffer section : intSections) {
+            header.putLong(section.limit() * 4L);
+        }
+        header.putLong(nameOffsets[names.length]);
+        header.flip();
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, header);
+            ByteBuffer chunk = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            for (IntBuffer section : intSections) {
+                for (int i = 0; i < section.limit(); i++) {
+                    if (chunk.remaining() < 4) {
+                        flush(channel, chunk);
+                    }
+                    chunk.putInt(section.get(i));
+                }
+                flush(channel, chunk);
+                pad(channel);
+            }
+            for (byte[] name : encodedNames) {
+                if (chunk.remaining() < name.length) {
+                    flush(channel, chunk);
+                }
+                if (name.length > chunk.capacity()) {
+                    writeFully(channel, ByteBuffer.wrap(name));
+                } else {
+                    chunk.put(name);
+                }
+            }
+            flush(channel, chunk);
+            pad(channel);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Gets the road graph. */
+    public RoadGraph getGraph() {
+        return graph;
+    }
+
+    /** Gets the contraction hierarchy of the road graph. */
+    public ContractionHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    private static String[] readNames(IntBuffer offsets, ByteBuffer bytes, File file) throws IOException {
+        int count = offsets.limit() - 1;
+        if (count < 0 || offsets.get(count) != bytes.limit()) {
+            throw new IOException("Corrupt road graph file: " + file.getAbsolutePath());
+        }
+        byte[] all = new byte[bytes.limit()];
+        bytes.get(0, all);
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            int start = offsets.get(i);
+            int end = offsets.get(i + 1);
+            if (start < 0 || end < start || end > all.length) {
+                throw new IOException("Corrupt road graph file: " + file.getAbsolutePath());
+            }
+            names[i] = new String(all, start, end - start, StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    /**
+     * Checks that the section sizes in the header agree with each other, so a
+     * damaged file fails here rather than with an index error during a query.
+     *
+     * @param lengths Byte length of each section.
+     */
+    private static void checkSizes(int[] lengths, File file) throws IOException {
+        int[] graph = new int[GRAPH_SECTIONS];
+        int[] hierarchy = new int[HIERARCHY_SECTIONS];
+        for (int i = 0; i < GRAPH_SECTIONS; i++) {
+            graph[i] = lengths[i] / 4;
+        }
+        for (int i = 0; i < HIERARCHY_SECTIONS; i++) {
+            hierarchy[i] = lengths[GRAPH_SECTIONS + i] / 4;
+        }
+        int nodes = graph[0];
+        int edges = graph[2];
+        boolean consistent = graph[1] == nodes
+                && graph[3] == edges && graph[4] == edges && graph[5] == edges
+                && graph[6] == edges && graph[7] == edges && graph[8] == edges + 1
+                && graph[10] == nodes + 1 && graph[11] == graph[12]
+                && hierarchy[0] == nodes;
+        int hierarchyEdges = hierarchy[1];
+        for (int i = 2; i <= 5; i++) {
+            consistent &= hierarchy[i] == hierarchyEdges;
+        }
+        consistent &= hierarchy[6] == nodes + 1 && hierarchy[7] == hierarchy[8]
+                && hierarchy[9] == nodes + 1 && hierarchy[10] == hierarchy[11];
+        if (!consistent) {
+            throw new IOException("Corrupt road graph file: " + file.getAbsolutePath());
+        }
+    }
+
+    /** Reads a section into memory. */
+    private static ByteBuffer readSection(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of road graph file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static IntBuffer mapSection(FileChannel channel, long offset, int length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN)
+                .asIntBuffer();
+    }
+
+    private static long align(long length) {
+        return (length + 7) & ~7L;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        writeFully(channel, chunk);
+        chunk.clear();
+    }
+
+    /** Pads the file with zeros to the next multiple of 8 bytes. */
+    private static void pad(FileChannel channel) throws IOException {
+        int padding = (int) (align(channel.position()) - channel.position());
+        writeFully(channel, ByteBuffer.allocate(padding));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -1,24 +1,25 @@
 package tourrouteplanner.service;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import tourrouteplanner.model.CoordinateSequence;
 import tourrouteplanner.model.Place;
 import tourrouteplanner.model.Route;
-import tourrouteplanner.model.Route.Coordinate;
+import tourrouteplanner.model.RouteLeg;
+import tourrouteplanner.model.TravelMatrix;
+import tourrouteplanner.util.Constants;
 import tourrouteplanner.util.InstructionFormatter;
+import tourrouteplanner.util.TtlLruCache;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.nio.charset.StandardCharsets;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -32,22 +33,52 @@ public class RoutingService implements IRoutingService {
 
     private static final Logger log = LoggerFactory.getLogger(RoutingService.class);
     private static final String DEFAULT_OSRM_URL = "http://router.project-osrm.org";
-    private static final String USER_AGENT = "TourRoutePlanner/1.0 (https://github.com/DoCaoThang568/TourRoutePlanner)";
-
+    /** OSRM routing profile used for all requests. */
+    private static final String PROFILE = "driving";
+    private static final String GEOMETRY_POLYLINE6 = "polyline6";
+    private static final String GEOMETRY_GEOJSON = "geojson";
+
+    private final HttpTransport transport;
+    /** Route legs by (from place, to place, profile); expired entries remain as fallback while OSRM is down. */
+    private final TtlLruCache<String, RouteLeg> legCache = new TtlLruCache<>(
+            Constants.ROUTE_LEG_CACHE_MAX_ENTRIES, Constants.ROUTE_CACHE_TTL_MS);
+    /** Fetches /table tiles in parallel; daemon threads, so no shutdown is needed. */
+    private final ExecutorService matrixExecutor = Executors.newFixedThreadPool(Constants.MATRIX_PARALLEL_REQUESTS,
+            runnable -> {
+                Thread thread = new Thread(runnable, "osrm-table");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private BackendClient osrm;
     private String osrmServerUrl;
+    /** The OSRM "geometries" parameter: "polyline6" or "geojson". */
+    private String geometryFormat = GEOMETRY_POLYLINE6;
     private Route lastRoute;
-    private final InstructionFormatter instructionFormatter;
+    private final OsrmRouteParser routeParser;
 
     /**
-     * Creates a RoutingService and loads configuration.
+     * Creates a RoutingService using the shared HTTP transport and loads
+     * configuration.
      */
     public RoutingService() {
-        this.instructionFormatter = new InstructionFormatter();
+        this(HttpTransport.shared());
+    }
+
+    /**
+     * Creates a RoutingService on top of the given HTTP transport and loads
+     * configuration.
+     *
+     * @param transport The HTTP transport used for OSRM requests.
+     */
+    public RoutingService(HttpTransport transport) {
+        this.transport = transport;
+        this.routeParser = new OsrmRouteParser(new InstructionFormatter());
         loadConfig();
     }
 
     /**
-     * Loads server URL configuration from config.properties.
+     * Loads server URL, geometry format, rate limit and circuit breaker
+     * configuration from config.properties.
      */
     private void loadConfig() {
         Properties prop = new Properties();
@@ -55,16 +86,31 @@ public class RoutingService implements IRoutingService {
             if (input == null) {
                 log.warn("config.properties not found, using default OSRM URL: {}", DEFAULT_OSRM_URL);
                 osrmServerUrl = DEFAULT_OSRM_URL;
-                return;
+            } else {
+                prop.load(input);
+                osrmServerUrl = prop.getProperty("osrm.server.url", DEFAULT_OSRM_URL);
             }
-            prop.load(input);
-            osrmServerUrl = prop.getProperty("osrm.server.url", DEFAULT_OSRM_URL);
         } catch (IOException ex) {
             log.error("Error reading config.properties, using default OSRM URL", ex);
             osrmServerUrl = DEFAULT_OSRM_URL;
         }
+        String format = prop.getProperty(Constants.CONFIG_OSRM_GEOMETRY_FORMAT, GEOMETRY_POLYLINE6).trim();
+        if (GEOMETRY_GEOJSON.equalsIgnoreCase(format)) {
+            geometryFormat = GEOMETRY_GEOJSON;
+        } else if (!GEOMETRY_POLYLINE6.equalsIgnoreCase(format)) {
+            log.warn("Unknown {} '{}', using {}", Constants.CONFIG_OSRM_GEOMETRY_FORMAT, format, GEOMETRY_POLYLINE6);
+        }
+        osrm = BackendClient.fromConfig("OSRM", "osrm", transport, prop);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Routes are assembled from legs cached by (from place, to place, profile).
+     * Only runs of consecutive legs missing from the cache are requested from
+     * OSRM, one request per run, so reordering, adding or removing a stop
+     * recomputes just the legs around it.
+     */
     @Override
     public Route getRoute(List<Place> waypoints) throws IOException {
         if (waypoints == null || waypoints.size() < 2) {
@@ -74,181 +120,223 @@ public class RoutingService implements IRoutingService {
             throw new IllegalStateException("OSRM server URL is not configured.");
         }
 
-        String coordinatesParam = waypoints.stream()
-                .map(p -> String.format(Locale.US, "%f,%f", p.getLongitude(), p.getLatitude()))
-                .collect(Collectors.joining(";"));
+        int legCount = waypoints.size() - 1;
+        String[] legKeys = new String[legCount];
+        RouteLeg[] legs = new RouteLeg[legCount];
+        for (int i = 0; i < legCount; i++) {
+            legKeys[i] = legKey(waypoints.get(i), waypoints.get(i + 1));
+            legs[i] = legCache.get(legKeys[i]);
+        }
 
-        String apiUrl = String.format("%s/route/v1/driving/%s?overview=full&geometries=geojson&steps=true",
-                osrmServerUrl, coordinatesParam);
-
-        HttpURLConnection connection = (HttpURLConnection) URI.create(apiUrl).toURL().openConnection();
-        connection.setRequestMethod("GET");
-        connection.setRequestProperty("Accept", "application/json");
-        connection.setRequestProperty("User-Agent", USER_AGENT);
-
-        int responseCode = connection.getResponseCode();
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
+        int fetched = 0;
+        for (int start = 0; start < legCount; start++) {
+            if (legs[start] != null) {
+                continue;
             }
-            reader.close();
-
-            Route route = parseRouteResponse(response.toString(), waypoints);
-            this.lastRoute = route;
-            return route;
-        } else {
-            handleErrorResponse(connection, responseCode);
-            return null;
+            int end = start;
+            while (end + 1 < legCount && legs[end + 1] == null) {
+                end++;
+            }
+            try {
+                List<RouteLeg> run = fetchLegs(waypoints.subList(start, end + 2));
+                if (run == null || run.size() != end - start + 1) {
+                    return remember(null);
+                }
+                for (int i = start; i <= end; i++) {
+                    legs[i] = run.get(i - start);
+                    legCache.put(legKeys[i], legs[i]);
+                }
+                fetched += run.size();
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                for (int i = start; i <= end; i++) {
+                    legs[i] = legCache.getStale(legKeys[i]);
+                    if (legs[i] == null) {
+                        throw e;
+                    }
+                }
+                log.warn("OSRM unavailable ({}), serving {} stale legs", e.getMessage(), end - start + 1);
+            }
+            start = end;
         }
+        log.debug("Route over {} legs: {} fetched, {} from cache", legCount, fetched, legCount - fetched);
+        return remember(assembleRoute(waypoints, legs));
     }
 
-    @Override
-    public Route getLastRoute() {
-        return lastRoute;
+    /**
+     * Requests the legs between consecutive waypoints in one OSRM call. The
+     * overview geometry is not requested; each leg's path is built from its
+     * step geometries.
+     */
+    private List<RouteLeg> fetchLegs(List<Place> waypoints) throws IOException {
+        String coordinatesParam = waypoints.stream()
+                .map(p -> String.format(Locale.US, "%f,%f", p.getLongitude(), p.getLatitude()))
+                .collect(Collectors.joining(";"));
+        String apiUrl = String.format("%s/route/v1/%s/%s?overview=false&geometries=%s&steps=true",
+                osrmServerUrl, PROFILE, coordinatesParam, geometryFormat);
+        return osrm.get(apiUrl, "OSRM", routeParser::parseLegs);
     }
 
     /**
-     * Parses OSRM route response JSON.
+     * Stitches legs into one route: paths are joined at the shared waypoint
+     * vertex, totals are summed and instructions are renumbered. The vertex
+     * each leg starts at is recorded in the route.
      */
-    private Route parseRouteResponse(String jsonResponse, List<Place> waypoints) {
-        JsonObject responseObject = JsonParser.parseString(jsonResponse).getAsJsonObject();
-
-        String code = responseObject.has("code") ? responseObject.get("code").getAsString() : "";
-        if (!"Ok".equalsIgnoreCase(code)) {
-            String message = responseObject.has("message") ? responseObject.get("message").getAsString()
-                    : "Unknown error";
-            log.error("OSRM API error: {}", message);
-            return null;
+    static Route assembleRoute(List<Place> waypoints, RouteLeg[] legs) {
+        int vertexCount = 0;
+        for (RouteLeg leg : legs) {
+            vertexCount += leg.getCoordinates().size();
         }
-
-        if (!responseObject.has("routes") || !responseObject.get("routes").isJsonArray()
-                || responseObject.getAsJsonArray("routes").isEmpty()) {
-            log.error("OSRM response contains no routes");
-            return null;
+        CoordinateSequence.Builder coordinates = new CoordinateSequence.Builder(vertexCount);
+        int[] legStarts = new int[legs.length + 1];
+        List<String> instructions = new ArrayList<>();
+        double distance = 0;
+        double duration = 0;
+        for (int k = 0; k < legs.length; k++) {
+            RouteLeg leg = legs[k];
+            CoordinateSequence path = leg.getCoordinates();
+            legStarts[k] = coordinates.size();
+            for (int i = 0; i < path.size(); i++) {
+                int n = coordinates.size();
+                if (i == 0 && n > 0 && coordinates.getLatitudeE6(n - 1) == path.getLatitudeE6(0)
+                        && coordinates.getLongitudeE6(n - 1) == path.getLongitudeE6(0)) {
+                    legStarts[k] = n - 1;
+                    continue;
+                }
+                coordinates.addE6(path.getLatitudeE6(i), path.getLongitudeE6(i));
+            }
+            for (String instruction : leg.getInstructions()) {
+                instructions.add(OsrmRouteParser.numberInstruction(instructions.size() + 1, instruction));
+            }
+            distance += leg.getDistanceMeters();
+            duration += leg.getDurationSeconds();
         }
+        legStarts[legs.length] = Math.max(coordinates.size() - 1, 0);
+        return new Route(waypoints, coordinates.build(), legStarts, distance, duration,
+                String.join("\n", instructions));
+    }
 
-        JsonObject routeObject = responseObject.getAsJsonArray("routes").get(0).getAsJsonObject();
-
-        // Parse distance (meters to km) and duration (seconds to minutes)
-        double distanceInKm = routeObject.get("distance").getAsDouble() / 1000.0;
-        double durationInMinutes = routeObject.get("duration").getAsDouble() / 60.0;
-
-        // Parse coordinates
-        List<Coordinate> pathCoordinates = parseCoordinates(routeObject);
+    /**
+     * Builds the cache key of the leg between two places. Places found through
+     * geocoding are identified by their ID; places without one (e.g. picked on
+     * the map) by their coordinates.
+     */
+    private static String legKey(Place from, Place to) {
+        return placeKey(from) + '>' + placeKey(to) + '|' + PROFILE;
+    }
 
-        // Parse turn-by-turn instructions
-        String instructions = parseInstructions(routeObject);
+    private static String placeKey(Place place) {
+        if (place.getPlaceId() != null && !place.getPlaceId().isEmpty()) {
+            return place.getPlaceId();
+        }
+        return String.format(Locale.US, "%f,%f", place.getLongitude(), place.getLatitude());
+    }
 
-        return new Route(waypoints, pathCoordinates, distanceInKm * 1000, durationInMinutes * 60, instructions);
+    private Route remember(Route route) {
+        this.lastRoute = route;
+        return route;
     }
 
     /**
-     * Parses route coordinates from OSRM response.
+     * {@inheritDoc}
+     * <p>
+     * Sets larger than {@link Constants#MATRIX_TILE_SIZE} are split into tiles
+     * of sources x destinations, which are requested in parallel (still paced
+     * by the OSRM rate limit) and written into one flat matrix.
      */
-    private List<Coordinate> parseCoordinates(JsonObject routeObject) {
-        List<Coordinate> coordinates = new ArrayList<>();
-
-        if (!routeObject.has("geometry") || !routeObject.get("geometry").isJsonObject()) {
-            return coordinates;
+    @Override
+    public TravelMatrix getMatrix(List<Place> places) throws IOException {
+        if (places == null || places.isEmpty()) {
+            throw new IllegalArgumentException("A travel matrix requires at least 1 place.");
         }
-
-        JsonObject geometryObject = routeObject.getAsJsonObject("geometry");
-        if (!geometryObject.has("coordinates") || !geometryObject.get("coordinates").isJsonArray()) {
-            return coordinates;
+        if (osrmServerUrl == null || osrmServerUrl.isEmpty()) {
+            throw new IllegalStateException("OSRM server URL is not configured.");
         }
-
-        JsonArray coordsArray = geometryObject.getAsJsonArray("coordinates");
-        for (int i = 0; i < coordsArray.size(); i++) {
-            JsonArray pointArray = coordsArray.get(i).getAsJsonArray();
-            if (pointArray.size() >= 2) {
-                double lng = pointArray.get(0).getAsDouble();
-                double lat = pointArray.get(1).getAsDouble();
-                coordinates.add(new Coordinate(lat, lng));
+        int n = places.size();
+        double[] durations = new double[n * n];
+        double[] distances = new double[n * n];
+        int tile = Constants.MATRIX_TILE_SIZE;
+
+        List<Future<Void>> tiles = new ArrayList<>();
+        for (int rowStart = 0; rowStart < n; rowStart += tile) {
+            for (int columnStart = 0; columnStart < n; columnStart += tile) {
+                int rowEnd = Math.min(n, rowStart + tile);
+                int columnEnd = Math.min(n, columnStart + tile);
+                String apiUrl = tableUrl(places, rowStart, rowEnd, columnStart, columnEnd);
+                int[] rows = range(rowStart, rowEnd);
+                int[] columns = range(columnStart, columnEnd);
+                tiles.add(matrixExecutor.submit(() -> osrm.get(apiUrl, "OSRM table",
+                        body -> OsrmTableParser.parse(body, durations, distances, n, rows, columns))));
             }
         }
-
-        return coordinates;
+        try {
+            for (Future<Void> future : tiles) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Travel matrix request was interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Travel matrix request failed: " + cause.getMessage(), cause);
+        } finally {
+            for (Future<Void> future : tiles) {
+                future.cancel(true);
+            }
+        }
+        log.debug("Travel matrix for {} places fetched in {} tiles", n, tiles.size());
+        return new TravelMatrix(places, durations, distances);
     }
 
     /**
-     * Parses turn-by-turn instructions from OSRM response.
+     * Builds the /table URL of one tile. Diagonal tiles send their places once;
+     * other tiles send the source places followed by the destination places.
      */
-    private String parseInstructions(JsonObject routeObject) {
-        List<String> instructions = new ArrayList<>();
-
-        if (!routeObject.has("legs") || !routeObject.get("legs").isJsonArray()) {
-            return "";
+    private String tableUrl(List<Place> places, int rowStart, int rowEnd, int columnStart, int columnEnd) {
+        StringBuilder url = new StringBuilder(osrmServerUrl).append("/table/v1/").append(PROFILE).append('/');
+        appendCoordinates(url, places, rowStart, rowEnd);
+        boolean diagonal = rowStart == columnStart;
+        if (!diagonal) {
+            url.append(';');
+            appendCoordinates(url, places, columnStart, columnEnd);
         }
-
-        JsonArray legsArray = routeObject.getAsJsonArray("legs");
-        int stepGlobalIndex = 0;
-
-        for (int legIndex = 0; legIndex < legsArray.size(); legIndex++) {
-            JsonObject legObj = legsArray.get(legIndex).getAsJsonObject();
-
-            if (!legObj.has("steps") || !legObj.get("steps").isJsonArray()) {
-                continue;
+        url.append("?annotations=duration,distance");
+        if (!diagonal) {
+            int rowCount = rowEnd - rowStart;
+            url.append("&sources=");
+            for (int i = 0; i < rowCount; i++) {
+                url.append(i == 0 ? "" : ";").append(i);
             }
-
-            JsonArray stepsArray = legObj.getAsJsonArray("steps");
-            for (int stepIndex = 0; stepIndex < stepsArray.size(); stepIndex++) {
-                JsonObject stepObj = stepsArray.get(stepIndex).getAsJsonObject();
-
-                if (!stepObj.has("maneuver") || !stepObj.get("maneuver").isJsonObject()) {
-                    continue;
-                }
-
-                JsonObject maneuverObj = stepObj.getAsJsonObject("maneuver");
-                String stepName = stepObj.has("name") ? stepObj.get("name").getAsString() : "";
-                String rotaryName = stepObj.has("rotary_name") ? stepObj.get("rotary_name").getAsString() : "";
-                double stepDistance = stepObj.has("distance") ? stepObj.get("distance").getAsDouble() : 0.0;
-
-                String instruction = instructionFormatter.generateInstruction(maneuverObj, stepName, rotaryName);
-
-                if (!instruction.isEmpty()) {
-                    String formattedInstruction = formatInstructionWithDistance(stepGlobalIndex + 1, instruction,
-                            stepDistance);
-                    instructions.add(formattedInstruction);
-                    stepGlobalIndex++;
-                }
+            url.append("&destinations=");
+            for (int i = 0; i < columnEnd - columnStart; i++) {
+                url.append(i == 0 ? "" : ";").append(rowCount + i);
             }
         }
-
-        return String.join("\n", instructions);
+        return url.toString();
     }
 
-    /**
-     * Formats instruction with step number and distance.
-     */
-    private String formatInstructionWithDistance(int stepNumber, String instruction, double distanceInMeters) {
-        String distanceStr;
-        if (distanceInMeters >= 1000) {
-            distanceStr = String.format(Locale.US, "%.1f km", distanceInMeters / 1000);
-        } else {
-            distanceStr = String.format(Locale.US, "%.0f m", distanceInMeters);
-        }
-        return String.format("%d. %s (%s)", stepNumber, instruction, distanceStr);
+    private static void appendCoordinates(StringBuilder url, List<Place> places, int from, int to) {
+        for (int i = from; i < to; i++) {
+            Place place = places.get(i);
+            url.append(i == from ? "" : ";")
+                    .append(String.format(Locale.US, "%f,%f", place.getLongitude(), place.getLatitude()));
+        }
     }
 
-    /**
-     * Handles HTTP error response from OSRM API.
-     */
-    private void handleErrorResponse(HttpURLConnection connection, int responseCode) throws IOException {
-        log.error("OSRM API error: HTTP {}", responseCode);
-        try (BufferedReader errorReader = new BufferedReader(new InputStreamReader(connection.getErrorStream()))) {
-            StringBuilder errorResponse = new StringBuilder();
-            String errorLine;
-            while ((errorLine = errorReader.readLine()) != null) {
-                errorResponse.append(errorLine);
-            }
-            log.error("OSRM error details: {}", errorResponse);
-            throw new IOException("OSRM API error: " + responseCode + ". " + errorResponse.toString());
-        } catch (Exception e) {
-            throw new IOException("OSRM API error: " + responseCode + ". Could not read error details.");
+    private static int[] range(int from, int to) {
+        int[] values = new int[to - from];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = from + i;
         }
+        return values;
+    }
+
+    @Override
+    public Route getLastRoute() {
+        return lastRoute;
     }
 }
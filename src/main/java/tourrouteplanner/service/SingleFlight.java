@@ -0,0 +1,92 @@
+package tourrouteplanner.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Deduplicates concurrent calls for the same key.
+ * The first caller for a key (the leader) performs the call; callers arriving
+ * while it is in flight wait on the same {@link CompletableFuture} and receive
+ * its result instead of issuing a duplicate request.
+ *
+ * @param <K> The key type, e.g. a normalized query.
+ * @param <V> The result type. Results are shared between callers, so they
+ *            should be immutable.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * A call that may fail with an {@link IOException}.
+     *
+     * @param <V> The result type.
+     */
+    @FunctionalInterface
+    public interface Call<V> {
+        V call() throws IOException;
+    }
+
+    /**
+     * Runs the call, or joins an identical call that is already in flight.
+     *
+     * @param key  Key identifying identical calls.
+     * @param call The call to run if no call for the key is in flight.
+     * @return The (possibly shared) result.
+     * @throws IOException If the call fails.
+     */
+    public V execute(K key, Call<V> call) throws IOException {
+        while (true) {
+            CompletableFuture<V> created = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+            if (existing == null) {
+                return lead(key, created, call);
+            }
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for shared request");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof InterruptedIOException) {
+                    // The leader was cancelled, not this caller: retry, possibly as the new leader
+                    continue;
+                }
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of keys with a call currently in flight.
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private V lead(K key, CompletableFuture<V> future, Call<V> call) throws IOException {
+        try {
+            V result = call.call();
+            future.complete(result);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+}
@@ -2,9 +2,14 @@ package tourrouteplanner.service;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import javafx.stage.FileChooser;
 import javafx.stage.Window;
+import tourrouteplanner.model.CoordinateSequence;
 import tourrouteplanner.model.Place;
 import tourrouteplanner.model.Route;
 import tourrouteplanner.util.Constants;
@@ -60,6 +65,72 @@ public class StorageService implements IStorageService {
         }
     }
 
+    /**
+     * Serializes a {@link CoordinateSequence} in the route file format used
+     * before paths were packed: an array of
+     * {@code {"latitude": .., "longitude": ..}} objects. Reading also accepts
+     * compact {@code [lat, lon]} pairs. Values are streamed straight into the
+     * packed sequence, so loading a route creates no object per vertex.
+     */
+    private static class CoordinateSequenceAdapter extends TypeAdapter<CoordinateSequence> {
+        @Override
+        public void write(JsonWriter out, CoordinateSequence coordinates) throws IOException {
+            if (coordinates == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (int i = 0; i < coordinates.size(); i++) {
+                out.beginObject();
+                out.name("latitude").value(coordinates.getLatitude(i));
+                out.name("longitude").value(coordinates.getLongitude(i));
+                out.endObject();
+            }
+            out.endArray();
+        }
+
+        @Override
+        public CoordinateSequence read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            CoordinateSequence.Builder builder = new CoordinateSequence.Builder();
+            in.beginArray();
+            while (in.hasNext()) {
+                if (in.peek() == JsonToken.BEGIN_ARRAY) {
+                    in.beginArray();
+                    double lat = in.nextDouble();
+                    double lon = in.nextDouble();
+                    while (in.hasNext()) {
+                        in.skipValue();
+                    }
+                    in.endArray();
+                    builder.add(lat, lon);
+                } else if (in.peek() == JsonToken.BEGIN_OBJECT) {
+                    double lat = Double.NaN;
+                    double lon = Double.NaN;
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "latitude" -> lat = in.nextDouble();
+                            case "longitude" -> lon = in.nextDouble();
+                            default -> in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    if (!Double.isNaN(lat) && !Double.isNaN(lon)) {
+                        builder.add(lat, lon);
+                    }
+                } else {
+                    in.skipValue(); // null entries were tolerated before as well
+                }
+            }
+            in.endArray();
+            return builder.build();
+        }
+    }
+
     /**
      * Creates a {@code StorageService} object.
      * Configures the {@link Gson} object for "pretty printing" (human-readable)
@@ -67,7 +138,10 @@ public class StorageService implements IStorageService {
      */
     public StorageService() {
         // Configure Gson for pretty print to make JSON files more readable.
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this.gson = new GsonBuilder()
+                .registerTypeAdapter(CoordinateSequence.class, new CoordinateSequenceAdapter())
+                .setPrettyPrinting()
+                .create();
     }
 
     /**
@@ -0,0 +1,428 @@
+package tourrouteplanner.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds a short visiting order for a set of stops given a (possibly
+ * asymmetric) travel cost matrix, i.e. a heuristic travelling salesman
+ * solver.
+ * <p>
+ * Every stop sequence is modelled as a path {@code p[0..L]} whose first and
+ * last entries are fixed:
+ * <ul>
+ * <li>round trip: the path ends at a copy of the start,</li>
+ * <li>open tour with fixed end: the path ends at the end stop,</li>
+ * <li>open tour with free end: the path ends at a dummy stop reachable from
+ * every stop at zero cost.</li>
+ * </ul>
+ * Each worker builds a nearest-neighbour tour (randomised for all but the
+ * first worker), improves it with 2-opt and Or-opt moves and then runs an
+ * iterated local search with double-bridge kicks until the time budget is
+ * spent or it stops improving. Workers run on all cores; the best tour wins.
+ * Move costs use prefix sums of the forward and backward edge costs, so
+ * reversing a segment is evaluated in O(1) even for asymmetric costs.
+ */
+public class TourOptimizer {
+
+    private static final Logger log = LoggerFactory.getLogger(TourOptimizer.class);
+
+    /** Cost used for pairs without a route, so they are avoided but stay comparable. */
+    private static final double UNREACHABLE_COST = 1e9;
+    /** Minimum improvement a move must bring; guards against rounding loops. */
+    private static final double EPSILON = 1e-7;
+    /** Local search rounds without improvement after which a worker gives up. */
+    private static final int MAX_STALLED_KICKS = 2000;
+    /** Longest segment moved by Or-opt. */
+    private static final int MAX_OR_OPT_SEGMENT = 3;
+    /** Candidates the randomised nearest-neighbour construction picks from. */
+    private static final int RANDOM_NEIGHBOUR_CANDIDATES = 3;
+
+    private final ExecutorService executor;
+    private final int workers;
+
+    /**
+     * Creates an optimizer using one worker per available processor.
+     */
+    public TourOptimizer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an optimizer.
+     *
+     * @param workers Number of parallel local searches.
+     */
+    public TourOptimizer(int workers) {
+        this.workers = Math.max(1, workers);
+        this.executor = Executors.newFixedThreadPool(this.workers, runnable -> {
+            Thread thread = new Thread(runnable, "tour-optimizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Computes a visiting order.
+     *
+     * @param costs            Row-major cost matrix of {@code size x size}
+     *                         entries, e.g. travel durations; NaN marks pairs
+     *                         without a route.
+     * @param size             Number of stops.
+     * @param start            Index of the first stop.
+     * @param end              Index of the last stop of an open tour, or -1 to
+     *                         let the optimizer choose; ignored for round trips.
+     * @param roundTrip        Whether the tour returns to the start.
+     * @param timeBudgetMillis Maximum search time in milliseconds.
+     * @return All stop indices in visiting order, beginning with {@code start}
+     *         (and ending with {@code end} if given).
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public int[] optimize(double[] costs, int size, int start, int end, boolean roundTrip, long timeBudgetMillis)
+            throws InterruptedException {
+        if (costs.length != size * size) {
+            throw new IllegalArgumentException("Cost matrix must hold " + size * size + " values.");
+        }
+        if (start < 0 || start >= size || end >= size || (end == start && !roundTrip && size > 1)) {
+            throw new IllegalArgumentException("Invalid start or end stop.");
+        }
+        Problem problem = new Problem(costs, size, start, roundTrip ? -1 : end, roundTrip);
+        if (problem.interior.length <= 1) {
+            return problem.toOrder(problem.initialPath());
+        }
+
+        long deadline = System.nanoTime() + timeBudgetMillis * 1_000_000L;
+        List<Future<Search>> futures = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            long seed = 0x5DEECE66DL * (w + 1);
+            boolean randomStart = w > 0;
+            futures.add(executor.submit(() -> {
+                Search search = new Search(problem, new Random(seed));
+                search.run(randomStart, deadline);
+                return search;
+            }));
+        }
+
+        Search best = null;
+        try {
+            for (Future<Search> future : futures) {
+                Search search = future.get();
+                if (best == null || search.bestCost < best.bestCost) {
+                    best = search;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tour optimization failed", e.getCause());
+        } finally {
+            for (Future<Search> future : futures) {
+                future.cancel(true);
+            }
+        }
+        log.debug("Optimized {} stops with {} workers: cost {}", size, workers, best.bestCost);
+        return problem.toOrder(best.bestPath);
+    }
+
+    /**
+     * Computes the cost of visiting stops in the given order.
+     *
+     * @param costs     Row-major cost matrix; NaN marks pairs without a route.
+     * @param size      Number of stops.
+     * @param order     Stop indices in visiting order.
+     * @param roundTrip Whether the cost of returning to the first stop counts.
+     * @return The total cost.
+     */
+    public static double tourCost(double[] costs, int size, int[] order, boolean roundTrip) {
+        double total = 0;
+        for (int i = 0; i + 1 < order.length; i++) {
+            total += cost(costs, size, order[i], order[i + 1]);
+        }
+        if (roundTrip && order.length > 1) {
+            total += cost(costs, size, order[order.length - 1], order[0]);
+        }
+        return total;
+    }
+
+    private static double cost(double[] costs, int size, int from, int to) {
+        double value = costs[from * size + to];
+        return Double.isNaN(value) ? UNREACHABLE_COST : value;
+    }
+
+    /**
+     * The path model of one optimization request, shared read-only by all
+     * workers.
+     */
+    private static final class Problem {
+        /** Extended cost matrix; index {@code size} is the free-end dummy stop. */
+        final double[] matrix;
+        final int stride;
+        final int start;
+        final int terminal;
+        final int[] interior;
+        final boolean freeEnd;
+
+        Problem(double[] costs, int size, int start, int end, boolean roundTrip) {
+            this.stride = size + 1;
+            this.matrix = new double[stride * stride];
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    matrix[i * stride + j] = i == j ? 0 : TourOptimizer.cost(costs, size, i, j);
+                }
+            }
+            this.start = start;
+            this.freeEnd = !roundTrip && end < 0;
+            this.terminal = roundTrip ? start : freeEnd ? size : end;
+            int[] stops = new int[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (i != start && i != end) {
+                    stops[count++] = i;
+                }
+            }
+            this.interior = Arrays.copyOf(stops, count);
+        }
+
+        double cost(int from, int to) {
+            return matrix[from * stride + to];
+        }
+
+        /** Path length index L; the path has L + 1 entries. */
+        int lastPosition() {
+            return interior.length + 1;
+        }
+
+        int[] initialPath() {
+            int[] path = new int[lastPosition() + 1];
+            path[0] = start;
+            System.arraycopy(interior, 0, path, 1, interior.length);
+            path[path.length - 1] = terminal;
+            return path;
+        }
+
+        /** Drops the round-trip copy of the start or the dummy end. */
+        int[] toOrder(int[] path) {
+            boolean dropLast = freeEnd || terminal == start;
+            return Arrays.copyOf(path, dropLast ? path.length - 1 : path.length);
+        }
+    }
+
+    /**
+     * One worker's local search state.
+     */
+    private static final class Search {
+        private final Problem problem;
+        private final Random random;
+        private final int last;
+        private int[] path;
+        /** forward[k]: cost of path[0..k] travelled forwards. */
+        private final double[] forward;
+        /** backward[k]: cost of path[0..k] travelled backwards. */
+        private final double[] backward;
+        private final int[] scratch;
+        int[] bestPath;
+        double bestCost = Double.POSITIVE_INFINITY;
+
+        Search(Problem problem, Random random) {
+            this.problem = problem;
+            this.random = random;
+            this.last = problem.lastPosition();
+            this.forward = new double[last + 1];
+            this.backward = new double[last + 1];
+            this.scratch = new int[last + 1];
+        }
+
+        void run(boolean randomStart, long deadline) {
+            path = nearestNeighbour(randomStart);
+            updatePrefixSums();
+            localSearch(deadline);
+            bestPath = path.clone();
+            bestCost = forward[last];
+
+            if (problem.interior.length < 8) {
+                return; // Too small for a double bridge; the local optimum is final
+            }
+            int stalled = 0;
+            while (stalled < MAX_STALLED_KICKS && System.nanoTime() < deadline
+                    && !Thread.currentThread().isInterrupted()) {
+                System.arraycopy(bestPath, 0, path, 0, path.length);
+                doubleBridge();
+                updatePrefixSums();
+                localSearch(deadline);
+                if (forward[last] < bestCost - EPSILON) {
+                    bestCost = forward[last];
+                    System.arraycopy(path, 0, bestPath, 0, path.length);
+                    stalled = 0;
+                } else {
+                    stalled++;
+                }
+            }
+        }
+
+        private int[] nearestNeighbour(boolean randomised) {
+            int[] result = problem.initialPath();
+            int[] candidates = new int[RANDOM_NEIGHBOUR_CANDIDATES];
+            for (int position = 1; position < last; position++) {
+                int current = result[position - 1];
+                // result[position..last-1] holds the stops not yet visited
+                int found = 0;
+                for (int k = position; k < last; k++) {
+                    double c = problem.cost(current, result[k]);
+                    int slot;
+                    if (found < candidates.length) {
+                        slot = found++;
+                    } else if (c < problem.cost(current, result[candidates[found - 1]])) {
+                        slot = found - 1;
+                    } else {
+                        continue;
+                    }
+                    // Keep candidates sorted by cost
+                    for (; slot > 0 && problem.cost(current, result[candidates[slot - 1]]) > c; slot--) {
+                        candidates[slot] = candidates[slot - 1];
+                    }
+                    candidates[slot] = k;
+                }
+                int chosen = candidates[randomised ? random.nextInt(found) : 0];
+                int tmp = result[position];
+                result[position] = result[chosen];
+                result[chosen] = tmp;
+            }
+            return result;
+        }
+
+        private void updatePrefixSums() {
+            forward[0] = 0;
+            backward[0] = 0;
+            for (int k = 0; k < last; k++) {
+                forward[k + 1] = forward[k] + problem.cost(path[k], path[k + 1]);
+                backward[k + 1] = backward[k] + problem.cost(path[k + 1], path[k]);
+            }
+        }
+
+        private void localSearch(long deadline) {
+            boolean improved = true;
+            while (improved && System.nanoTime() < deadline) {
+                improved = twoOpt();
+                improved |= orOpt();
+            }
+        }
+
+        /**
+         * Reverses segments path[i..j] while that shortens the path.
+         */
+        private boolean twoOpt() {
+            boolean improved = false;
+            for (int i = 1; i < last - 1; i++) {
+                for (int j = i + 1; j < last; j++) {
+                    int a = path[i - 1];
+                    int b = path[i];
+                    int c = path[j];
+                    int d = path[j + 1];
+                    double delta = problem.cost(a, c) + problem.cost(b, d) - problem.cost(a, b) - problem.cost(c, d)
+                            + (backward[j] - backward[i]) - (forward[j] - forward[i]);
+                    if (delta < -EPSILON) {
+                        for (int lo = i, hi = j; lo < hi; lo++, hi--) {
+                            int tmp = path[lo];
+                            path[lo] = path[hi];
+                            path[hi] = tmp;
+                        }
+                        updatePrefixSums();
+                        improved = true;
+                    }
+                }
+            }
+            return improved;
+        }
+
+        /**
+         * Moves segments of up to {@link #MAX_OR_OPT_SEGMENT} stops, optionally
+         * reversed, to a better position.
+         */
+        private boolean orOpt() {
+            boolean improved = false;
+            for (int length = 1; length <= MAX_OR_OPT_SEGMENT; length++) {
+                for (int i = 1; i + length - 1 < last; i++) {
+                    int segmentEnd = i + length - 1;
+                    int prev = path[i - 1];
+                    int first = path[i];
+                    int lastStop = path[segmentEnd];
+                    int next = path[segmentEnd + 1];
+                    double removeGain = problem.cost(prev, first) + problem.cost(lastStop, next)
+                            - problem.cost(prev, next);
+                    double reverseExtra = (backward[segmentEnd] - backward[i]) - (forward[segmentEnd] - forward[i]);
+
+                    for (int j = 0; j < last; j++) {
+                        if (j >= i - 1 && j <= segmentEnd) {
+                            continue; // Edge touches the segment
+                        }
+                        int x = path[j];
+                        int y = path[j + 1];
+                        double base = -problem.cost(x, y) - removeGain;
+                        double delta = base + problem.cost(x, first) + problem.cost(lastStop, y);
+                        double reversedDelta = base + problem.cost(x, lastStop) + problem.cost(first, y)
+                                + reverseExtra;
+                        boolean reversed = reversedDelta < delta;
+                        if (Math.min(delta, reversedDelta) < -EPSILON) {
+                            moveSegment(i, segmentEnd, j, reversed);
+                            updatePrefixSums();
+                            improved = true;
+                            break;
+                        }
+                    }
+                }
+            }
+            return improved;
+        }
+
+        /**
+         * Moves path[from..to] between path[after] and path[after + 1].
+         */
+        private void moveSegment(int from, int to, int after, boolean reversed) {
+            int n = 0;
+            for (int k = 0; k <= last; k++) {
+                if (k >= from && k <= to) {
+                    continue;
+                }
+                scratch[n++] = path[k];
+                if (k == after) {
+                    for (int s = 0; s <= to - from; s++) {
+                        scratch[n++] = path[reversed ? to - s : from + s];
+                    }
+                }
+            }
+            System.arraycopy(scratch, 0, path, 0, n);
+        }
+
+        /**
+         * Swaps two adjacent random blocks of the interior (segments A B C D
+         * become A C B D), a kick that 2-opt and Or-opt cannot easily undo.
+         */
+        private void doubleBridge() {
+            int interiorEnd = last - 1;
+            int a = 1 + random.nextInt(interiorEnd - 2);
+            int b = a + 1 + random.nextInt(interiorEnd - a - 1);
+            int c = b + 1 + random.nextInt(interiorEnd - b);
+            int n = 0;
+            for (int k = 0; k < a; k++) {
+                scratch[n++] = path[k];
+            }
+            for (int k = b; k < c; k++) {
+                scratch[n++] = path[k];
+            }
+            for (int k = a; k < b; k++) {
+                scratch[n++] = path[k];
+            }
+            for (int k = c; k <= last; k++) {
+                scratch[n++] = path[k];
+            }
+            System.arraycopy(scratch, 0, path, 0, n);
+        }
+    }
+}
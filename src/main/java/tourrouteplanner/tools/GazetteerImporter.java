@@ -0,0 +1,259 @@
+package tourrouteplanner.tools;
+
+import tourrouteplanner.service.Gazetteer;
+import tourrouteplanner.util.Constants;
+import tourrouteplanner.util.OsmPbfReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Command-line tool that extracts named places from an OSM PBF extract (e.g.
+ * the {@code vietnam-latest.osm.pbf} used by docker-compose.yml) into the
+ * local gazetteer file read by
+ * {@link tourrouteplanner.service.OfflineGeocodingService}.
+ * <p>
+ * Usage: {@code GazetteerImporter <input.osm.pbf> [output.bin]}
+ * <p>
+ * Named nodes and ways carrying one of the
+ * {@link #CATEGORY_KEYS} tags are imported; ways are placed at the centroid
+ * of their nodes. The PBF is read twice: the first pass collects matching
+ * ways and their node IDs, the second resolves the coordinates of just those
+ * nodes, so memory stays proportional to the number of places.
+ */
+public final class GazetteerImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(GazetteerImporter.class);
+
+    /** Tag keys whose presence (with a name) makes an element a place. */
+    private static final String[] CATEGORY_KEYS = {
+            "place", "tourism", "historic", "amenity", "leisure", "natural", "shop", "aeroway", "railway"
+    };
+
+    private GazetteerImporter() {
+        // Prevent instantiation
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: GazetteerImporter <input.osm.pbf> [output, default "
+                    + Constants.GAZETTEER_FILE + "]");
+            System.exit(1);
+        }
+        File input = new File(args[0]);
+        File output = new File(args.length > 1 ? args[1] : Constants.GAZETTEER_FILE);
+        long start = System.nanoTime();
+        int count = importPlaces(input, output);
+        log.info("Wrote {} places to {} in {} s", count, output.getAbsolutePath(),
+                (System.nanoTime() - start) / 1_000_000_000L);
+    }
+
+    /**
+     * Extracts named places from a PBF file and writes them to a gazetteer file.
+     *
+     * @param input  The {@code .osm.pbf} extract.
+     * @param output The gazetteer file to write.
+     * @return The number of places written.
+     * @throws IOException If reading or writing fails.
+     */
+    public static int importPlaces(File input, File output) throws IOException {
+        OsmPbfReader reader = new OsmPbfReader(input);
+
+        // Pass 1: named ways and the nodes they reference
+        List<PendingWay> ways = new ArrayList<>();
+        LongList wayNodeIds = new LongList();
+        reader.read(new OsmPbfReader.Handler() {
+            @Override
+            public boolean wantsNodes() {
+                return false;
+            }
+
+            @Override
+            public void way(long id, long[] nodeRefs, Map<String, String> tags) {
+                String category = categoryOf(tags);
+                if (category != null && nodeRefs.length > 0) {
+                    ways.add(new PendingWay(id, nodeRefs, tags, category));
+                    wayNodeIds.addAll(nodeRefs);
+                }
+            }
+        });
+        long[] neededIds = wayNodeIds.toSortedUniqueArray();
+        log.info("Pass 1: {} named ways referencing {} nodes", ways.size(), neededIds.length);
+
+        // Pass 2: named nodes, plus coordinates of nodes used by named ways
+        Gazetteer.Builder builder = new Gazetteer.Builder();
+        int[] neededLatitudes = new int[neededIds.length];
+        int[] neededLongitudes = new int[neededIds.length];
+        reader.read(new OsmPbfReader.Handler() {
+            @Override
+            public boolean wantsWays() {
+                return false;
+            }
+
+            @Override
+            public void node(long id, double latitude, double longitude, Map<String, String> tags) {
+                int latitudeE6 = (int) Math.round(latitude * 1e6);
+                int longitudeE6 = (int) Math.round(longitude * 1e6);
+                int slot = Arrays.binarySearch(neededIds, id);
+                if (slot >= 0) {
+                    neededLatitudes[slot] = latitudeE6;
+                    neededLongitudes[slot] = longitudeE6;
+                }
+                String category = categoryOf(tags);
+                if (category != null) {
+                    builder.add(tags.get("name"), category, addressOf(tags), "N" + id, latitudeE6, longitudeE6,
+                            rankOf(tags, category));
+                }
+            }
+        });
+        int nodePlaces = builder.size();
+
+        for (PendingWay way : ways) {
+            long latitudeSum = 0;
+            long longitudeSum = 0;
+            int resolved = 0;
+            // A closed way repeats its first node at the end; count it once
+            int refCount = way.nodeRefs.length;
+            if (refCount > 1 && way.nodeRefs[0] == way.nodeRefs[refCount - 1]) {
+                refCount--;
+            }
+            for (int i = 0; i < refCount; i++) {
+                long ref = way.nodeRefs[i];
+                int slot = Arrays.binarySearch(neededIds, ref);
+                if (slot >= 0 && (neededLatitudes[slot] != 0 || neededLongitudes[slot] != 0)) {
+                    latitudeSum += neededLatitudes[slot];
+                    longitudeSum += neededLongitudes[slot];
+                    resolved++;
+                }
+            }
+            if (resolved > 0) {
+                builder.add(way.tags.get("name"), way.category, addressOf(way.tags), "W" + way.id,
+                        (int) (latitudeSum / resolved), (int) (longitudeSum / resolved),
+                        rankOf(way.tags, way.category));
+            }
+        }
+        log.info("Pass 2: {} named nodes, {} named ways", nodePlaces, builder.size() - nodePlaces);
+
+        builder.write(output);
+        return builder.size();
+    }
+
+    /**
+     * Returns the "key=value" category of a named place, or null if the element
+     * is unnamed or has none of the {@link #CATEGORY_KEYS}.
+     */
+    private static String categoryOf(Map<String, String> tags) {
+        if (tags.isEmpty() || !tags.containsKey("name")) {
+            return null;
+        }
+        for (String key : CATEGORY_KEYS) {
+            String value = tags.get(key);
+            if (value == null || "no".equals(value)) {
+                continue;
+            }
+            if ("railway".equals(key) && !"station".equals(value) && !"halt".equals(value)) {
+                continue;
+            }
+            return key + "=" + value;
+        }
+        return null;
+    }
+
+    /**
+     * Builds a comma-separated address from the addr:* tags, most specific first.
+     */
+    private static String addressOf(Map<String, String> tags) {
+        String full = tags.get("addr:full");
+        if (full != null) {
+            return full;
+        }
+        StringBuilder address = new StringBuilder();
+        String houseNumber = tags.get("addr:housenumber");
+        String street = tags.get("addr:street");
+        if (street != null) {
+            address.append(houseNumber != null ? houseNumber + " " + street : street);
+        }
+        for (String key : new String[] { "addr:subdistrict", "addr:district", "addr:city", "addr:province" }) {
+            String part = tags.get(key);
+            if (part != null && !part.isBlank()) {
+                if (address.length() > 0) {
+                    address.append(", ");
+                }
+                address.append(part);
+            }
+        }
+        return address.toString();
+    }
+
+    /**
+     * Assigns a prominence rank used to order equally good name matches, e.g.
+     * cities before villages before shops.
+     */
+    private static int rankOf(Map<String, String> tags, String category) {
+        int rank = switch (category) {
+            case "place=city", "place=province", "place=state" -> 90;
+            case "place=town", "place=district" -> 70;
+            case "place=suburb", "place=village", "place=island" -> 55;
+            case "place=quarter", "place=neighbourhood", "place=hamlet" -> 40;
+            case "tourism=attraction", "tourism=museum", "tourism=viewpoint", "aeroway=aerodrome" -> 60;
+            default -> category.startsWith("historic=") || category.startsWith("natural=") ? 45
+                    : category.startsWith("shop=") ? 20 : 30;
+        };
+        if (tags.containsKey("wikidata") || tags.containsKey("wikipedia")) {
+            rank += 10;
+        }
+        return rank;
+    }
+
+    /**
+     * A matching way whose centroid is resolved in the second pass.
+     */
+    private static final class PendingWay {
+        final long id;
+        final long[] nodeRefs;
+        final Map<String, String> tags;
+        final String category;
+
+        PendingWay(long id, long[] nodeRefs, Map<String, String> tags, String category) {
+            this.id = id;
+            this.nodeRefs = nodeRefs;
+            this.tags = tags;
+            this.category = category;
+        }
+    }
+
+    /**
+     * Growable list of primitive longs.
+     */
+    private static final class LongList {
+        private long[] values = new long[1024];
+        private int size;
+
+        void addAll(long[] more) {
+            if (size + more.length > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, size + more.length));
+            }
+            System.arraycopy(more, 0, values, size, more.length);
+            size += more.length;
+        }
+
+        long[] toSortedUniqueArray() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[unique++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, unique);
+        }
+    }
+}
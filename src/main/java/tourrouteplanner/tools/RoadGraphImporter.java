@@ -0,0 +1,48 @@
+package tourrouteplanner.tools;
+
+import tourrouteplanner.service.ContractionHierarchy;
+import tourrouteplanner.service.RoadGraph;
+import tourrouteplanner.service.RoadGraphExtractor;
+import tourrouteplanner.service.RoadGraphFile;
+import tourrouteplanner.util.Constants;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Command-line tool that builds the road graph file used by
+ * {@link tourrouteplanner.service.OfflineRoutingService} from an OSM PBF
+ * extract, so the app never has to build it on first use.
+ * <p>
+ * Usage: {@code RoadGraphImporter <input.osm.pbf> [output.bin]}
+ * <p>
+ * The output records the extract's size and modification time; the app
+ * rebuilds the file if the extract at its configured path changes later.
+ */
+public final class RoadGraphImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(RoadGraphImporter.class);
+
+    private RoadGraphImporter() {
+        // Prevent instantiation
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: RoadGraphImporter <input.osm.pbf> [output, default "
+                    + Constants.ROUTING_GRAPH_FILE + "]");
+            System.exit(1);
+        }
+        File input = new File(args[0]);
+        File output = new File(args.length > 1 ? args[1] : Constants.ROUTING_GRAPH_FILE);
+        long start = System.nanoTime();
+        RoadGraph graph = RoadGraphExtractor.extract(input);
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph, Runtime.getRuntime().availableProcessors());
+        RoadGraphFile.write(output, graph, hierarchy, input);
+        log.info("Wrote {} nodes and {} hierarchy edges to {} in {} s", graph.getNodeCount(),
+                hierarchy.getEdgeCount(), output.getAbsolutePath(), (System.nanoTime() - start) / 1_000_000_000L);
+    }
+}
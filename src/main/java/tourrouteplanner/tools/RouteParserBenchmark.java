@@ -0,0 +1,182 @@
+package tourrouteplanner.tools;
+
+import tourrouteplanner.model.Place;
+import tourrouteplanner.model.Route;
+import tourrouteplanner.service.OsrmRouteParser;
+import tourrouteplanner.util.InstructionFormatter;
+import tourrouteplanner.util.Polyline;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the streaming OSRM parser with the tree-based one on the same
+ * response: time per parse and bytes allocated per parse.
+ * <p>
+ * Usage: {@code RouteParserBenchmark [osrm-response.json | coordinate-count]}
+ * <p>
+ * Without a file, a synthetic response shaped like a long cross-country route
+ * (steps with their own geometry) is generated twice, once with GeoJSON and
+ * once with polyline6 geometries, to compare response size and parse cost of
+ * the two {@code osrm.geometry.format} modes.
+ */
+public final class RouteParserBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 20;
+    private static final int DEFAULT_COORDINATES = 200_000;
+
+    /**
+     * Parses one response; lets both parsers share the measuring loop.
+     */
+    @FunctionalInterface
+    private interface ParseCall {
+        Route parse(String json) throws IOException;
+    }
+
+    private RouteParserBenchmark() {
+        // Prevent instantiation
+    }
+
+    public static void main(String[] args) throws IOException {
+        String json;
+        String polylineJson = null;
+        if (args.length > 0 && Files.exists(Paths.get(args[0]))) {
+            json = Files.readString(Paths.get(args[0]), StandardCharsets.UTF_8);
+        } else {
+            int coordinates = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COORDINATES;
+            json = syntheticResponse(coordinates, false);
+            polylineJson = syntheticResponse(coordinates, true);
+        }
+        System.out.printf(Locale.US, "Response size: %.1f MB%n", json.length() / 1e6);
+
+        OsrmRouteParser parser = new OsrmRouteParser(new InstructionFormatter());
+        List<Place> waypoints = List.of(new Place("Start", 21.0, 105.8), new Place("End", 10.8, 106.7));
+
+        Route streamed = parser.parse(new StringReader(json), waypoints);
+        Route tree = parser.parseTree(new StringReader(json), waypoints);
+        checkSame(streamed, tree);
+        System.out.printf("Coordinates: %d, instructions: %d%n", streamed.getCoordinates().size(),
+                streamed.getTurnByTurnInstructions().split("\n").length);
+
+        measure("tree (JsonParser)", body -> parser.parseTree(new StringReader(body), waypoints), json);
+        measure("streaming (JsonReader)", body -> parser.parse(new StringReader(body), waypoints), json);
+
+        if (polylineJson != null) {
+            checkSame(streamed, parser.parse(new StringReader(polylineJson), waypoints));
+            System.out.printf(Locale.US, "polyline6 response size: %.1f MB%n", polylineJson.length() / 1e6);
+            measure("streaming (polyline6)", body -> parser.parse(new StringReader(body), waypoints),
+                    polylineJson);
+        }
+    }
+
+    private static void checkSame(Route expected, Route actual) {
+        if (!expected.getCoordinates().equals(actual.getCoordinates())
+                || !expected.getTurnByTurnInstructions().equals(actual.getTurnByTurnInstructions())
+                || expected.getTotalDistanceKm() != actual.getTotalDistanceKm()) {
+            throw new IllegalStateException("Parsers disagree on the benchmark response");
+        }
+    }
+
+    private static void measure(String label, ParseCall call, String json) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            call.parse(json);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            call.parse(json);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.printf(Locale.US, "%-24s %8.2f ms/parse %10.1f MB allocated/parse%n", label,
+                elapsed / 1e6 / MEASURED_ITERATIONS, allocated / 1e6 / MEASURED_ITERATIONS);
+    }
+
+    /**
+     * Builds an OSRM-like response with the given number of route coordinates
+     * and one step (with its own geometry) per 100 coordinates.
+     *
+     * @param polyline Whether geometries are polyline6 strings instead of
+     *                 GeoJSON LineStrings.
+     */
+    private static String syntheticResponse(int coordinateCount, boolean polyline) {
+        Random random = new Random(42);
+        double[] lats = new double[coordinateCount];
+        double[] lngs = new double[coordinateCount];
+        double lat = 21.0278;
+        double lng = 105.8342;
+        for (int i = 0; i < coordinateCount; i++) {
+            lat -= random.nextDouble() * 0.0002;
+            lng += (random.nextDouble() - 0.45) * 0.0002;
+            // Rounded to 6 decimals so both geometry formats carry the same values
+            lats[i] = Math.round(lat * 1e6) / 1e6;
+            lngs[i] = Math.round(lng * 1e6) / 1e6;
+        }
+        String[] types = { "turn", "continue", "new name", "merge", "roundabout", "end of road", "fork" };
+        String[] modifiers = { "left", "right", "slight left", "slight right", "straight" };
+
+        StringBuilder json = new StringBuilder(coordinateCount * 60);
+        json.append("{\"code\":\"Ok\",\"routes\":[{\"geometry\":");
+        appendGeometry(json, lats, lngs, 0, coordinateCount, polyline);
+        json.append(",\"legs\":[{\"steps\":[");
+        int stepLength = 100;
+        for (int from = 0, step = 0; from < coordinateCount - 1; from += stepLength, step++) {
+            int to = Math.min(coordinateCount, from + stepLength + 1);
+            if (step > 0) {
+                json.append(',');
+            }
+            String type = step == 0 ? "depart" : types[step % types.length];
+            json.append("{\"geometry\":");
+            appendGeometry(json, lats, lngs, from, to, polyline);
+            json.append(",\"maneuver\":{\"bearing_after\":180,\"bearing_before\":175,")
+                    .append("\"location\":[").append(lngs[from]).append(',').append(lats[from]).append("],")
+                    .append("\"modifier\":\"").append(modifiers[step % modifiers.length]).append("\",")
+                    .append("\"type\":\"").append(type).append('"');
+            if ("roundabout".equals(type)) {
+                json.append(",\"exit\":2");
+            }
+            json.append("},\"mode\":\"driving\",\"driving_side\":\"right\",\"name\":\"Quốc lộ ").append(step % 60)
+                    .append("\",\"intersections\":[],\"weight\":42.1,\"duration\":42.1,\"distance\":")
+                    .append(String.format(Locale.US, "%.1f", 1500.0 + step % 700)).append('}');
+        }
+        json.append(",{\"geometry\":{\"coordinates\":[]},\"maneuver\":{\"type\":\"arrive\",\"location\":[0,0]},")
+                .append("\"name\":\"\",\"distance\":0}");
+        json.append("],\"summary\":\"\",\"weight\":90000,\"duration\":90000,\"distance\":1700000}],")
+                .append("\"weight_name\":\"routability\",\"weight\":90000,\"duration\":90000,\"distance\":1700000}],")
+                .append("\"waypoints\":[]}");
+        return json.toString();
+    }
+
+    private static void appendGeometry(StringBuilder json, double[] lats, double[] lngs, int from, int to,
+            boolean polyline) {
+        if (polyline) {
+            int[] latLonE6 = new int[(to - from) * 2];
+            for (int i = from; i < to; i++) {
+                latLonE6[(i - from) * 2] = (int) Math.round(lats[i] * 1e6);
+                latLonE6[(i - from) * 2 + 1] = (int) Math.round(lngs[i] * 1e6);
+            }
+            // Encoded polylines use characters 63..126; only the backslash needs JSON escaping
+            json.append('"').append(Polyline.encode(latLonE6, 6).replace("\\", "\\\\")).append('"');
+            return;
+        }
+        json.append("{\"coordinates\":[");
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.US, "[%.6f,%.6f]", lngs[i], lats[i]));
+        }
+        json.append("],\"type\":\"LineString\"}");
+    }
+}
@@ -1,5 +1,7 @@
 package tourrouteplanner.util;
 
+import java.util.List;
+
 /**
  * Class containing constant values used throughout the application.
  * Centralizes all magic numbers, URLs, and configuration keys.
@@ -32,6 +34,18 @@ public final class Constants {
     /** JSON file name for storing the list of saved places. */
     public static final String PLACES_FILE = DATA_PATH + "places.json";
 
+    /** JSON file persisting the reverse geocoding cache between sessions. */
+    public static final String REVERSE_GEOCODE_CACHE_FILE = DATA_PATH + "reverse_geocode_cache.json";
+
+    /** Local gazetteer of named places, created by GazetteerImporter from an OSM extract. */
+    public static final String GAZETTEER_FILE = DATA_PATH + "gazetteer.bin";
+
+    /** Default OSM extract the offline router builds its road graph from. */
+    public static final String ROUTING_PBF_FILE = DATA_PATH + "vietnam-latest.osm.pbf";
+
+    /** Road graph and contraction hierarchy saved by the offline router, memory-mapped on startup. */
+    public static final String ROUTING_GRAPH_FILE = DATA_PATH + "road-graph.bin";
+
     /** Configuration file name located in src/main/resources. */
     public static final String CONFIG_FILE = "config.properties";
 
@@ -43,9 +57,34 @@ public final class Constants {
     /** Config property key for OSRM server URL. */
     public static final String CONFIG_OSRM_URL = "osrm.server.url";
 
+    /**
+     * Config property key for the route geometry format requested from OSRM:
+     * "polyline6" (default, compact encoded polyline) or "geojson".
+     */
+    public static final String CONFIG_OSRM_GEOMETRY_FORMAT = "osrm.geometry.format";
+
+    /**
+     * Config property key selecting the routing backend: "osrm" (default) or
+     * "offline" (in-process routing on the road network of an OSM extract).
+     */
+    public static final String CONFIG_ROUTING_PROVIDER = "routing.provider";
+
+    /** Config property key for the OSM extract used by offline routing. */
+    public static final String CONFIG_ROUTING_PBF_FILE = "routing.pbf.file";
+
+    /** Config property key for the road graph file saved and loaded by offline routing. */
+    public static final String CONFIG_ROUTING_GRAPH_FILE = "routing.graph.file";
+
     /** Config property key for Nominatim server URL. */
     public static final String CONFIG_NOMINATIM_URL = "nominatim.server.url";
 
+    /**
+     * Config property key selecting the geocoding backend: "nominatim" (default),
+     * "offline" (local gazetteer only) or "hybrid" (gazetteer autocomplete with
+     * Nominatim search and offline fallback).
+     */
+    public static final String CONFIG_GEOCODING_PROVIDER = "geocoding.provider";
+
     /** Config property key for MapTiler API key. */
     public static final String CONFIG_MAPTILER_KEY = "maptiler.api.key";
 
@@ -68,6 +107,48 @@ public final class Constants {
     /** HTTP connection timeout in milliseconds. */
     public static final int HTTP_TIMEOUT_MS = 10000;
 
+    /**
+     * Config key suffix for the sustained request rate of a backend, in requests
+     * per second, e.g. "nominatim.rate.limit.per.second". Zero disables limiting.
+     */
+    public static final String CONFIG_RATE_LIMIT_SUFFIX = ".rate.limit.per.second";
+
+    /** Config key suffix for the number of requests a backend may receive back to back. */
+    public static final String CONFIG_RATE_BURST_SUFFIX = ".rate.limit.burst";
+
+    /** Config key suffix for the number of retries after HTTP 429/503. */
+    public static final String CONFIG_MAX_RETRIES_SUFFIX = ".retry.max";
+
+    /** Config key suffix for the consecutive failures that open a backend's circuit. */
+    public static final String CONFIG_CIRCUIT_THRESHOLD_SUFFIX = ".circuit.failure.threshold";
+
+    /** Config key suffix for how long an open circuit fails fast, in seconds. */
+    public static final String CONFIG_CIRCUIT_OPEN_SUFFIX = ".circuit.open.seconds";
+
+    /**
+     * Default request rate per backend (requests per second), matching the usage
+     * policies of the public Nominatim and OSRM demo servers.
+     */
+    public static final double DEFAULT_RATE_LIMIT_PER_SECOND = 1.0;
+
+    /** Default burst size per backend. */
+    public static final int DEFAULT_RATE_BURST = 1;
+
+    /** Default number of retries after HTTP 429/503. */
+    public static final int DEFAULT_MAX_RETRIES = 2;
+
+    /** Base delay of the exponential retry backoff in milliseconds. */
+    public static final long RETRY_BASE_BACKOFF_MS = 500;
+
+    /** Maximum delay of a single retry in milliseconds; longer Retry-After values are not waited for. */
+    public static final long RETRY_MAX_BACKOFF_MS = 8000;
+
+    /** Default number of consecutive failures that open a backend's circuit. */
+    public static final int DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 5;
+
+    /** Default time an open circuit fails fast before a trial request, in seconds. */
+    public static final int DEFAULT_CIRCUIT_OPEN_SECONDS = 30;
+
     // ==================== Map Configuration ====================
 
     /** Default map center latitude (Hanoi, Vietnam). */
@@ -96,9 +177,68 @@ public final class Constants {
     /** Maximum number of search results to fetch. */
     public static final int MAX_SEARCH_RESULTS = 20;
 
+    /** Maximum number of distinct search queries kept in the search cache. */
+    public static final int SEARCH_CACHE_MAX_ENTRIES = 256;
+
+    /** Time-to-live of cached search results in milliseconds (30 minutes). */
+    public static final long SEARCH_CACHE_TTL_MS = 30 * 60 * 1000L;
+
+    /** Maximum number of place geometries kept in the lazy geometry cache. */
+    public static final int GEOMETRY_CACHE_MAX_ENTRIES = 32;
+
+    /** Time-to-live of cached place geometries in milliseconds (1 hour). */
+    public static final long GEOMETRY_CACHE_TTL_MS = 60 * 60 * 1000L;
+
+    /**
+     * Geohash precision of a reverse geocoding cache cell (about 38 m x 19 m),
+     * matching the building-level detail of the zoom=18 Nominatim request.
+     */
+    public static final int REVERSE_GEOCODE_GEOHASH_PRECISION = 8;
+
+    /** Maximum number of cells kept in the reverse geocoding cache. */
+    public static final int REVERSE_GEOCODE_CACHE_MAX_ENTRIES = 5000;
+
+    /** Time-to-live of cached reverse geocoding results in milliseconds (30 days). */
+    public static final long REVERSE_GEOCODE_CACHE_TTL_MS = 30L * 24 * 60 * 60 * 1000;
+
+    /** Maximum number of route legs kept in the route leg cache. */
+    public static final int ROUTE_LEG_CACHE_MAX_ENTRIES = 1024;
+
+    /** Time-to-live of cached route legs in milliseconds (30 minutes). */
+    public static final long ROUTE_CACHE_TTL_MS = 30 * 60 * 1000L;
+
+    /**
+     * Sources (and destinations) per OSRM /table request. A tile then has at
+     * most 100 coordinates, the default max-table-size of osrm-routed.
+     */
+    public static final int MATRIX_TILE_SIZE = 50;
+
+    /** Maximum number of /table tiles requested at the same time. */
+    public static final int MATRIX_PARALLEL_REQUESTS = 4;
+
+    /** Time budget of the stop order optimization in milliseconds. */
+    public static final long TOUR_OPTIMIZATION_TIME_BUDGET_MS = 800;
+
+    /** Start of each itinerary day in minutes after midnight (08:00). */
+    public static final int ITINERARY_DAY_START_MINUTE = 8 * 60;
+
+    /** Default time per itinerary day for driving and visits, in minutes. */
+    public static final int ITINERARY_DAY_BUDGET_MINUTES = 10 * 60;
+
+    /** Maximum number of days an itinerary is planned over. */
+    public static final int ITINERARY_MAX_DAYS = 7;
+
     /** Minimum places required to calculate a route. */
     public static final int MIN_ROUTE_PLACES = 2;
 
+    /**
+     * Simplification tolerances of the levels of detail a route is drawn
+     * with, in meters, from full detail to coarsest. The map shows the
+     * coarsest level whose tolerance stays under half a pixel. Levels are
+     * identified by their index, so the list is unmodifiable.
+     */
+    public static final List<Double> ROUTE_LOD_TOLERANCES_METERS = List.of(0.0, 2.0, 8.0, 32.0, 128.0, 512.0);
+
     // ==================== UI Configuration ====================
 
     /** Dark mode CSS class name. */
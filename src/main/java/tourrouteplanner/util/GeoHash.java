@@ -0,0 +1,67 @@
+package tourrouteplanner.util;
+
+/**
+ * Utility class for encoding coordinates as geohash strings.
+ * A geohash names a rectangular cell; every extra character narrows the cell,
+ * so nearby points share a key at a given precision.
+ */
+public final class GeoHash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private GeoHash() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Encodes a coordinate as a geohash.
+     * Precision 7 is a cell of about 153 m x 153 m, precision 8 about
+     * 38 m x 19 m, precision 9 about 5 m x 5 m.
+     *
+     * @param latitude  Latitude in degrees.
+     * @param longitude Longitude in degrees.
+     * @param precision Number of characters of the geohash (1 to 12).
+     * @return The geohash of the cell containing the coordinate.
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        if (precision < 1 || precision > 12) {
+            throw new IllegalArgumentException("Geohash precision must be between 1 and 12.");
+        }
+        double minLat = -90.0, maxLat = 90.0;
+        double minLon = -180.0, maxLon = 180.0;
+        char[] hash = new char[precision];
+        boolean evenBit = true;
+        int bit = 0;
+        int charIndex = 0;
+
+        for (int i = 0; i < precision; ) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) {
+                    charIndex = (charIndex << 1) | 1;
+                    minLon = mid;
+                } else {
+                    charIndex = charIndex << 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    charIndex = (charIndex << 1) | 1;
+                    minLat = mid;
+                } else {
+                    charIndex = charIndex << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash[i++] = BASE32[charIndex];
+                bit = 0;
+                charIndex = 0;
+            }
+        }
+        return new String(hash);
+    }
+}
@@ -23,6 +23,28 @@ public class InstructionFormatter {
 
         String type = maneuverObj.has("type") ? maneuverObj.get("type").getAsString() : "";
         String modifier = maneuverObj.has("modifier") ? maneuverObj.get("modifier").getAsString() : "";
+        Integer exit = maneuverObj.has("exit") && !maneuverObj.get("exit").isJsonNull()
+                ? maneuverObj.get("exit").getAsInt()
+                : null;
+        return generateInstruction(type, modifier, exit, streetName, rotaryName);
+    }
+
+    /**
+     * Generates a human-readable instruction from already extracted OSRM
+     * maneuver fields, e.g. by a streaming parser.
+     *
+     * @param type       The maneuver type (e.g. "turn"), or empty.
+     * @param modifier   The maneuver modifier (e.g. "left"), or empty.
+     * @param exit       The roundabout exit number, or null.
+     * @param streetName The name of the street (can be empty).
+     * @param rotaryName The name of the roundabout/rotary (can be empty).
+     * @return A formatted instruction string.
+     */
+    public String generateInstruction(String type, String modifier, Integer exit, String streetName,
+            String rotaryName) {
+        type = type != null ? type : "";
+        modifier = modifier != null ? modifier : "";
+        streetName = streetName != null ? streetName : "";
 
         StringBuilder instruction = new StringBuilder();
 
@@ -129,8 +151,8 @@ public class InstructionFormatter {
                 } else {
                     instruction.append("roundabout");
                 }
-                if (maneuverObj.has("exit") && !maneuverObj.get("exit").isJsonNull()) {
-                    instruction.append(" and take exit ").append(maneuverObj.get("exit").getAsInt());
+                if (exit != null) {
+                    instruction.append(" and take exit ").append(exit);
                 }
                 if (streetName != null && !streetName.isEmpty()
                         && (rotaryName == null || rotaryName.isEmpty() || !streetName.equals(rotaryName))) {
@@ -0,0 +1,118 @@
+package tourrouteplanner.util;
+
+import java.util.Arrays;
+
+/**
+ * Douglas-Peucker simplification of lines given as packed E6 coordinates
+ * (latitude, longitude pairs in microdegrees).
+ * <p>
+ * Instead of simplifying once per tolerance, {@link #significance} runs the
+ * subdivision once and records for every vertex the largest tolerance at
+ * which Douglas-Peucker still keeps it. {@link #simplify} then yields the
+ * line for any tolerance with a single filtering pass, so several levels of
+ * detail cost one subdivision in total.
+ */
+public final class LineSimplifier {
+
+    /** Meters per microdegree of latitude. */
+    private static final double METERS_PER_E6 = 6371008.8 * Math.PI / 180 / 1e6;
+
+    private LineSimplifier() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Computes the significance of every vertex of a line: Douglas-Peucker
+     * with a tolerance below this value keeps the vertex. The end points are
+     * always kept and get {@link Float#POSITIVE_INFINITY}.
+     *
+     * @param latLonE6 The line as latitude, longitude pairs in microdegrees.
+     * @return The significance of each vertex, in meters.
+     */
+    public static float[] significance(int[] latLonE6) {
+        int count = latLonE6.length / 2;
+        float[] significance = new float[count];
+        if (count == 0) {
+            return significance;
+        }
+        significance[0] = Float.POSITIVE_INFINITY;
+        significance[count - 1] = Float.POSITIVE_INFINITY;
+        if (count < 3) {
+            return significance;
+        }
+        double cos = Math.cos(Math.toRadians(latLonE6[0] * 1e-6));
+
+        // Ranges still to split, as (first, last) vertex pairs; a split vertex
+        // is never more significant than the vertex whose split created its range
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            if (last - first < 2) {
+                continue;
+            }
+            double ax = latLonE6[first * 2 + 1] * cos;
+            double ay = latLonE6[first * 2];
+            double dx = latLonE6[last * 2 + 1] * cos - ax;
+            double dy = latLonE6[last * 2] - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            int farthest = first + 1;
+            double farthestSquared = -1;
+            for (int i = first + 1; i < last; i++) {
+                double px = latLonE6[i * 2 + 1] * cos - ax;
+                double py = latLonE6[i * 2] - ay;
+                double t = lengthSquared > 0 ? Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared)) : 0;
+                double ex = px - t * dx;
+                double ey = py - t * dy;
+                double distanceSquared = ex * ex + ey * ey;
+                if (distanceSquared > farthestSquared) {
+                    farthestSquared = distanceSquared;
+                    farthest = i;
+                }
+            }
+            float bound = Math.min(significance[first], significance[last]);
+            significance[farthest] = Math.min(bound, (float) (Math.sqrt(farthestSquared) * METERS_PER_E6));
+
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = first;
+            stack[top++] = farthest;
+            stack[top++] = farthest;
+            stack[top++] = last;
+        }
+        return significance;
+    }
+
+    /**
+     * Simplifies a line to a tolerance.
+     *
+     * @param latLonE6        The line as latitude, longitude pairs in
+     *                        microdegrees.
+     * @param significance    The vertex significance from
+     *                        {@link #significance}.
+     * @param toleranceMeters The largest distance a removed vertex may have
+     *                        from the simplified line; 0 keeps every vertex.
+     * @return The kept vertices as latitude, longitude pairs in microdegrees.
+     */
+    public static int[] simplify(int[] latLonE6, float[] significance, double toleranceMeters) {
+        int kept = 0;
+        for (float value : significance) {
+            if (value > toleranceMeters || toleranceMeters <= 0) {
+                kept++;
+            }
+        }
+        int[] simplified = new int[kept * 2];
+        int next = 0;
+        for (int i = 0; i < significance.length; i++) {
+            if (significance[i] > toleranceMeters || toleranceMeters <= 0) {
+                simplified[next++] = latLonE6[i * 2];
+                simplified[next++] = latLonE6[i * 2 + 1];
+            }
+        }
+        return simplified;
+    }
+}
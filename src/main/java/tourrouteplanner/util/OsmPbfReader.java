@@ -0,0 +1,447 @@
+package tourrouteplanner.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Minimal streaming reader for OpenStreetMap {@code .osm.pbf} extracts, such as
+ * the Vietnam extract mounted by docker-compose.yml for Nominatim.
+ * Decodes nodes (plain and dense) and ways with their tags; relations,
+ * metadata and non-zlib blobs are skipped. Only the parts of the protobuf
+ * wire format used by the OSM PBF schema are implemented, so no protobuf
+ * dependency is needed.
+ */
+public class OsmPbfReader {
+
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * Receives decoded OSM elements. Elements arrive in file order, which for
+     * standard extracts means all nodes before all ways.
+     */
+    public interface Handler {
+        /**
+         * Called for every node. Untagged nodes receive an empty, immutable map.
+         */
+        default void node(long id, double latitude, double longitude, Map<String, String> tags) {
+        }
+
+        /**
+         * Called for every way with its node references in order.
+         */
+        default void way(long id, long[] nodeRefs, Map<String, String> tags) {
+        }
+
+        /** Whether node groups should be decoded at all. */
+        default boolean wantsNodes() {
+            return true;
+        }
+
+        /** Whether way groups should be decoded at all. */
+        default boolean wantsWays() {
+            return true;
+        }
+    }
+
+    private final File file;
+
+    /**
+     * Creates a reader for the given PBF file.
+     *
+     * @param file The {@code .osm.pbf} file.
+     */
+    public OsmPbfReader(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the whole file and passes every decoded element to the handler.
+     *
+     * @param handler Receives nodes and ways.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public void read(Handler handler) throws IOException {
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            while (true) {
+                int headerSize;
+                try {
+                    headerSize = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (headerSize <= 0 || headerSize > MAX_HEADER_SIZE) {
+                    throw new IOException("Invalid PBF blob header size: " + headerSize);
+                }
+                byte[] header = new byte[headerSize];
+                in.readFully(header);
+
+                String type = null;
+                int dataSize = 0;
+                ProtoReader headerReader = new ProtoReader(header, 0, header.length);
+                while (headerReader.hasMore()) {
+                    int tag = headerReader.readTag();
+                    switch (tag >>> 3) {
+                        case 1 -> type = headerReader.readString();
+                        case 3 -> dataSize = (int) headerReader.readVarint();
+                        default -> headerReader.skip(tag);
+                    }
+                }
+                if (dataSize <= 0 || dataSize > MAX_BLOB_SIZE) {
+                    throw new IOException("Invalid PBF blob size: " + dataSize);
+                }
+                byte[] blob = new byte[dataSize];
+                in.readFully(blob);
+
+                if ("OSMData".equals(type)) {
+                    byte[] block = decodeBlob(blob, inflater);
+                    if (block != null) {
+                        readPrimitiveBlock(block, handler);
+                    }
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private byte[] decodeBlob(byte[] blob, Inflater inflater) throws IOException {
+        ProtoReader reader = new ProtoReader(blob, 0, blob.length);
+        byte[] raw = null;
+        int rawSize = 0;
+        int zlibStart = -1;
+        int zlibLength = 0;
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> raw = reader.readBytes();
+                case 2 -> rawSize = (int) reader.readVarint();
+                case 3 -> {
+                    zlibLength = (int) reader.readVarint();
+                    zlibStart = reader.pos;
+                    reader.pos += zlibLength;
+                }
+                default -> reader.skip(tag);
+            }
+        }
+        if (raw != null) {
+            return raw;
+        }
+        if (zlibStart < 0) {
+            return null; // lzma/zstd blobs are not supported and skipped
+        }
+        byte[] block = new byte[rawSize];
+        inflater.reset();
+        inflater.setInput(blob, zlibStart, zlibLength);
+        try {
+            int inflated = 0;
+            while (inflated < rawSize && !inflater.finished()) {
+                int n = inflater.inflate(block, inflated, rawSize - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != rawSize) {
+                throw new IOException("Truncated PBF blob: " + inflated + " of " + rawSize + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt zlib data in PBF blob", e);
+        }
+        return block;
+    }
+
+    private void readPrimitiveBlock(byte[] block, Handler handler) {
+        ProtoReader reader = new ProtoReader(block, 0, block.length);
+        String[] strings = new String[0];
+        long granularity = 100;
+        long latOffset = 0;
+        long lonOffset = 0;
+        int[] groupStarts = new int[8];
+        int[] groupEnds = new int[8];
+        int groupCount = 0;
+
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> {
+                    int length = (int) reader.readVarint();
+                    strings = readStringTable(block, reader.pos, reader.pos + length);
+                    reader.pos += length;
+                }
+                case 2 -> {
+                    int length = (int) reader.readVarint();
+                    if (groupCount == groupStarts.length) {
+                        groupStarts = Arrays.copyOf(groupStarts, groupCount * 2);
+                        groupEnds = Arrays.copyOf(groupEnds, groupCount * 2);
+                    }
+                    groupStarts[groupCount] = reader.pos;
+                    groupEnds[groupCount++] = reader.pos + length;
+                    reader.pos += length;
+                }
+                case 17 -> granularity = reader.readVarint();
+                case 19 -> latOffset = reader.readVarint();
+                case 20 -> lonOffset = reader.readVarint();
+                default -> reader.skip(tag);
+            }
+        }
+
+        BlockContext context = new BlockContext(strings, granularity, latOffset, lonOffset);
+        for (int g = 0; g < groupCount; g++) {
+            ProtoReader group = new ProtoReader(block, groupStarts[g], groupEnds[g]);
+            while (group.hasMore()) {
+                int tag = group.readTag();
+                int field = tag >>> 3;
+                if (field == 1 && handler.wantsNodes()) {
+                    readNode(group.readMessage(), context, handler);
+                } else if (field == 2 && handler.wantsNodes()) {
+                    readDenseNodes(group.readMessage(), context, handler);
+                } else if (field == 3 && handler.wantsWays()) {
+                    readWay(group.readMessage(), context, handler);
+                } else {
+                    group.skip(tag);
+                }
+            }
+        }
+    }
+
+    private String[] readStringTable(byte[] block, int start, int end) {
+        ProtoReader reader = new ProtoReader(block, start, end);
+        String[] strings = new String[256];
+        int count = 0;
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            if ((tag >>> 3) == 1) {
+                if (count == strings.length) {
+                    strings = Arrays.copyOf(strings, count * 2);
+                }
+                strings[count++] = reader.readString();
+            } else {
+                reader.skip(tag);
+            }
+        }
+        return Arrays.copyOf(strings, count);
+    }
+
+    private void readNode(ProtoReader reader, BlockContext context, Handler handler) {
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        long[] keys = null;
+        long[] values = null;
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> id = reader.readSignedVarint();
+                case 2 -> keys = reader.readPackedVarints(false, false);
+                case 3 -> values = reader.readPackedVarints(false, false);
+                case 8 -> lat = reader.readSignedVarint();
+                case 9 -> lon = reader.readSignedVarint();
+                default -> reader.skip(tag);
+            }
+        }
+        handler.node(id, context.latitude(lat), context.longitude(lon), context.tags(keys, values));
+    }
+
+    private void readDenseNodes(ProtoReader reader, BlockContext context, Handler handler) {
+        long[] ids = null;
+        long[] lats = null;
+        long[] lons = null;
+        long[] keysVals = null;
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> ids = reader.readPackedVarints(true, true);
+                case 8 -> lats = reader.readPackedVarints(true, true);
+                case 9 -> lons = reader.readPackedVarints(true, true);
+                case 10 -> keysVals = reader.readPackedVarints(false, false);
+                default -> reader.skip(tag);
+            }
+        }
+        if (ids == null || lats == null || lons == null) {
+            return;
+        }
+        int kv = 0;
+        for (int i = 0; i < ids.length; i++) {
+            Map<String, String> tags = Collections.emptyMap();
+            if (keysVals != null && kv < keysVals.length) {
+                if (keysVals[kv] != 0) {
+                    tags = new HashMap<>(4);
+                    while (kv + 1 < keysVals.length && keysVals[kv] != 0) {
+                        tags.put(context.strings[(int) keysVals[kv]], context.strings[(int) keysVals[kv + 1]]);
+                        kv += 2;
+                    }
+                }
+                kv++; // skip the 0 delimiter
+            }
+            handler.node(ids[i], context.latitude(lats[i]), context.longitude(lons[i]), tags);
+        }
+    }
+
+    private void readWay(ProtoReader reader, BlockContext context, Handler handler) {
+        long id = 0;
+        long[] keys = null;
+        long[] values = null;
+        long[] refs = null;
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> id = reader.readVarint();
+                case 2 -> keys = reader.readPackedVarints(false, false);
+                case 3 -> values = reader.readPackedVarints(false, false);
+                case 8 -> refs = reader.readPackedVarints(true, true);
+                default -> reader.skip(tag);
+            }
+        }
+        handler.way(id, refs != null ? refs : new long[0], context.tags(keys, values));
+    }
+
+    /**
+     * Per-block decoding parameters shared by all groups of a block.
+     */
+    private static final class BlockContext {
+        final String[] strings;
+        final long granularity;
+        final long latOffset;
+        final long lonOffset;
+
+        BlockContext(String[] strings, long granularity, long latOffset, long lonOffset) {
+            this.strings = strings;
+            this.granularity = granularity;
+            this.latOffset = latOffset;
+            this.lonOffset = lonOffset;
+        }
+
+        double latitude(long raw) {
+            return 1e-9 * (latOffset + granularity * raw);
+        }
+
+        double longitude(long raw) {
+            return 1e-9 * (lonOffset + granularity * raw);
+        }
+
+        Map<String, String> tags(long[] keys, long[] values) {
+            if (keys == null || values == null || keys.length == 0) {
+                return Collections.emptyMap();
+            }
+            Map<String, String> tags = new HashMap<>(keys.length * 2);
+            for (int i = 0; i < keys.length && i < values.length; i++) {
+                tags.put(strings[(int) keys[i]], strings[(int) values[i]]);
+            }
+            return tags;
+        }
+    }
+
+    /**
+     * Cursor over a protobuf-encoded byte range.
+     */
+    private static final class ProtoReader {
+        final byte[] buffer;
+        int pos;
+        final int limit;
+
+        ProtoReader(byte[] buffer, int start, int limit) {
+            this.buffer = buffer;
+            this.pos = start;
+            this.limit = limit;
+        }
+
+        boolean hasMore() {
+            return pos < limit;
+        }
+
+        int readTag() {
+            return (int) readVarint();
+        }
+
+        long readVarint() {
+            long result = 0;
+            int shift = 0;
+            while (true) {
+                byte b = buffer[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+                shift += 7;
+            }
+        }
+
+        long readSignedVarint() {
+            long raw = readVarint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        String readString() {
+            int length = (int) readVarint();
+            String value = new String(buffer, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        byte[] readBytes() {
+            int length = (int) readVarint();
+            byte[] value = Arrays.copyOfRange(buffer, pos, pos + length);
+            pos += length;
+            return value;
+        }
+
+        ProtoReader readMessage() {
+            int length = (int) readVarint();
+            ProtoReader message = new ProtoReader(buffer, pos, pos + length);
+            pos += length;
+            return message;
+        }
+
+        /**
+         * Reads a packed repeated varint field.
+         *
+         * @param zigzag Whether values are sint (zigzag) encoded.
+         * @param delta  Whether values are delta coded and must be accumulated.
+         */
+        long[] readPackedVarints(boolean zigzag, boolean delta) {
+            int length = (int) readVarint();
+            int end = pos + length;
+            long[] values = new long[Math.max(4, length / 2)];
+            int count = 0;
+            long previous = 0;
+            while (pos < end) {
+                long value = zigzag ? readSignedVarint() : readVarint();
+                if (delta) {
+                    value += previous;
+                    previous = value;
+                }
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, count * 2);
+                }
+                values[count++] = value;
+            }
+            return count == values.length ? values : Arrays.copyOf(values, count);
+        }
+
+        void skip(int tag) {
+            switch (tag & 7) {
+                case 0 -> readVarint();
+                case 1 -> pos += 8;
+                case 2 -> {
+                    int length = (int) readVarint();
+                    pos += length;
+                }
+                case 5 -> pos += 4;
+                default -> throw new IllegalStateException("Unsupported protobuf wire type: " + (tag & 7));
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package tourrouteplanner.util;
+
+/**
+ * Encoder and decoder for the Google encoded polyline format, as returned by
+ * OSRM with {@code geometries=polyline} (precision 5) or
+ * {@code geometries=polyline6} (precision 6).
+ * <p>
+ * Each vertex is a pair of zigzag-encoded varints holding the difference to the
+ * previous vertex, written as base64-like characters offset by 63. Values are
+ * handed to the consumer as E6 integers, so decoding allocates nothing.
+ */
+public final class Polyline {
+
+    private Polyline() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Receives decoded vertices in order.
+     */
+    @FunctionalInterface
+    public interface E6Consumer {
+        void accept(int latitudeE6, int longitudeE6);
+    }
+
+    /**
+     * Decodes an encoded polyline.
+     *
+     * @param encoded   The encoded polyline.
+     * @param precision Number of decimal digits encoded (5 or 6).
+     * @param consumer  Receives each vertex as microdegrees.
+     * @return The number of vertices decoded.
+     * @throws IllegalArgumentException If the polyline is truncated or contains
+     *                                  invalid characters.
+     */
+    public static int decode(CharSequence encoded, int precision, E6Consumer consumer) {
+        if (precision < 0 || precision > 6) {
+            throw new IllegalArgumentException("Polyline precision must be between 0 and 6.");
+        }
+        int scale = 1;
+        for (int i = precision; i < 6; i++) {
+            scale *= 10;
+        }
+        int length = encoded.length();
+        int index = 0;
+        long lat = 0;
+        long lon = 0;
+        int count = 0;
+        while (index < length) {
+            long result = 0;
+            int shift = 0;
+            int b;
+            // Latitude delta
+            do {
+                if (index >= length) {
+                    throw new IllegalArgumentException("Truncated polyline at index " + index);
+                }
+                b = encoded.charAt(index++) - 63;
+                if (b < 0 || b > 63 || shift > 30) {
+                    throw new IllegalArgumentException("Invalid polyline character at index " + (index - 1));
+                }
+                result |= (long) (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            lat += (result >>> 1) ^ -(result & 1);
+
+            // Longitude delta
+            result = 0;
+            shift = 0;
+            do {
+                if (index >= length) {
+                    throw new IllegalArgumentException("Truncated polyline at index " + index);
+                }
+                b = encoded.charAt(index++) - 63;
+                if (b < 0 || b > 63 || shift > 30) {
+                    throw new IllegalArgumentException("Invalid polyline character at index " + (index - 1));
+                }
+                result |= (long) (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            lon += (result >>> 1) ^ -(result & 1);
+
+            consumer.accept((int) (lat * scale), (int) (lon * scale));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Encodes vertices given as interleaved E6 latitude/longitude pairs.
+     *
+     * @param latLonE6  Interleaved latitude/longitude pairs in microdegrees.
+     * @param precision Number of decimal digits to encode (5 or 6).
+     * @return The encoded polyline.
+     */
+    public static String encode(int[] latLonE6, int precision) {
+        if (precision < 0 || precision > 6) {
+            throw new IllegalArgumentException("Polyline precision must be between 0 and 6.");
+        }
+        int scale = 1;
+        for (int i = precision; i < 6; i++) {
+            scale *= 10;
+        }
+        StringBuilder out = new StringBuilder(latLonE6.length * 4);
+        long previousLat = 0;
+        long previousLon = 0;
+        for (int i = 0; i + 1 < latLonE6.length; i += 2) {
+            long lat = Math.round((double) latLonE6[i] / scale);
+            long lon = Math.round((double) latLonE6[i + 1] / scale);
+            appendValue(out, lat - previousLat);
+            appendValue(out, lon - previousLon);
+            previousLat = lat;
+            previousLon = lon;
+        }
+        return out.toString();
+    }
+
+    private static void appendValue(StringBuilder out, long delta) {
+        long value = delta < 0 ? ~(delta << 1) : delta << 1;
+        while (value >= 0x20) {
+            out.append((char) ((0x20 | (value & 0x1f)) + 63));
+            value >>>= 5;
+        }
+        out.append((char) (value + 63));
+    }
+}
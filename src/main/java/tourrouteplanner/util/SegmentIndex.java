@@ -0,0 +1,402 @@
+package tourrouteplanner.util;
+
+import java.util.Arrays;
+
+/**
+ * Static spatial index answering "which segment is nearest to this point" over
+ * a fixed set of line segments, such as the roads of a road graph or the
+ * pieces of a drawn route.
+ * <p>
+ * The index is a packed Hilbert R-tree. Segments are sorted along a Hilbert
+ * curve by their midpoints and grouped {@value #NODE_SIZE} at a time into
+ * nodes, which are grouped again up to a single root. Only the nodes' bounding
+ * boxes and the segment order are stored, about five bytes per segment; the
+ * coordinates stay with their {@link Segments} owner. A query visits nodes and
+ * segments in order of their distance to the point, so it touches O(log n)
+ * nodes.
+ * <p>
+ * Distances use an equirectangular projection around the query point, which
+ * is accurate to well under a meter over the distances a snap covers.
+ */
+public final class SegmentIndex {
+
+    /** Children per tree node. */
+    private static final int NODE_SIZE = 16;
+    /** Meters per microdegree of latitude. */
+    private static final double METERS_PER_E6 = 6_371_008.8 * Math.PI / 180 / 1e6;
+    /**
+     * Largest cell coordinate of the Hilbert curve grid; 15 bits per axis keep
+     * curve positions below 2^30.
+     */
+    private static final int HILBERT_GRID_MAX = (1 << 15) - 1;
+
+    /**
+     * Segment coordinates in microdegrees, by segment number from 0 to
+     * {@code size() - 1}.
+     */
+    public interface Segments {
+        /** Gets the number of segments. */
+        int size();
+
+        /** Gets the latitude of the start of a segment. */
+        int getStartLatitudeE6(int segment);
+
+        /** Gets the longitude of the start of a segment. */
+        int getStartLongitudeE6(int segment);
+
+        /** Gets the latitude of the end of a segment. */
+        int getEndLatitudeE6(int segment);
+
+        /** Gets the longitude of the end of a segment. */
+        int getEndLongitudeE6(int segment);
+    }
+
+    private final Segments segments;
+    /** Segment numbers in Hilbert order; the tree's leaves. */
+    private final int[] order;
+    /** Bounding boxes of the tree nodes, level by level from the leaves' parents up to the root. */
+    private final int[] minLatitudes;
+    private final int[] minLongitudes;
+    private final int[] maxLatitudes;
+    private final int[] maxLongitudes;
+    /** First node of each level; one extra entry holds the node count. */
+    private final int[] levelStarts;
+
+    /**
+     * Builds an index over segments whose coordinates must not change
+     * afterwards.
+     *
+     * @param segments The segments.
+     */
+    public SegmentIndex(Segments segments) {
+        this.segments = segments;
+        int count = segments.size();
+        order = hilbertOrder(segments, count);
+
+        int nodeCount = 0;
+        int levels = 0;
+        for (int size = count; size > 0; levels++) {
+            size = (size + NODE_SIZE - 1) / NODE_SIZE;
+            nodeCount += size;
+            if (size == 1) {
+                levels++;
+                break;
+            }
+        }
+        levelStarts = new int[levels + 1];
+        minLatitudes = new int[nodeCount];
+        minLongitudes = new int[nodeCount];
+        maxLatitudes = new int[nodeCount];
+        maxLongitudes = new int[nodeCount];
+
+        int childCount = count;
+        int node = 0;
+        for (int level = 0; level < levels; level++) {
+            levelStarts[level] = node;
+            int firstChild = level == 0 ? 0 : levelStarts[level - 1];
+            for (int child = 0; child < childCount; child += NODE_SIZE, node++) {
+                int end = Math.min(child + NODE_SIZE, childCount);
+                int minLatitude = Integer.MAX_VALUE;
+                int minLongitude = Integer.MAX_VALUE;
+                int maxLatitude = Integer.MIN_VALUE;
+                int maxLongitude = Integer.MIN_VALUE;
+                for (int c = child; c < end; c++) {
+                    if (level == 0) {
+                        int segment = order[c];
+                        int latitudeA = segments.getStartLatitudeE6(segment);
+                        int latitudeB = segments.getEndLatitudeE6(segment);
+                        int longitudeA = segments.getStartLongitudeE6(segment);
+                        int longitudeB = segments.getEndLongitudeE6(segment);
+                        minLatitude = Math.min(minLatitude, Math.min(latitudeA, latitudeB));
+                        maxLatitude = Math.max(maxLatitude, Math.max(latitudeA, latitudeB));
+                        minLongitude = Math.min(minLongitude, Math.min(longitudeA, longitudeB));
+                        maxLongitude = Math.max(maxLongitude, Math.max(longitudeA, longitudeB));
+                    } else {
+                        int other = firstChild + c;
+                        minLatitude = Math.min(minLatitude, minLatitudes[other]);
+                        maxLatitude = Math.max(maxLatitude, maxLatitudes[other]);
+                        minLongitude = Math.min(minLongitude, minLongitudes[other]);
+                        maxLongitude = Math.max(maxLongitude, maxLongitudes[other]);
+                    }
+                }
+                minLatitudes[node] = minLatitude;
+                minLongitudes[node] = minLongitude;
+                maxLatitudes[node] = maxLatitude;
+                maxLongitudes[node] = maxLongitude;
+            }
+            childCount = (childCount + NODE_SIZE - 1) / NODE_SIZE;
+        }
+        levelStarts[levels] = node;
+    }
+
+    /** Gets the number of indexed segments. */
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * Finds the segment nearest to a point.
+     *
+     * @return The nearest segment, or null if the index is empty.
+     */
+    public Match nearest(double latitude, double longitude) {
+        return nearest(latitude, longitude, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Finds the segment nearest to a point, if it is within a distance.
+     *
+     * @param maxMeters Largest distance to accept, in meters.
+     * @return The nearest segment, or null if none is within
+     *         {@code maxMeters}.
+     */
+    public Match nearest(double latitude, double longitude, double maxMeters) {
+        int levels = levelStarts.length - 1;
+        if (levels == 0) {
+            return null;
+        }
+        double latitudeE6 = latitude * 1e6;
+        double longitudeE6 = longitude * 1e6;
+        double scale = Math.cos(Math.toRadians(latitude));
+        double maxE6 = maxMeters / METERS_PER_E6;
+        double maxSquared = maxE6 * maxE6;
+
+        // Entries: tree nodes as their index, segments as ~(position in order)
+        DistanceHeap heap = new DistanceHeap();
+        heap.push(0, levelStarts[levels - 1]);
+        while (!heap.isEmpty()) {
+            double distanceSquared = heap.peekDistance();
+            int entry = heap.pop();
+            if (distanceSquared > maxSquared) {
+                return null;
+            }
+            if (entry < 0) {
+                return match(order[~entry], latitudeE6, longitudeE6, scale);
+            }
+            int level = levelOf(entry);
+            int firstChild = (entry - levelStarts[level]) * NODE_SIZE;
+            if (level == 0) {
+                int end = Math.min(firstChild + NODE_SIZE, order.length);
+                for (int position = firstChild; position < end; position++) {
+                    double[] projection = project(order[position], latitudeE6, longitudeE6, scale);
+                    heap.push(projection[3], ~position);
+                }
+            } else {
+                int childLevelStart = levelStarts[level - 1];
+                int end = Math.min(childLevelStart + firstChild + NODE_SIZE, levelStarts[level]);
+                for (int child = childLevelStart + firstChild; child < end; child++) {
+                    heap.push(boxDistanceSquared(child, latitudeE6, longitudeE6, scale), child);
+                }
+            }
+        }
+        return null;
+    }
+
+    private int levelOf(int node) {
+        int level = 0;
+        while (levelStarts[level + 1] <= node) {
+            level++;
+        }
+        return level;
+    }
+
+    private double boxDistanceSquared(int node, double latitudeE6, double longitudeE6, double scale) {
+        double dy = Math.max(0, Math.max(minLatitudes[node] - latitudeE6, latitudeE6 - maxLatitudes[node]));
+        double dx = Math.max(0, Math.max(minLongitudes[node] - longitudeE6, longitudeE6 - maxLongitudes[node]))
+                * scale;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Projects a point onto a segment.
+     *
+     * @return The fraction along the segment, the nearest point's latitude
+     *         and longitude (microdegrees) and the squared distance (in
+     *         microdegrees of latitude).
+     */
+    private double[] project(int segment, double latitudeE6, double longitudeE6, double scale) {
+        double latitudeA = segments.getStartLatitudeE6(segment);
+        double longitudeA = segments.getStartLongitudeE6(segment);
+        double latitudeB = segments.getEndLatitudeE6(segment);
+        double longitudeB = segments.getEndLongitudeE6(segment);
+        double sx = (longitudeB - longitudeA) * scale;
+        double sy = latitudeB - latitudeA;
+        double px = (longitudeE6 - longitudeA) * scale;
+        double py = latitudeE6 - latitudeA;
+        double lengthSquared = sx * sx + sy * sy;
+        double fraction = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * sx + py * sy) / lengthSquared));
+        double dx = px - fraction * sx;
+        double dy = py - fraction * sy;
+        return new double[] { fraction, latitudeA + fraction * (latitudeB - latitudeA),
+                longitudeA + fraction * (longitudeB - longitudeA), dx * dx + dy * dy };
+    }
+
+    private Match match(int segment, double latitudeE6, double longitudeE6, double scale) {
+        double[] projection = project(segment, latitudeE6, longitudeE6, scale);
+        return new Match(segment, projection[0], projection[1] / 1e6, projection[2] / 1e6,
+                Math.sqrt(projection[3]) * METERS_PER_E6);
+    }
+
+    /**
+     * Sorts the segments along a Hilbert curve through their midpoints, so
+     * consecutive segments are close together.
+     */
+    private static int[] hilbertOrder(Segments segments, int count) {
+        long[] midpoints = new long[count];
+        long minLatitude = Long.MAX_VALUE;
+        long minLongitude = Long.MAX_VALUE;
+        long maxLatitude = Long.MIN_VALUE;
+        long maxLongitude = Long.MIN_VALUE;
+        for (int s = 0; s < count; s++) {
+            long latitude = ((long) segments.getStartLatitudeE6(s) + segments.getEndLatitudeE6(s)) / 2;
+            long longitude = ((long) segments.getStartLongitudeE6(s) + segments.getEndLongitudeE6(s)) / 2;
+            midpoints[s] = (latitude << 32) | (longitude & 0xFFFFFFFFL);
+            minLatitude = Math.min(minLatitude, latitude);
+            maxLatitude = Math.max(maxLatitude, latitude);
+            minLongitude = Math.min(minLongitude, longitude);
+            maxLongitude = Math.max(maxLongitude, longitude);
+        }
+        double latitudeScale = HILBERT_GRID_MAX / (double) Math.max(1, maxLatitude - minLatitude);
+        double longitudeScale = HILBERT_GRID_MAX / (double) Math.max(1, maxLongitude - minLongitude);
+        long[] keyed = new long[count];
+        for (int s = 0; s < count; s++) {
+            int x = (int) (((int) midpoints[s] - minLongitude) * longitudeScale);
+            int y = (int) (((midpoints[s] >> 32) - minLatitude) * latitudeScale);
+            // Positions have 30 bits, so the keys stay positive and sort by position
+            keyed[s] = ((long) hilbert(x, y) << 32) | s;
+        }
+        Arrays.parallelSort(keyed);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) keyed[i];
+        }
+        return order;
+    }
+
+    /**
+     * Position of a cell on the Hilbert curve through a 32768 x 32768 grid.
+     */
+    private static int hilbert(int x, int y) {
+        int position = 0;
+        for (int s = (HILBERT_GRID_MAX + 1) >> 1; s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            position += s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int swap = x;
+                x = y;
+                y = swap;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * The segment nearest to a query point and where on it the point snaps to.
+     */
+    public static final class Match {
+        private final int segment;
+        private final double fraction;
+        private final double latitude;
+        private final double longitude;
+        private final double distanceMeters;
+
+        Match(int segment, double fraction, double latitude, double longitude, double distanceMeters) {
+            this.segment = segment;
+            this.fraction = fraction;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.distanceMeters = distanceMeters;
+        }
+
+        /** Gets the number of the segment. */
+        public int getSegment() {
+            return segment;
+        }
+
+        /** Gets how far along the segment the snapped point lies, from 0 (start) to 1 (end). */
+        public double getFraction() {
+            return fraction;
+        }
+
+        /** Gets the latitude of the snapped point. */
+        public double getLatitude() {
+            return latitude;
+        }
+
+        /** Gets the longitude of the snapped point. */
+        public double getLongitude() {
+            return longitude;
+        }
+
+        /** Gets the distance from the query point to the segment, in meters. */
+        public double getDistanceMeters() {
+            return distanceMeters;
+        }
+    }
+
+    /**
+     * Binary min-heap of entries keyed by squared distance.
+     */
+    private static final class DistanceHeap {
+        private double[] distances = new double[64];
+        private int[] entries = new int[64];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double peekDistance() {
+            return distances[0];
+        }
+
+        void push(double distance, int entry) {
+            if (size == distances.length) {
+                distances = Arrays.copyOf(distances, size * 2);
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] <= distance) {
+                    break;
+                }
+                distances[i] = distances[parent];
+                entries[i] = entries[parent];
+                i = parent;
+            }
+            distances[i] = distance;
+            entries[i] = entry;
+        }
+
+        int pop() {
+            int top = entries[0];
+            double lastDistance = distances[--size];
+            int lastEntry = entries[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && distances[child + 1] < distances[child]) {
+                    child++;
+                }
+                if (distances[child] >= lastDistance) {
+                    break;
+                }
+                distances[i] = distances[child];
+                entries[i] = entries[child];
+                i = child;
+            }
+            distances[i] = lastDistance;
+            entries[i] = lastEntry;
+            return top;
+        }
+    }
+}
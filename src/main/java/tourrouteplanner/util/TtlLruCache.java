@@ -0,0 +1,193 @@
+package tourrouteplanner.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread-safe, size-bounded cache with least-recently-used eviction and a
+ * per-entry time-to-live.
+ * Expired entries are no longer returned by {@link #get(Object)} but stay in
+ * the cache until they are overwritten or reach the LRU end, so they can still
+ * be served through {@link #getStale(Object)} when the source is unavailable.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+public class TtlLruCache<K, V> {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAtMillis;
+
+        Entry(V value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    /**
+     * Creates a cache using the system clock.
+     *
+     * @param maxEntries Maximum number of entries kept before the least recently
+     *                   used one is evicted.
+     * @param ttlMillis  Time-to-live of each entry, in milliseconds.
+     */
+    public TtlLruCache(int maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a cache using the given clock.
+     *
+     * @param maxEntries Maximum number of entries kept before the least recently
+     *                   used one is evicted.
+     * @param ttlMillis  Time-to-live of each entry, in milliseconds.
+     * @param clock      Source of the current time, in milliseconds.
+     */
+    public TtlLruCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive.");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the cached value for the key, or null if absent or expired.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (entry.expiresAtMillis <= clock.getAsLong()) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * Returns the cached value for the key even if it has expired, e.g. as a
+     * fallback while the source of the data is unavailable. Does not affect the
+     * hit and miss counters.
+     *
+     * @return The cached value, or null if the key was never cached or has been
+     *         evicted.
+     */
+    public synchronized V getStale(K key) {
+        Entry<V> entry = entries.get(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Stores a value, evicting the least recently used entries if the cache is
+     * full.
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, clock.getAsLong() + ttlMillis));
+        evictOverflow();
+    }
+
+    /**
+     * Stores a value with an explicit absolute expiry time, e.g. when restoring
+     * persisted entries. Entries that are already expired are ignored.
+     *
+     * @param expiresAtMillis Expiry time, in milliseconds of the cache clock.
+     */
+    public synchronized void put(K key, V value, long expiresAtMillis) {
+        if (expiresAtMillis <= clock.getAsLong()) {
+            return;
+        }
+        entries.put(key, new Entry<>(value, expiresAtMillis));
+        evictOverflow();
+    }
+
+    /**
+     * Visits every live entry from least to most recently used, e.g. to persist
+     * the cache. Access order is not changed.
+     *
+     * @param visitor Receives key, value and absolute expiry time.
+     */
+    public synchronized void forEachLive(EntryVisitor<K, V> visitor) {
+        long now = clock.getAsLong();
+        for (Map.Entry<K, Entry<V>> mapEntry : entries.entrySet()) {
+            Entry<V> entry = mapEntry.getValue();
+            if (entry.expiresAtMillis > now) {
+                visitor.visit(mapEntry.getKey(), entry.value, entry.expiresAtMillis);
+            }
+        }
+    }
+
+    /**
+     * Receives cache entries from {@link #forEachLive(EntryVisitor)}.
+     */
+    @FunctionalInterface
+    public interface EntryVisitor<K, V> {
+        void visit(K key, V value, long expiresAtMillis);
+    }
+
+    /**
+     * Removes the entry for the key, if present.
+     */
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes all entries. Statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /** Gets the current number of entries, including not yet purged expired ones. */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Gets the number of lookups that returned a live value. */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /** Gets the number of lookups that found no live value. */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /** Gets the number of entries dropped because the cache was full. */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("TtlLruCache[size=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                entries.size(), maxEntries, hitCount, missCount, evictionCount);
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+}
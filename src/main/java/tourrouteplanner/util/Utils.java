@@ -150,7 +150,7 @@ public class Utils {
     /**
      * Normalizes a string for search purposes.
      * Converts to lowercase, removes diacritics, and removes all whitespace.
-     * Example: "Hà Nội" -> "hanoi"
+     * Example: "Hà Nội" -> "hanoi", "Đà Nẵng" -> "danang"
      * 
      * @param input The input string.
      * @return The normalized string for searching.
@@ -161,8 +161,8 @@ public class Utils {
         }
         // 1. Convert to lowercase
         String lowercased = input.toLowerCase(Locale.ROOT); // Use Locale.ROOT for consistency
-        // 2. Remove diacritics
-        String noAccents = removeAccents(lowercased);
+        // 2. Remove diacritics ("đ" has no decomposed form and is mapped explicitly)
+        String noAccents = removeAccents(lowercased).replace('đ', 'd');
         // 3. Remove all whitespace (including in the middle)
         // Keep only letters and numbers, remove other characters and spaces
         return noAccents.replaceAll("[^a-z0-9]", "");